@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.ConversionResults;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Runs conversions off the main thread. Requests made within the debounce delay of each other are coalesced into one
+ * conversion, and every request gets a generation number so that results that are already out of date when they
+ * finish are dropped instead of being published.
+ * <p/>
+ * The results are double buffered: conversions write into a back buffer which is swapped with the published buffer on
+ * the main thread, so the list can keep reading the published results while the next conversion runs. All public
+ * methods must be called on the main thread.
+ */
+public class ConversionScheduler {
+	private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final Callback mCallback;
+	private long mDebounceDelay;
+
+	private ConversionResults mPublishedResults;
+	private ConversionResults mBackResults;
+
+	// Only accessed on the main thread
+	private int mLatestGeneration;
+	private int mPublishedGeneration;
+
+	// Handed from the main thread to the conversion thread and back
+	private volatile int mRequestedGeneration;
+	private volatile int mRequestedSourceUnit;
+	private volatile double mRequestedValue;
+	private volatile BigDecimal mRequestedExactValue;
+	private volatile int mRequestedPrecision;
+	private volatile int mFinishedGeneration;
+
+	/**
+	 * Construct a conversion scheduler.
+	 *
+	 * @param engine        The conversion engine.
+	 * @param debounceDelay The time in milliseconds to wait for further requests before converting.
+	 * @param callback      The callback that receives the published results.
+	 */
+	public ConversionScheduler(ConversionEngine engine, long debounceDelay, Callback callback) {
+		mPublishedResults = new ConversionResults(engine);
+		mBackResults = new ConversionResults(engine);
+		mDebounceDelay = debounceDelay;
+		mCallback = callback;
+	}
+
+	/**
+	 * Returns the most recently published results.
+	 */
+	public ConversionResults getResults() {
+		return mPublishedResults;
+	}
+
+	/**
+	 * Set the time in milliseconds to wait for further requests before converting.
+	 */
+	public void setDebounceDelay(long debounceDelay) {
+		mDebounceDelay = debounceDelay;
+	}
+
+	/**
+	 * Request a conversion, replacing any request that hasn't finished yet.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param value      The number to convert.
+	 */
+	public void schedule(int sourceUnit, double value) {
+		mRequestedSourceUnit = sourceUnit;
+		mRequestedValue = value;
+		mRequestedExactValue = null;
+		submit();
+	}
+
+	/**
+	 * Request an exact decimal conversion, replacing any request that hasn't finished yet.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param value      The number to convert.
+	 * @param precision  The number of decimal places to round the results to.
+	 */
+	public void scheduleExact(int sourceUnit, BigDecimal value, int precision) {
+		mRequestedSourceUnit = sourceUnit;
+		mRequestedExactValue = value;
+		mRequestedPrecision = precision;
+		submit();
+	}
+
+	/**
+	 * Cancel the pending request. Conversions that are already running finish but aren't published.
+	 */
+	public void cancel() {
+		mRequestedGeneration = ++mLatestGeneration;
+		mHandler.removeCallbacks(mSubmitTask);
+		mHandler.removeCallbacks(mPublishTask);
+	}
+
+	/**
+	 * Start a new generation and (re)start the debounce delay. Until the first results are published there is nothing
+	 * on screen to keep, so requests are converted without waiting; requests made in the same main thread message are
+	 * still coalesced.
+	 */
+	private void submit() {
+		mRequestedGeneration = ++mLatestGeneration;
+
+		mHandler.removeCallbacks(mSubmitTask);
+		mHandler.postDelayed(mSubmitTask, mPublishedGeneration == 0 ? 0 : mDebounceDelay);
+	}
+
+	/**
+	 * Hands the latest request to the conversion thread once the debounce delay has passed.
+	 */
+	private final Runnable mSubmitTask = new Runnable() {
+		@Override
+		public void run() {
+			sExecutor.execute(mConvertTask);
+		}
+	};
+
+	/**
+	 * Converts the latest request into the back buffer on the conversion thread.
+	 */
+	private final Runnable mConvertTask = new Runnable() {
+		@Override
+		public void run() {
+			int generation = mRequestedGeneration;
+			int sourceUnit = mRequestedSourceUnit;
+			double value = mRequestedValue;
+			BigDecimal exactValue = mRequestedExactValue;
+			int precision = mRequestedPrecision;
+
+			// Skip the conversion if a newer request arrived while reading it, or if this request has already been
+			// converted by an earlier task, whose results may now be published
+			if (generation != mRequestedGeneration || generation == mFinishedGeneration) {
+				return;
+			}
+
+			long start = Metrics.start();
+			if (exactValue != null) {
+				mBackResults.updateExact(sourceUnit, exactValue, precision);
+			} else {
+				mBackResults.update(sourceUnit, value);
+			}
+			Metrics.CONVERT.recordSince(start);
+			mFinishedGeneration = generation;
+			mHandler.post(mPublishTask);
+		}
+	};
+
+	/**
+	 * Swaps the back buffer in on the main thread, unless a newer request has been made since it was converted.
+	 */
+	private final Runnable mPublishTask = new Runnable() {
+		@Override
+		public void run() {
+			int generation = mFinishedGeneration;
+			if (generation != mLatestGeneration || generation == mPublishedGeneration) {
+				return;
+			}
+
+			ConversionResults results = mBackResults;
+			mBackResults = mPublishedResults;
+			mPublishedResults = results;
+			mPublishedGeneration = generation;
+
+			mCallback.onConversionFinished(results);
+		}
+	};
+
+	/**
+	 * Callback interface that receives the published results.
+	 */
+	public static interface Callback {
+		/**
+		 * Called on the main thread when the results of the latest request are ready.
+		 */
+		void onConversionFinished(ConversionResults results);
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.DecimalFormatter;
+import com.emetophobe.unitconverter.widget.FavoritesWidgetProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The conversions pinned to the home screen widget. Each one is converted and formatted when it's pinned, and again
+ * only when the precision changes, and the text is stored with it. The widget only reads that text, so updating it
+ * never loads the conversion engines.
+ * <p/>
+ * Changes are coalesced into one widget update, which is skipped if the text didn't change.
+ */
+public final class Favorites {
+	public static final int MAX_FAVORITES = 4;
+
+	private static final String PREFS_NAME = "favorites";
+	private static final String KEY_FAVORITES = "favorites";
+	private static final long UPDATE_DELAY = 250;
+
+	private static final Handler sHandler = new Handler(Looper.getMainLooper());
+	private static Context sUpdateContext;
+
+	private static final Runnable sUpdateWidgets = new Runnable() {
+		@Override
+		public void run() {
+			FavoritesWidgetProvider.updateAll(sUpdateContext);
+		}
+	};
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private Favorites() {
+
+	}
+
+	/**
+	 * A pinned conversion and its formatted text.
+	 */
+	public static final class Favorite {
+		private final ConverterType mConverterType;
+		private final int mSourceUnit;
+		private final int mTargetUnit;
+		private final double mValue;
+		private final String mText;
+
+		Favorite(ConverterType type, int sourceUnit, int targetUnit, double value, String text) {
+			mConverterType = type;
+			mSourceUnit = sourceUnit;
+			mTargetUnit = targetUnit;
+			mValue = value;
+			mText = text;
+		}
+
+		public ConverterType getConverterType() {
+			return mConverterType;
+		}
+
+		public int getSourceUnit() {
+			return mSourceUnit;
+		}
+
+		public int getTargetUnit() {
+			return mTargetUnit;
+		}
+
+		public double getValue() {
+			return mValue;
+		}
+
+		/**
+		 * Returns the conversion and its result, e.g. "100 megabytes = 0.09766 gigabytes".
+		 */
+		public String getText() {
+			return mText;
+		}
+	}
+
+	/**
+	 * Returns the pinned conversions, oldest first.
+	 */
+	public static List<Favorite> load(Context context) {
+		String stored = getPreferences(context).getString(KEY_FAVORITES, "");
+		if (stored.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// One conversion per line: type, source unit, target unit, value and text, separated by tabs
+		List<Favorite> favorites = new ArrayList<>(MAX_FAVORITES);
+		for (String line : stored.split("\n")) {
+			String[] fields = line.split("\t", 5);
+			if (fields.length < 5) {
+				continue;
+			}
+			try {
+				favorites.add(new Favorite(ConverterType.fromInteger(Integer.parseInt(fields[0])),
+						Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Double.parseDouble(fields[3]),
+						fields[4]));
+			} catch (IllegalArgumentException e) {
+				// Skip a conversion that can't be read
+			}
+		}
+		return favorites;
+	}
+
+	/**
+	 * Pin a conversion to the widget. The oldest conversion is dropped if the widget is full, and a conversion that
+	 * is already pinned moves to the end with its new value.
+	 */
+	public static void add(Context context, ConverterType type, int sourceUnit, int targetUnit, double value) {
+		List<Favorite> favorites = new ArrayList<>(load(context));
+		for (int i = favorites.size() - 1; i >= 0; i--) {
+			Favorite favorite = favorites.get(i);
+			if (favorite.mConverterType == type && favorite.mSourceUnit == sourceUnit
+					&& favorite.mTargetUnit == targetUnit) {
+				favorites.remove(i);
+			}
+		}
+		while (favorites.size() >= MAX_FAVORITES) {
+			favorites.remove(0);
+		}
+
+		int precision = Preferences.getPrecision(context);
+		favorites.add(convert(context, type, sourceUnit, targetUnit, value, precision));
+		store(context, favorites);
+	}
+
+	/**
+	 * Unpin a conversion.
+	 *
+	 * @param index The index of the conversion in {@link #load(Context)}.
+	 */
+	public static void remove(Context context, int index) {
+		List<Favorite> favorites = new ArrayList<>(load(context));
+		if (index >= 0 && index < favorites.size()) {
+			favorites.remove(index);
+			store(context, favorites);
+		}
+	}
+
+	/**
+	 * Convert and format the pinned conversions again with a new precision, as clamped by
+	 * {@link Preferences#parsePrecision}.
+	 */
+	public static void setPrecision(Context context, int precision) {
+		List<Favorite> favorites = load(context);
+		List<Favorite> converted = new ArrayList<>(favorites.size());
+		for (Favorite favorite : favorites) {
+			converted.add(convert(context, favorite.mConverterType, favorite.mSourceUnit, favorite.mTargetUnit,
+					favorite.mValue, precision));
+		}
+		store(context, converted);
+	}
+
+	private static Favorite convert(Context context, ConverterType type, int sourceUnit, int targetUnit, double value,
+			int precision) {
+		ConversionEngine engine = ConversionEngine.forType(type);
+		StringBuilder result = DecimalFormatter.append(new StringBuilder(),
+				engine.convert(sourceUnit, targetUnit, value), precision);
+		String text = context.getString(R.string.quick_conversion_label, History.formatValue(value),
+				engine.getUnitName(sourceUnit), result, engine.getUnitName(targetUnit));
+		return new Favorite(type, sourceUnit, targetUnit, value, text);
+	}
+
+	/**
+	 * Store the conversions, and update the widgets if they changed.
+	 */
+	private static void store(Context context, List<Favorite> favorites) {
+		StringBuilder builder = new StringBuilder();
+		for (Favorite favorite : favorites) {
+			builder.append(favorite.mConverterType.toInteger()).append('\t').append(favorite.mSourceUnit).append('\t')
+					.append(favorite.mTargetUnit).append('\t').append(favorite.mValue).append('\t')
+					.append(favorite.mText.replace('\n', ' ')).append('\n');
+		}
+
+		String stored = builder.toString();
+		SharedPreferences preferences = getPreferences(context);
+		if (stored.equals(preferences.getString(KEY_FAVORITES, ""))) {
+			return;
+		}
+		preferences.edit().putString(KEY_FAVORITES, stored).apply();
+		requestWidgetUpdate(context);
+	}
+
+	/**
+	 * Update the widgets shortly, so that several changes in a row are shown by a single update.
+	 */
+	private static void requestWidgetUpdate(Context context) {
+		sUpdateContext = context.getApplicationContext();
+		sHandler.removeCallbacks(sUpdateWidgets);
+		sHandler.postDelayed(sUpdateWidgets, UPDATE_DELAY);
+	}
+
+	private static SharedPreferences getPreferences(Context context) {
+		return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.emetophobe.unitconverter.engine.HistoryLog;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Holds the conversion history of the app. The log is opened the first time it's needed and stays open for the life
+ * of the process.
+ */
+public final class History {
+	private static final String TAG = "History";
+	private static final String FILE_NAME = "history.log";
+
+	private static HistoryLog sLog;
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private History() {
+
+	}
+
+	/**
+	 * Returns the history log, or null if it can't be opened.
+	 */
+	public static synchronized HistoryLog get(Context context) {
+		if (sLog == null) {
+			try {
+				sLog = new HistoryLog(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+			} catch (IOException e) {
+				Log.w(TAG, "Can't open the conversion history", e);
+			}
+		}
+		return sLog;
+	}
+
+	/**
+	 * Format a value from the history as text that can be typed into a converter, without a trailing ".0" for whole
+	 * numbers.
+	 */
+	public static String formatValue(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+}
@@ -16,9 +16,6 @@
 
 package com.emetophobe.unitconverter;
 
-import android.util.Log;
-
-
 public class MathUtils {
 	/**
 	 * This class cannot be instantiated
@@ -28,46 +25,42 @@ public class MathUtils {
 	}
 
 	/**
-	 * Round a number to n decimal places.
-	 *
-	 * @param number The number to round.
-	 * @param n      The number of decimal places.
-	 * @return The rounded number.
-	 */
-	public static double round(double number, int n) {
-		double pow = Math.pow(10, n);
-		return Math.round(number * pow) / pow;
-	}
-
-	/**
-	 * Convert a string to an integer.
+	 * Convert a string to an integer. Parsing doesn't throw, so invalid input is cheap.
 	 *
 	 * @param text The string to convert.
 	 * @return the integer value if successful, 0 if there was an error.
 	 */
-	public static int parseInt(String text) {
-		int value = 0;
-		try {
-			value = Integer.valueOf(text);
-		} catch (NumberFormatException e) {
-			Log.d("MathUtils", "NumberFormatException when attempting to parse an integer from the string: " + text);
+	public static int parseInt(CharSequence text) {
+		int length = text.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+			negative = text.charAt(0) == '-';
+			i++;
+		}
+		if (i == length) {
+			return 0;
 		}
-		return value;
-	}
 
-	/**
-	 * Convert a string to a double.
-	 *
-	 * @param text The string to convert.
-	 * @return the double value if successful, 0 if there was an error.
-	 */
-	public static double parseDouble(String text) {
-		double value = 0;
-		try {
-			value = Double.valueOf(text);
-		} catch (NumberFormatException e) {
-			Log.d("MathUtils", "NumberFormatException when attempting to parse a double from the string: " + text);
+		long value = 0;
+		for (; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				Metrics.countInvalidInput();
+				return 0;
+			}
+			value = value * 10 + (c - '0');
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				Metrics.countInvalidInput();
+				return 0;
+			}
+		}
+
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			Metrics.countInvalidInput();
+			return 0;
 		}
-		return value;
+		return (int) value;
 	}
 }
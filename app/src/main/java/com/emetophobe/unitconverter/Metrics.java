@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter;
+
+import android.os.Debug;
+
+import com.emetophobe.unitconverter.engine.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Latency histograms and counters for the path from a keystroke to the updated list. Recording is toggled by the
+ * metrics preference; while it is disabled {@link #start()} returns 0 and recording a start time of 0 does nothing, so
+ * the only cost on the hot path is reading a boolean.
+ * <p/>
+ * A keystroke is the main thread work of a text change. It includes parsing the value but not the conversion, which
+ * runs on the conversion thread, nor formatting and binding, which run when the list is laid out. Formatting a row's
+ * value and setting it on the view are recorded separately, so a row costs its format time plus its bind time.
+ */
+public final class Metrics {
+	public static final LatencyHistogram KEYSTROKE = new LatencyHistogram("keystroke");
+	public static final LatencyHistogram PARSE = new LatencyHistogram("parse");
+	public static final LatencyHistogram CONVERT = new LatencyHistogram("convert");
+	public static final LatencyHistogram FORMAT = new LatencyHistogram("format");
+	public static final LatencyHistogram BIND = new LatencyHistogram("bind");
+
+	private static final LatencyHistogram[] sHistograms = {KEYSTROKE, PARSE, CONVERT, FORMAT, BIND};
+
+	private static final AtomicLong sAllocations = new AtomicLong();
+	private static final AtomicLong sInvalidInputs = new AtomicLong();
+
+	// Written on the main thread, read by the conversion thread as well
+	private static volatile boolean sEnabled;
+
+	// The main thread allocation count when the current keystroke started
+	private static int sKeystrokeAllocations;
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private Metrics() {
+
+	}
+
+	/**
+	 * Enable or disable recording. Allocations are only counted while recording is enabled.
+	 */
+	public static synchronized void setEnabled(boolean enabled) {
+		if (sEnabled != enabled) {
+			sEnabled = enabled;
+			if (enabled) {
+				Debug.startAllocCounting();
+			} else {
+				Debug.stopAllocCounting();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if recording is enabled.
+	 */
+	public static boolean isEnabled() {
+		return sEnabled;
+	}
+
+	/**
+	 * Returns the start time of a phase, or 0 if recording is disabled.
+	 */
+	public static long start() {
+		return sEnabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Returns the start time of a keystroke, or 0 if recording is disabled. Must be called on the main thread.
+	 */
+	public static long startKeystroke() {
+		if (!sEnabled) {
+			return 0;
+		}
+		sKeystrokeAllocations = Debug.getThreadAllocCount();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record a keystroke and the objects allocated on the main thread during it. Must be called on the main thread.
+	 *
+	 * @param startNanos The start time from {@link #startKeystroke()}.
+	 */
+	public static void endKeystroke(long startNanos) {
+		if (startNanos != 0) {
+			KEYSTROKE.recordSince(startNanos);
+			sAllocations.addAndGet(Debug.getThreadAllocCount() - sKeystrokeAllocations);
+		}
+	}
+
+	/**
+	 * Count input that couldn't be parsed, which used to throw a NumberFormatException.
+	 */
+	public static void countInvalidInput() {
+		if (sEnabled) {
+			sInvalidInputs.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Remove every recorded value.
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : sHistograms) {
+			histogram.reset();
+		}
+		sAllocations.set(0);
+		sInvalidInputs.set(0);
+	}
+
+	/**
+	 * Write a summary of every phase and counter, with latencies in microseconds.
+	 *
+	 * @param out The output.
+	 * @throws IOException If the output can't be written to.
+	 */
+	public static void writeSummary(Appendable out) throws IOException {
+		out.append(String.format(Locale.US, "%-10s %8s %9s %9s %9s %9s\n", "phase", "count", "p50", "p90", "p99",
+				"max"));
+		for (LatencyHistogram histogram : sHistograms) {
+			out.append(String.format(Locale.US, "%-10s %8d %9.1f %9.1f %9.1f %9.1f\n", histogram.getName(),
+					histogram.getCount(), histogram.getValueAtPercentile(50) / 1000.0,
+					histogram.getValueAtPercentile(90) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+					histogram.getMax() / 1000.0));
+		}
+
+		long keystrokes = KEYSTROKE.getCount();
+		long allocations = sAllocations.get();
+		out.append('\n');
+		out.append(String.format(Locale.US, "allocations %d (%.1f per keystroke)\n", allocations,
+				keystrokes == 0 ? 0.0 : (double) allocations / keystrokes));
+		out.append(String.format(Locale.US, "invalid input %d\n", sInvalidInputs.get()));
+	}
+
+	/**
+	 * Write the summary followed by the percentile distribution of every phase, for export.
+	 *
+	 * @param out The output.
+	 * @throws IOException If the output can't be written to.
+	 */
+	public static void writeReport(Appendable out) throws IOException {
+		writeSummary(out);
+		for (LatencyHistogram histogram : sHistograms) {
+			out.append('\n');
+			histogram.writePercentiles(out);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+
+/**
+ * Reads the preferences that are shared by several screens.
+ */
+public class Preferences {
+	public static final String PREF_PRECISION = "pref_precision";
+	private static final String DEFAULT_PRECISION = "5";
+
+	/**
+	 * The most decimal places the results are rounded to. More places would make DecimalFormatter fall back to
+	 * BigDecimal for every value, on the main thread.
+	 */
+	public static final int MAX_PRECISION = 15;
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private Preferences() {
+
+	}
+
+	/**
+	 * Returns the number of decimal places the results are rounded to.
+	 */
+	public static int getPrecision(Context context) {
+		return getPrecision(PreferenceManager.getDefaultSharedPreferences(context));
+	}
+
+	/**
+	 * Returns the number of decimal places the results are rounded to.
+	 */
+	public static int getPrecision(SharedPreferences prefs) {
+		return parsePrecision(prefs.getString(PREF_PRECISION, DEFAULT_PRECISION));
+	}
+
+	/**
+	 * Parse a precision preference value, clamping invalid or negative values to 0 and large values to
+	 * {@link #MAX_PRECISION}.
+	 */
+	public static int parsePrecision(CharSequence value) {
+		return Math.min(MAX_PRECISION, Math.max(0, MathUtils.parseInt(value)));
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.v4.content.FileProvider;
+
+import java.io.File;
+
+
+/**
+ * Files that are shared with other apps. They are written to the exports directory of the app's files directory and
+ * handed out as content uris of the app's FileProvider, so the receiving app can read them without storage
+ * permissions, and even when there is no external storage.
+ */
+public class SharedFiles {
+	private static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".fileprovider";
+
+	// Must match the path in res/xml/file_paths.xml
+	private static final String DIRECTORY = "exports";
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private SharedFiles() {
+
+	}
+
+	/**
+	 * Returns a file that can be shared, creating its directory if needed.
+	 *
+	 * @param context The context.
+	 * @param name    The file name.
+	 */
+	public static File getFile(Context context, String name) {
+		File dir = new File(context.getFilesDir(), DIRECTORY);
+		dir.mkdirs();
+		return new File(dir, name);
+	}
+
+	/**
+	 * Returns a chooser that sends a shared file and grants the receiving app read access to it.
+	 *
+	 * @param context  The context.
+	 * @param file     A file returned by {@link #getFile}.
+	 * @param mimeType The type of the file.
+	 * @param title    The title of the chooser.
+	 */
+	public static Intent createShareIntent(Context context, File file, String mimeType, CharSequence title) {
+		Uri uri = FileProvider.getUriForFile(context, AUTHORITY, file);
+		Intent intent = new Intent(Intent.ACTION_SEND);
+		intent.setType(mimeType);
+		intent.putExtra(Intent.EXTRA_STREAM, uri);
+		intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+		return Intent.createChooser(intent, title);
+	}
+}
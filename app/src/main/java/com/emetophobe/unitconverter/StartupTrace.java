@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+
+/**
+ * Marks the milestones of a cold start, from the creation of the application to the first published conversion. Each
+ * milestone is logged with the time since the application was created, and the work between them is wrapped in
+ * systrace sections where those are available (API 18 and up). scripts/startup-trace.sh collects the log lines over a
+ * number of launches. Release builds only log the milestones while the performance metrics are enabled; the sections
+ * cost nothing unless something is tracing, so they are always there.
+ * <p/>
+ * All methods must be called on the main thread.
+ */
+public final class StartupTrace {
+	private static final String TAG = "StartupTrace";
+
+	private static long sStartTime;
+	private static boolean sFinished;
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private StartupTrace() {
+
+	}
+
+	/**
+	 * Mark the start of the process. Called once when the application is created.
+	 */
+	public static void start() {
+		sStartTime = SystemClock.uptimeMillis();
+	}
+
+	/**
+	 * Begin a systrace section. Every section must be ended with {@link #endSection()} on the same thread.
+	 */
+	public static void beginSection(String name) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			Trace.beginSection(name);
+		}
+	}
+
+	/**
+	 * End the most recent systrace section of this thread.
+	 */
+	public static void endSection() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			Trace.endSection();
+		}
+	}
+
+	/**
+	 * Log a milestone of the startup, unless the first conversion has already been shown or logging is disabled.
+	 */
+	public static void mark(String milestone) {
+		if (!sFinished && (BuildConfig.DEBUG || Metrics.isEnabled())) {
+			Log.i(TAG, milestone + " " + (SystemClock.uptimeMillis() - sStartTime) + " ms");
+		}
+	}
+
+	/**
+	 * Mark the first conversion shown by the activity, which ends the startup. Later conversions are ignored.
+	 */
+	public static void firstConversion(Activity activity) {
+		if (sFinished) {
+			return;
+		}
+
+		mark("first_conversion");
+		sFinished = true;
+		if (activity != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			activity.reportFullyDrawn();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter;
+
+import android.app.Application;
+import android.preference.PreferenceManager;
+
+import com.emetophobe.unitconverter.activities.SettingsActivity;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.HistoryLog;
+
+import java.io.IOException;
+import java.text.DecimalFormatSymbols;
+
+
+/**
+ * Starts the startup trace and prewarms, on a background thread, the work that the first converter would otherwise do
+ * on the main thread: loading the preferences, the unit tables and the locale's number symbols, and opening the
+ * history. The main thread still reads all of these itself; it just finds them loaded, or waits for the load that is
+ * already running.
+ */
+public class UnitConverterApplication extends Application {
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		StartupTrace.start();
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				prewarm();
+			}
+		}, "Prewarm");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Load everything the first converter needs. Drawer position 0 is shown first on a cold start.
+	 */
+	private void prewarm() {
+		PreferenceManager.getDefaultSharedPreferences(this).getBoolean(SettingsActivity.PREF_METRICS, false);
+		DecimalFormatSymbols.getInstance();
+
+		ConverterType type = ConverterType.fromInteger(0);
+		ConversionEngine.forType(type).prepare();
+
+		HistoryLog history = History.get(this);
+		if (history != null) {
+			try {
+				history.getLatest(type);
+			} catch (IOException e) {
+				// The converter reads it again and handles the error itself
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.activities;
+
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.OpenableColumns;
+import android.support.v4.app.NavUtils;
+import android.support.v7.app.ActionBarActivity;
+import android.support.v7.widget.Toolbar;
+import android.view.MenuItem;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.MathUtils;
+import com.emetophobe.unitconverter.Preferences;
+import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.SharedFiles;
+import com.emetophobe.unitconverter.engine.BatchConverter;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.fragments.BatchConvertFragment;
+
+import java.io.File;
+import java.io.IOException;
+
+import butterknife.ButterKnife;
+import butterknife.InjectView;
+import butterknife.OnClick;
+import butterknife.OnItemSelected;
+
+
+/**
+ * Converts a column of a CSV or text file that was shared with or opened by the app. The converted file is written to
+ * the app's files directory and can then be shared.
+ */
+public class BatchConvertActivity extends ActionBarActivity implements BatchConvertFragment.BatchConvertCallbacks {
+	private static final String MIME_TYPE_TSV = "text/tab-separated-values";
+	private static final String DEFAULT_NAME = "input.csv";
+
+	private Uri mInputUri;
+	private String mInputName;
+	private char mDelimiter = BatchConverter.DEFAULT_DELIMITER;
+	private ConversionEngine mEngine;
+	private BatchConvertFragment mConvertFragment;
+
+	@InjectView(R.id.type_spinner)
+	protected Spinner mTypeSpinner;
+
+	@InjectView(R.id.source_unit_spinner)
+	protected Spinner mSourceUnitSpinner;
+
+	@InjectView(R.id.dest_unit_spinner)
+	protected Spinner mDestUnitSpinner;
+
+	@InjectView(R.id.column_edit)
+	protected EditText mColumnEdit;
+
+	@InjectView(R.id.convert_button)
+	protected Button mConvertButton;
+
+	@InjectView(R.id.status_text)
+	protected TextView mStatusText;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_batch_convert);
+		ButterKnife.inject(this);
+
+		// Set up the toolbar
+		Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
+		setSupportActionBar(toolbar);
+		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+		// Get the file from either a share or an open intent
+		Intent intent = getIntent();
+		if (Intent.ACTION_SEND.equals(intent.getAction())) {
+			mInputUri = intent.getParcelableExtra(Intent.EXTRA_STREAM);
+		} else {
+			mInputUri = intent.getData();
+		}
+		if (mInputUri == null) {
+			finish();
+			return;
+		}
+		if (MIME_TYPE_TSV.equals(intent.getType())) {
+			mDelimiter = '\t';
+		}
+		mInputName = getDisplayName(mInputUri);
+		mStatusText.setText(mInputName);
+
+		ArrayAdapter<CharSequence> typeAdapter = ArrayAdapter.createFromResource(this, R.array.converter_names,
+				android.R.layout.simple_spinner_item);
+		typeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		mTypeSpinner.setAdapter(typeAdapter);
+
+		// Reconnect to a conversion that was started before the activity was recreated
+		mConvertFragment = (BatchConvertFragment) getFragmentManager().findFragmentByTag(BatchConvertFragment.TAG);
+		if (mConvertFragment == null) {
+			mConvertFragment = new BatchConvertFragment();
+			getFragmentManager().beginTransaction().add(mConvertFragment, BatchConvertFragment.TAG).commit();
+		} else if (mConvertFragment.isConverting()) {
+			mConvertButton.setEnabled(false);
+			mStatusText.setText(R.string.batch_converting);
+		}
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == android.R.id.home) {
+			NavUtils.navigateUpFromSameTask(this);
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Show the units of the selected converter type.
+	 */
+	@OnItemSelected(R.id.type_spinner)
+	protected void onTypeSelected(int position) {
+		mEngine = ConversionEngine.forType(ConverterType.fromInteger(position));
+
+		ArrayAdapter<String> unitAdapter = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item,
+				mEngine.getUnitNameList());
+		unitAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		mSourceUnitSpinner.setAdapter(unitAdapter);
+		mDestUnitSpinner.setAdapter(unitAdapter);
+	}
+
+	@OnClick(R.id.convert_button)
+	protected void onConvertClicked() {
+		BatchConverter converter = new BatchConverter(mEngine, mSourceUnitSpinner.getSelectedItemPosition(),
+				mDestUnitSpinner.getSelectedItemPosition(), Math.max(0, MathUtils.parseInt(mColumnEdit.getText())));
+		converter.setDelimiter(mDelimiter);
+		converter.setPrecision(Preferences.getPrecision(this));
+
+		File output = SharedFiles.getFile(this, "converted-" + mInputName);
+
+		mConvertButton.setEnabled(false);
+		mStatusText.setText(R.string.batch_converting);
+		mConvertFragment.convert(getApplicationContext().getContentResolver(), mInputUri, converter, output);
+	}
+
+	@Override
+	public void onConversionFinished(long count, File output) {
+		mConvertButton.setEnabled(true);
+		mStatusText.setText(getResources().getQuantityString(R.plurals.batch_converted, (int) count, count,
+				output.getName()));
+		shareOutput(output);
+	}
+
+	@Override
+	public void onConversionFailed(IOException error) {
+		mConvertButton.setEnabled(true);
+		mStatusText.setText(getString(R.string.batch_failed, error.getMessage()));
+	}
+
+	/**
+	 * Returns the name the file is shown under. Content uris usually end in an opaque id (or a document id such as
+	 * "primary:Download/data.csv"), so the provider is asked for the display name first, and anything that could be
+	 * read as a directory is stripped from the fallback.
+	 */
+	private String getDisplayName(Uri uri) {
+		String name = null;
+		Cursor cursor = null;
+		try {
+			cursor = getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null);
+			if (cursor != null && cursor.moveToFirst()) {
+				name = cursor.getString(0);
+			}
+		} catch (RuntimeException e) {
+			// Not every uri can be queried, e.g. file uris
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+		if (name == null) {
+			name = uri.getLastPathSegment();
+		}
+		if (name != null) {
+			name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf(':')) + 1);
+		}
+		return name == null || name.isEmpty() ? DEFAULT_NAME : name;
+	}
+
+	/**
+	 * Share the converted file.
+	 */
+	private void shareOutput(File output) {
+		startActivity(SharedFiles.createShareIntent(this, output, "text/plain", getString(R.string.batch_share)));
+	}
+}
@@ -16,31 +16,79 @@
 
 package com.emetophobe.unitconverter.activities;
 
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.app.FragmentTransaction;
+import android.content.DialogInterface;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.ActionBarActivity;
+import android.support.v7.app.AlertDialog;
+import android.support.v7.widget.ListPopupWindow;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 
 import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.History;
+import com.emetophobe.unitconverter.Metrics;
+import com.emetophobe.unitconverter.Preferences;
 import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.StartupTrace;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.DecimalFormatter;
+import com.emetophobe.unitconverter.engine.HistoryLog;
+import com.emetophobe.unitconverter.engine.QuickConverter;
+import com.emetophobe.unitconverter.engine.UnitCatalog;
+import com.emetophobe.unitconverter.engine.UnitSearchIndex;
+import com.emetophobe.unitconverter.fragments.AllUnitsFragment;
 import com.emetophobe.unitconverter.fragments.GenericConverterFragment;
 import com.emetophobe.unitconverter.fragments.NavDrawerFragment;
-import com.emetophobe.unitconverter.fragments.TemperatureConverterFragment;
+
+import java.io.IOException;
+import java.text.DecimalFormatSymbols;
+import java.util.Collections;
+import java.util.List;
 
 
 public class MainActivity extends ActionBarActivity implements NavDrawerFragment.NavigationDrawerCallbacks {
+	private static final String EXTRA_CONVERTER_TYPE = "converter_type";
+	private static final String EXTRA_UNIT = "unit";
+	private static final String EXTRA_VALUE = "value";
+	private static final String TAG_CONVERTER = "converter_";
+	private static final String TAG_ALL_UNITS = "all_units";
+	private static final int HISTORY_SIZE = 50;
+	private static final int SEARCH_RESULTS = 8;
+
 	private NavDrawerFragment mNavDrawerFragment;
 
 	private String[] mConverterNames;
 	private CharSequence mTitle;
 
+	// Unit search, set up when the search is first opened
+	private MenuItem mSearchItem;
+	private UnitSearchIndex.Searcher mSearcher;
+	private int[] mSearchResults;
+	private ListPopupWindow mSearchPopup;
+	private ArrayAdapter<String> mSearchAdapter;
+
+	// A query can also be a whole conversion, e.g. "12 sq mi to ha", which is shown above the matching units
+	private QuickConverter mQuickConverter;
+	private boolean mShowsQuickConversion;
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		StartupTrace.beginSection("MainActivity.onCreate");
 		setContentView(R.layout.activity_main);
 
 		// Set up the toolbar.
@@ -53,6 +101,54 @@ public class MainActivity extends ActionBarActivity implements NavDrawerFragment
 
 		mConverterNames = getResources().getStringArray(R.array.converter_names);
 		mTitle = getTitle();
+
+		Metrics.setEnabled(PreferenceManager.getDefaultSharedPreferences(this)
+				.getBoolean(SettingsActivity.PREF_METRICS, false));
+
+		if (savedInstanceState == null) {
+			showConversion(getIntent());
+		}
+		StartupTrace.endSection();
+		StartupTrace.mark("activity_created");
+	}
+
+	@Override
+	protected void onNewIntent(Intent intent) {
+		super.onNewIntent(intent);
+		setIntent(intent);
+		showConversion(intent);
+	}
+
+	/**
+	 * Returns an intent that opens a value in its converter, e.g. a conversion pinned to the widget.
+	 *
+	 * @param context The context.
+	 * @param type    The converter type.
+	 * @param unit    The unit of the value.
+	 * @param value   The value.
+	 * @return The intent.
+	 */
+	public static Intent createConversionIntent(Context context, ConverterType type, int unit, double value) {
+		return new Intent(context, MainActivity.class)
+				.putExtra(EXTRA_CONVERTER_TYPE, type.toInteger())
+				.putExtra(EXTRA_UNIT, unit)
+				.putExtra(EXTRA_VALUE, value)
+				.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+	}
+
+	/**
+	 * Show the value of an intent from {@link #createConversionIntent}, if it has one.
+	 */
+	private void showConversion(Intent intent) {
+		if (!intent.hasExtra(EXTRA_CONVERTER_TYPE)) {
+			return;
+		}
+
+		GenericConverterFragment fragment = showConverter(ConverterType.fromInteger(
+				intent.getIntExtra(EXTRA_CONVERTER_TYPE, 0)));
+		if (fragment != null) {
+			fragment.showValue(intent.getIntExtra(EXTRA_UNIT, 0), intent.getDoubleExtra(EXTRA_VALUE, 0));
+		}
 	}
 
 	@Override
@@ -62,6 +158,7 @@ public class MainActivity extends ActionBarActivity implements NavDrawerFragment
 			// if the drawer is not showing. Otherwise, let the drawer
 			// decide what to show in the action bar.
 			getMenuInflater().inflate(R.menu.main_menu, menu);
+			setUpSearch(menu.findItem(R.id.action_search));
 			ActionBar actionBar = getSupportActionBar();
 			actionBar.setDisplayShowTitleEnabled(true);
 			actionBar.setTitle(mTitle);
@@ -76,26 +173,267 @@ public class MainActivity extends ActionBarActivity implements NavDrawerFragment
 			case R.id.action_settings:
 				startActivity(new Intent(this, SettingsActivity.class));
 				return true;
+			case R.id.action_history:
+				showHistory();
+				return true;
 		}
 		return super.onOptionsItemSelected(item);
 	}
 
+	/**
+	 * Show the most recent conversions. Picking one shows it in its converter.
+	 */
+	private void showHistory() {
+		HistoryLog history = History.get(this);
+		List<HistoryLog.Entry> entries = Collections.emptyList();
+		if (history != null) {
+			try {
+				entries = history.getRecent(HISTORY_SIZE);
+			} catch (IOException e) {
+				// Show an empty history
+			}
+		}
+
+		final HistoryLog.Entry[] items = entries.toArray(new HistoryLog.Entry[entries.size()]);
+		String[] labels = new String[items.length];
+		for (int i = 0; i < items.length; i++) {
+			ConversionEngine engine = ConversionEngine.forType(items[i].getConverterType());
+			int unit = items[i].getUnit();
+			labels[i] = getString(R.string.history_entry, History.formatValue(items[i].getValue()),
+					unit < engine.getUnitCount() ? engine.getUnitName(unit) : "",
+					mConverterNames[items[i].getConverterType().toInteger()]);
+		}
+
+		AlertDialog.Builder builder = new AlertDialog.Builder(this).setTitle(R.string.title_history);
+		if (items.length == 0) {
+			builder.setMessage(R.string.history_empty);
+		} else {
+			builder.setItems(labels, new DialogInterface.OnClickListener() {
+				@Override
+				public void onClick(DialogInterface dialog, int which) {
+					showHistoryEntry(items[which]);
+				}
+			});
+		}
+		builder.show();
+	}
+
+	/**
+	 * Switch to the converter of a history entry and show the entry in it.
+	 */
+	private void showHistoryEntry(HistoryLog.Entry entry) {
+		GenericConverterFragment fragment = showConverter(entry.getConverterType());
+		if (fragment != null) {
+			fragment.showEntry(entry);
+		}
+	}
+
+	/**
+	 * Search the units of every converter type as the query is typed. The results are shown in a popup below the
+	 * toolbar, and picking one switches to its converter with the unit selected.
+	 */
+	private void setUpSearch(final MenuItem searchItem) {
+		mSearchItem = searchItem;
+		SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+		searchView.setQueryHint(getString(R.string.search_hint));
+		searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+			@Override
+			public boolean onQueryTextChange(String query) {
+				updateSearchResults(query);
+				return true;
+			}
+
+			@Override
+			public boolean onQueryTextSubmit(String query) {
+				if (updateSearchResults(query) > 0) {
+					showSearchResult(0);
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Show the conversion typed as the query if it is one, or else the units that match the query.
+	 *
+	 * @return The number of results.
+	 */
+	private int updateSearchResults(String query) {
+		if (mSearcher == null) {
+			mQuickConverter = new QuickConverter(DecimalFormatSymbols.getInstance().getDecimalSeparator());
+			mSearcher = UnitSearchIndex.getInstance().newSearcher();
+			mSearchResults = new int[SEARCH_RESULTS];
+			mSearchAdapter = new ArrayAdapter<String>(this, android.R.layout.simple_list_item_1);
+			mSearchPopup = new ListPopupWindow(this);
+			mSearchPopup.setAnchorView(findViewById(R.id.toolbar));
+			mSearchPopup.setAdapter(mSearchAdapter);
+			mSearchPopup.setInputMethodMode(ListPopupWindow.INPUT_METHOD_NEEDED);
+			mSearchPopup.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+				@Override
+				public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+					showSearchResult(position);
+				}
+			});
+		}
+
+		UnitCatalog catalog = UnitSearchIndex.getInstance().getCatalog();
+		mSearchAdapter.setNotifyOnChange(false);
+		mSearchAdapter.clear();
+		mShowsQuickConversion = mQuickConverter.parse(query) == QuickConverter.PARSED;
+		if (mShowsQuickConversion) {
+			int precision = Preferences.getPrecision(this);
+			String result = DecimalFormatter.append(new StringBuilder(), mQuickConverter.getResult(), precision)
+					.toString();
+			mSearchAdapter.add(getString(R.string.quick_conversion_label,
+					History.formatValue(mQuickConverter.getValue()),
+					catalog.getUnitName(mQuickConverter.getSourceUnit()), result,
+					catalog.getUnitName(mQuickConverter.getTargetUnit())));
+		}
+
+		// A conversion is the only result, since the query doesn't name a single unit
+		int count = mShowsQuickConversion ? 0 : mSearcher.search(query, mSearchResults);
+		for (int i = 0; i < count; i++) {
+			int unit = mSearchResults[i];
+			mSearchAdapter.add(getString(R.string.all_units_label, catalog.getUnitName(unit),
+					mConverterNames[catalog.getConverterType(unit).toInteger()]));
+		}
+		mSearchAdapter.notifyDataSetChanged();
+
+		count = mSearchAdapter.getCount();
+		if (count == 0) {
+			mSearchPopup.dismiss();
+		} else if (!mSearchPopup.isShowing()) {
+			mSearchPopup.show();
+		}
+		return count;
+	}
+
+	/**
+	 * Switch to the converter of a search result. A unit is selected, and a conversion is shown with its value.
+	 */
+	private void showSearchResult(int position) {
+		UnitCatalog catalog = UnitSearchIndex.getInstance().getCatalog();
+		boolean conversion = mShowsQuickConversion;
+		int unit = conversion ? mQuickConverter.getSourceUnit() : mSearchResults[position];
+		ConverterType type = catalog.getConverterType(unit);
+		double value = mQuickConverter.getValue();
+
+		mSearchPopup.dismiss();
+		MenuItemCompat.collapseActionView(mSearchItem);
+		GenericConverterFragment fragment = showConverter(type);
+		if (fragment == null) {
+			return;
+		}
+		if (conversion) {
+			fragment.showValue(unit - catalog.getFirstUnit(type), value);
+		} else {
+			fragment.showUnit(unit - catalog.getFirstUnit(type));
+		}
+	}
+
+	/**
+	 * Switch to the converter of a converter type.
+	 *
+	 * @return The converter, or null if it couldn't be shown.
+	 */
+	private GenericConverterFragment showConverter(ConverterType type) {
+		int position = type.toInteger();
+		mNavDrawerFragment.selectItem(position);
+
+		FragmentManager fragmentManager = getFragmentManager();
+		fragmentManager.executePendingTransactions();
+		return (GenericConverterFragment) fragmentManager.findFragmentByTag(getConverterTag(position));
+	}
+
+	/**
+	 * Show the converter for the selected position. Converters are detached rather than replaced when switching to
+	 * another converter, so that switching back to them reuses the existing fragment. The position after the last
+	 * converter type is the all units view.
+	 */
 	@Override
 	public void onNavigationDrawerItemSelected(int position) {
-		mTitle = mConverterNames[position];
-		ConverterType converterType = ConverterType.fromInteger(position);
+		mTitle = position < mConverterNames.length ? mConverterNames[position] : getString(R.string.title_all_units);
+		String selectedTag = getConverterTag(position);
 
-		GenericConverterFragment fragment;
-		if (converterType == ConverterType.TEMPERATURE) {
-			fragment = new TemperatureConverterFragment();
-		} else {
-			fragment = new GenericConverterFragment();
+		FragmentManager fragmentManager = getFragmentManager();
+		FragmentTransaction transaction = fragmentManager.beginTransaction();
+
+		// Detach every other converter that is currently attached
+		for (int i = 0; i <= mConverterNames.length; i++) {
+			Fragment fragment = fragmentManager.findFragmentByTag(getConverterTag(i));
+			if (i != position && fragment != null && !fragment.isDetached()) {
+				transaction.detach(fragment);
+			}
+		}
+
+		// Attach the selected converter, creating it if it isn't cached
+		Fragment fragment = fragmentManager.findFragmentByTag(selectedTag);
+		if (fragment == null) {
+			transaction.add(R.id.container, createConverter(position), selectedTag);
+		} else if (fragment.isDetached()) {
+			transaction.attach(fragment);
+		}
+
+		transaction.commit();
+	}
+
+	/**
+	 * Returns the fragment tag of the converter at the specified drawer position.
+	 */
+	private String getConverterTag(int position) {
+		return position < mConverterNames.length ? TAG_CONVERTER + ConverterType.fromInteger(position).name()
+				: TAG_ALL_UNITS;
+	}
+
+	/**
+	 * Create the converter at the specified drawer position.
+	 */
+	private Fragment createConverter(int position) {
+		if (position == mConverterNames.length) {
+			return new AllUnitsFragment();
 		}
 
 		Bundle args = new Bundle();
-		args.putSerializable(GenericConverterFragment.EXTRA_CONVERTER_TYPE, converterType);
+		args.putSerializable(GenericConverterFragment.EXTRA_CONVERTER_TYPE, ConverterType.fromInteger(position));
+		Fragment fragment = new GenericConverterFragment();
 		fragment.setArguments(args);
+		return fragment;
+	}
+
+	/**
+	 * Drop the caches when memory is critically low while the app is running, or when the process is in the middle of
+	 * the background list or later. Going to the background (UI_HIDDEN and BACKGROUND) keeps them, so that coming back
+	 * to the app reuses the cached converters.
+	 */
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		if (level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_MODERATE) {
+			dropCaches();
+		}
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		dropCaches();
+	}
+
+	/**
+	 * Drop the cached converters that aren't showing, and the memory held by the conversion engines.
+	 */
+	private void dropCaches() {
+		FragmentManager fragmentManager = getFragmentManager();
+		FragmentTransaction transaction = fragmentManager.beginTransaction();
+		for (int i = 0; i <= mConverterNames.length; i++) {
+			Fragment fragment = fragmentManager.findFragmentByTag(getConverterTag(i));
+			if (fragment != null && fragment.isDetached()) {
+				transaction.remove(fragment);
+			}
+		}
 
-		getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
+		// The removed converters only hold state that is rebuilt on demand, so losing it is fine
+		transaction.commitAllowingStateLoss();
+		ConversionEngine.trimMemory();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.activities;
+
+import android.os.Bundle;
+import android.support.v4.app.NavUtils;
+import android.support.v7.app.ActionBarActivity;
+import android.support.v7.widget.Toolbar;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.emetophobe.unitconverter.Metrics;
+import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.SharedFiles;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import butterknife.ButterKnife;
+import butterknife.InjectView;
+
+
+/**
+ * Shows the recorded keystroke metrics. The full report, with the percentile distribution of every phase, can be
+ * exported to a file and shared.
+ */
+public class MetricsActivity extends ActionBarActivity {
+	private static final String EXPORT_FILE = "metrics.txt";
+
+	@InjectView(R.id.metrics_text)
+	protected TextView mMetricsText;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_metrics);
+		ButterKnife.inject(this);
+
+		// Set up the toolbar
+		Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
+		setSupportActionBar(toolbar);
+		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		updateSummary();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.metrics_menu, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		switch (item.getItemId()) {
+			case android.R.id.home:
+				NavUtils.navigateUpFromSameTask(this);
+				return true;
+			case R.id.action_export:
+				exportReport();
+				return true;
+			case R.id.action_reset:
+				Metrics.reset();
+				updateSummary();
+				return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	private void updateSummary() {
+		StringBuilder builder = new StringBuilder();
+		try {
+			Metrics.writeSummary(builder);
+		} catch (IOException e) {
+			// StringBuilder doesn't throw
+		}
+		mMetricsText.setText(builder);
+	}
+
+	/**
+	 * Write the full report and share it. The report is only a few kilobytes, so it's written on the main thread.
+	 */
+	private void exportReport() {
+		File output = SharedFiles.getFile(this, EXPORT_FILE);
+
+		Writer writer = null;
+		try {
+			writer = new FileWriter(output);
+			Metrics.writeReport(writer);
+		} catch (IOException e) {
+			Toast.makeText(this, getString(R.string.metrics_export_failed, e.getMessage()), Toast.LENGTH_LONG).show();
+			return;
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// Ignore
+				}
+			}
+		}
+
+		startActivity(SharedFiles.createShareIntent(this, output, "text/plain", getString(R.string.metrics_share)));
+	}
+}
@@ -17,16 +17,22 @@
 package com.emetophobe.unitconverter.activities;
 
 import android.os.Bundle;
+import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.ActionBarActivity;
 import android.support.v7.widget.Toolbar;
 import android.view.MenuItem;
 
+import com.emetophobe.unitconverter.Favorites;
+import com.emetophobe.unitconverter.Metrics;
+import com.emetophobe.unitconverter.Preferences;
 import com.emetophobe.unitconverter.R;
 
 
 public class SettingsActivity extends ActionBarActivity {
+	public static final String PREF_METRICS = "pref_metrics";
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -56,6 +62,24 @@ public class SettingsActivity extends ActionBarActivity {
 		public void onActivityCreated(Bundle savedInstanceState) {
 			super.onActivityCreated(savedInstanceState);
 			addPreferencesFromResource(R.xml.preferences);
+
+			// Start or stop recording as soon as the metrics preference changes
+			findPreference(PREF_METRICS).setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+				@Override
+				public boolean onPreferenceChange(Preference preference, Object newValue) {
+					Metrics.setEnabled((Boolean) newValue);
+					return true;
+				}
+			});
+
+			// The pinned conversions are formatted ahead of time, so format them again with the new precision
+			findPreference(Preferences.PREF_PRECISION).setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+				@Override
+				public boolean onPreferenceChange(Preference preference, Object newValue) {
+					Favorites.setPrecision(getActivity(), Preferences.parsePrecision((String) newValue));
+					return true;
+				}
+			});
 		}
 	}
 }
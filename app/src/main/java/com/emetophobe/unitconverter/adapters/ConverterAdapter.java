@@ -17,67 +17,270 @@
 package com.emetophobe.unitconverter.adapters;
 
 import android.content.Context;
-import android.util.Pair;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.TextView;
 
+import com.emetophobe.unitconverter.Metrics;
 import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.engine.DecimalFormatter;
+import com.emetophobe.unitconverter.engine.ResultList;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 
-public class ConverterAdapter extends BaseAdapter {
+/**
+ * Shows a list of conversion results. Each row has the stable id of its destination unit, and new results are diffed
+ * against the ones that are shown so that only the rows whose value changed are rebound, and only their value.
+ */
+public class ConverterAdapter extends RecyclerView.Adapter<ConverterAdapter.ViewHolder> {
+	// Payload of the changes that only affect the value of a row
+	private static final Object PAYLOAD_VALUE = new Object();
+
 	private LayoutInflater mInflater;
-	private List<Pair<String, Double>> mData;
+	private ResultList mResults;
+	private int mPrecision;
+
+	// The rows that are shown: their destination unit and value, by position
+	private int mShownCount;
+	private int[] mShownUnits = new int[0];
+	private double[] mShownValues = new double[0];
+	private BigDecimal[] mShownExactValues = new BigDecimal[0];
+	private boolean mShownExact;
+
+	// The destination units of the new results, swapped with the shown units once they are dispatched so that
+	// publishing results doesn't allocate
+	private int[] mNewUnits = new int[0];
 
-	public ConverterAdapter(Context context, List<Pair<String, Double>> list) {
+	// Scratch buffer used to format the values, shared by every row
+	private final StringBuilder mBuilder = new StringBuilder();
+
+	public ConverterAdapter(Context context, ResultList results) {
 		mInflater = LayoutInflater.from(context);
-		mData = list;
+		setHasStableIds(true);
+		setResults(results);
 	}
 
-	@Override
-	public int getCount() {
-		return mData == null ? 0 : mData.size();
+	/**
+	 * Replace the results shown by the adapter, notifying the rows that were removed, inserted or changed.
+	 */
+	public void setResults(ResultList results) {
+		mResults = results;
+
+		int count = results.size();
+		boolean exact = results.isExact();
+		if (mNewUnits.length < count) {
+			mNewUnits = new int[Math.max(count, mShownUnits.length)];
+		}
+		int[] units = mNewUnits;
+		for (int position = 0; position < count; position++) {
+			units[position] = results.getUnit(position);
+		}
+
+		if (exact != mShownExact) {
+			// Every value is formatted differently
+			dispatchUnitChanges(units, count);
+			if (count > 0) {
+				notifyItemRangeChanged(0, count, PAYLOAD_VALUE);
+			}
+		} else {
+			dispatchChanges(units, count);
+		}
+
+		// Remember what is shown now
+		if (mShownValues.length < count) {
+			mShownValues = new double[count];
+			mShownExactValues = new BigDecimal[count];
+		}
+		mNewUnits = mShownUnits;
+		mShownUnits = units;
+		mShownCount = count;
+		mShownExact = exact;
+		for (int position = 0; position < count; position++) {
+			mShownValues[position] = results.getValue(position);
+			mShownExactValues[position] = exact ? results.getExactValue(position) : null;
+		}
+	}
+
+	/**
+	 * Set the number of decimal places the values are rounded to.
+	 */
+	public void setPrecision(int precision) {
+		if (precision != mPrecision) {
+			mPrecision = precision;
+			if (mShownCount > 0) {
+				notifyItemRangeChanged(0, mShownCount, PAYLOAD_VALUE);
+			}
+		}
 	}
 
 	@Override
-	public Pair<String, Double> getItem(int position) {
-		return mData == null ? null : mData.get(position);
+	public int getItemCount() {
+		return mResults.size();
 	}
 
 	@Override
 	public long getItemId(int position) {
-		return position;
+		return mResults.getUnit(position);
 	}
 
 	@Override
-	public View getView(int position, View convertView, ViewGroup parent) {
-		ViewHolder holder;
-
-		if (convertView == null) {
-			convertView = mInflater.inflate(R.layout.converter_list_item, parent, false);
-			holder = new ViewHolder();
-			holder.name = (TextView) convertView.findViewById(R.id.unit_name);
-			holder.value = (TextView) convertView.findViewById(R.id.unit_value);
-			convertView.setTag(holder);
+	public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+		return new ViewHolder(mInflater.inflate(R.layout.converter_list_item, parent, false));
+	}
+
+	@Override
+	public void onBindViewHolder(ViewHolder holder, int position) {
+		holder.name.setText(mResults.getName(position));
+		bindValue(holder, position);
+	}
+
+	@Override
+	public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+		if (payloads.isEmpty()) {
+			onBindViewHolder(holder, position);
+		} else {
+			// The unit names never change, so only the value needs to be bound
+			bindValue(holder, position);
+		}
+	}
+
+	/**
+	 * Notify the rows that were removed or inserted, without comparing the values.
+	 */
+	private void dispatchUnitChanges(int[] units, int count) {
+		dispatch(units, count, false);
+	}
+
+	/**
+	 * Notify the rows that were removed, inserted or whose value changed.
+	 */
+	private void dispatchChanges(int[] units, int count) {
+		dispatch(units, count, true);
+	}
+
+	/**
+	 * Merge the shown rows with the new ones. Both are in unit order, so a single pass finds every removed, inserted
+	 * and kept row. Each notification uses the positions left by the previous ones, as RecyclerView expects.
+	 */
+	private void dispatch(int[] units, int count, boolean compareValues) {
+		int oldPosition = 0;
+		int newPosition = 0;
+		int changeStart = 0;
+		int changeCount = 0;
+
+		while (oldPosition < mShownCount || newPosition < count) {
+			if (oldPosition < mShownCount && newPosition < count
+					&& mShownUnits[oldPosition] == units[newPosition]) {
+				// Kept row: collect the adjacent rows whose value changed into a single notification
+				if (compareValues && isValueChanged(oldPosition, newPosition)) {
+					if (changeCount > 0 && changeStart + changeCount != newPosition) {
+						notifyItemRangeChanged(changeStart, changeCount, PAYLOAD_VALUE);
+						changeCount = 0;
+					}
+					if (changeCount == 0) {
+						changeStart = newPosition;
+					}
+					changeCount++;
+				}
+				oldPosition++;
+				newPosition++;
+				continue;
+			}
+
+			if (changeCount > 0) {
+				notifyItemRangeChanged(changeStart, changeCount, PAYLOAD_VALUE);
+				changeCount = 0;
+			}
+			if (newPosition == count
+					|| (oldPosition < mShownCount && mShownUnits[oldPosition] < units[newPosition])) {
+				notifyItemRemoved(newPosition);
+				oldPosition++;
+			} else {
+				notifyItemInserted(newPosition);
+				newPosition++;
+			}
+		}
+
+		if (changeCount > 0) {
+			notifyItemRangeChanged(changeStart, changeCount, PAYLOAD_VALUE);
+		}
+	}
+
+	private boolean isValueChanged(int oldPosition, int newPosition) {
+		if (mShownExact) {
+			return mShownExactValues[oldPosition].compareTo(mResults.getExactValue(newPosition)) != 0;
+		}
+		return Double.doubleToLongBits(mShownValues[oldPosition])
+				!= Double.doubleToLongBits(mResults.getValue(newPosition));
+	}
+
+	private void bindValue(ViewHolder holder, int position) {
+		long start = Metrics.start();
+		mBuilder.setLength(0);
+		if (mResults.isExact()) {
+			appendExactValue(mResults.getExactValue(position));
 		} else {
-			holder = (ViewHolder) convertView.getTag();
+			DecimalFormatter.append(mBuilder, mResults.getValue(position), mPrecision);
 		}
+		Metrics.FORMAT.recordSince(start);
+		start = Metrics.start();
+		bindBuilder(holder);
+		Metrics.BIND.recordSince(start);
+	}
 
-		Pair<String, Double> pair = getItem(position);
-		if (pair != null) {
-			holder.name.setText(pair.first);
-			holder.value.setText(String.valueOf(pair.second));
+	/**
+	 * Format an exact value, which is already rounded, without trailing zeros or an exponent.
+	 */
+	private void appendExactValue(BigDecimal value) {
+		if (value.signum() == 0) {
+			// stripTrailingZeros() doesn't strip zero itself before Java 8
+			mBuilder.append('0');
+		} else {
+			mBuilder.append(value.stripTrailingZeros().toPlainString());
 		}
+	}
 
-		return convertView;
+	/**
+	 * Copy the formatted value into the row's character buffer and show it, unless the row already shows it. TextView
+	 * wraps the buffer instead of copying it, so each row keeps its own buffer and reuses it every time it's bound.
+	 */
+	private void bindBuilder(ViewHolder holder) {
+		int length = mBuilder.length();
+		if (holder.length == length && holder.contentEquals(mBuilder)) {
+			return;
+		}
+
+		if (holder.chars == null || holder.chars.length < length) {
+			holder.chars = new char[Math.max(length, 32)];
+		}
+		mBuilder.getChars(0, length, holder.chars, 0);
+		holder.length = length;
+		holder.value.setText(holder.chars, 0, length);
 	}
 
-	private static class ViewHolder {
+	public static class ViewHolder extends RecyclerView.ViewHolder {
 		public TextView name;
 		public TextView value;
+		public char[] chars;
+		public int length = -1;
+
+		public ViewHolder(View view) {
+			super(view);
+			name = (TextView) view.findViewById(R.id.unit_name);
+			value = (TextView) view.findViewById(R.id.unit_value);
+		}
+
+		boolean contentEquals(CharSequence text) {
+			for (int i = 0; i < length; i++) {
+				if (chars[i] != text.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.fragments;
+
+import android.app.Fragment;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.Spinner;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.Metrics;
+import com.emetophobe.unitconverter.Preferences;
+import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.adapters.ConverterAdapter;
+import com.emetophobe.unitconverter.engine.CatalogResults;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.ExpressionEvaluator;
+import com.emetophobe.unitconverter.engine.UnitCatalog;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+
+import butterknife.ButterKnife;
+import butterknife.InjectView;
+import butterknife.OnItemSelected;
+import butterknife.OnTextChanged;
+
+
+/**
+ * Converts a value from any unit of any converter type to every compatible unit, so switching to a unit of another
+ * converter type doesn't need another converter. The list only formats the rows that are visible.
+ */
+public class AllUnitsFragment extends Fragment implements SharedPreferences.OnSharedPreferenceChangeListener {
+	private static final String INCHES = "inches";
+
+	private UnitCatalog mCatalog;
+	private CatalogResults mResults;
+	private ExpressionEvaluator mEvaluator;
+	private SharedPreferences mSharedPrefs;
+
+	private ConverterAdapter mAdapter;
+	private ArrayAdapter<String> mSpinnerAdapter;
+
+	@InjectView(R.id.unit_spinner)
+	protected Spinner mUnitSpinner;
+
+	@InjectView(R.id.value_edit)
+	protected EditText mValueEdit;
+
+	@InjectView(R.id.list)
+	protected RecyclerView mList;
+
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		mCatalog = UnitCatalog.getInstance();
+		mResults = new CatalogResults(mCatalog);
+		mEvaluator = new ExpressionEvaluator(DecimalFormatSymbols.getInstance().getDecimalSeparator());
+
+		// Set up the list adapter.
+		mAdapter = new ConverterAdapter(getActivity(), mResults);
+
+		// Set up the shared preferences.
+		mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+		mSharedPrefs.registerOnSharedPreferenceChangeListener(this);
+		updatePrecision();
+
+		// Label every unit with its converter type, e.g. "feet (Length)"
+		String[] converterNames = getResources().getStringArray(R.array.converter_names);
+		List<String> labels = new ArrayList<String>(mCatalog.getUnitCount());
+		for (int unit = 0; unit < mCatalog.getUnitCount(); unit++) {
+			labels.add(getString(R.string.all_units_label, mCatalog.getUnitName(unit),
+					converterNames[mCatalog.getConverterType(unit).toInteger()]));
+		}
+		mSpinnerAdapter = new ArrayAdapter<String>(getActivity(), android.R.layout.simple_spinner_item, labels);
+		mSpinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+	}
+
+	@Override
+	public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+		return inflater.inflate(R.layout.fragment_converter, container, false);
+	}
+
+	@Override
+	public void onViewCreated(View view, Bundle savedInstanceState) {
+		super.onViewCreated(view, savedInstanceState);
+		ButterKnife.inject(this, view);
+	}
+
+	@Override
+	public void onDestroyView() {
+		super.onDestroyView();
+		ButterKnife.reset(this);
+	}
+
+	@Override
+	public void onActivityCreated(Bundle savedInstanceState) {
+		super.onActivityCreated(savedInstanceState);
+
+		// Attach the adapters to the new views. Value changes are rebound in place instead of being animated.
+		mList.setLayoutManager(new LinearLayoutManager(getActivity()));
+		mList.getItemAnimator().setSupportsChangeAnimations(false);
+		mList.setAdapter(mAdapter);
+		mUnitSpinner.setAdapter(mSpinnerAdapter);
+	}
+
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		mSharedPrefs.unregisterOnSharedPreferenceChangeListener(this);
+	}
+
+	/**
+	 * Reformat the conversion list whenever the precision preference is changed.
+	 */
+	@Override
+	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+		if (key.equals(Preferences.PREF_PRECISION)) {
+			updatePrecision();
+		}
+	}
+
+	/**
+	 * Called when the unit Spinner is changed.
+	 */
+	@OnItemSelected(R.id.unit_spinner)
+	protected void onItemSelected(int position) {
+		updateListView();
+	}
+
+	/**
+	 * Called when the value EditText is changed.
+	 */
+	@OnTextChanged(R.id.value_edit)
+	protected void onTextChanged(CharSequence text) {
+		long start = Metrics.startKeystroke();
+		updateListView();
+		Metrics.endKeystroke(start);
+	}
+
+	/**
+	 * Stores the precision preference.
+	 */
+	private void updatePrecision() {
+		mAdapter.setPrecision(Preferences.getPrecision(mSharedPrefs));
+	}
+
+	/**
+	 * Convert the current value to every compatible unit. A single pass over one range of the catalog is cheap enough
+	 * to run on the main thread, so it isn't scheduled like the single converters.
+	 */
+	private void updateListView() {
+		int sourceUnit = mUnitSpinner.getSelectedItemPosition();
+		if (sourceUnit < 0) {
+			return;
+		}
+
+		long start = Metrics.start();
+		// Lengths can be typed in feet and inches, e.g. 12'6"
+		ConverterType type = mCatalog.getConverterType(sourceUnit);
+		mEvaluator.setLengthMarksEnabled(type == ConverterType.LENGTH);
+		if (mEvaluator.evaluate(mValueEdit.getText()) == ExpressionEvaluator.INVALID) {
+			Metrics.countInvalidInput();
+		}
+
+		double value = mEvaluator.getValue();
+		if (mEvaluator.usesLengthMarks()) {
+			ConversionEngine engine = ConversionEngine.forType(type);
+			value = engine.convert(engine.findUnit(INCHES), sourceUnit - mCatalog.getFirstUnit(type), value);
+		}
+		Metrics.PARSE.recordSince(start);
+
+		start = Metrics.start();
+		mResults.update(sourceUnit, value);
+		Metrics.CONVERT.recordSince(start);
+		mAdapter.setResults(mResults);
+	}
+}
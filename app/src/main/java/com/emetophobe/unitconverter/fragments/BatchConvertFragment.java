@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter.fragments;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+
+import com.emetophobe.unitconverter.engine.BatchConverter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Headless fragment that keeps a batch conversion running while its activity is recreated, e.g. on rotation. The
+ * result is handed to whichever activity is resumed when it finishes, and the conversion is cancelled once the
+ * activity finishes for good.
+ */
+public class BatchConvertFragment extends Fragment {
+	public static final String TAG = "batch_convert";
+
+	private BatchConvertCallbacks mCallbacks;
+	private ConvertTask mTask;
+
+	// The result of a conversion that finished while no activity was resumed
+	private ConvertTask mFinishedTask;
+
+	public BatchConvertFragment() {
+	}
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setRetainInstance(true);
+	}
+
+	@Override
+	public void onAttach(Activity activity) {
+		super.onAttach(activity);
+		try {
+			mCallbacks = (BatchConvertCallbacks) activity;
+		} catch (ClassCastException e) {
+			throw new ClassCastException("Activity must implement BatchConvertCallbacks.");
+		}
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		if (mFinishedTask != null) {
+			deliverResult(mFinishedTask);
+		}
+	}
+
+	@Override
+	public void onDetach() {
+		super.onDetach();
+		mCallbacks = null;
+	}
+
+	/**
+	 * Only called when the activity finishes, since the fragment is retained across configuration changes.
+	 */
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		if (mTask != null) {
+			mTask.cancel(true);
+			mTask = null;
+		}
+	}
+
+	/**
+	 * Start converting the input file in the background.
+	 *
+	 * @param resolver  The content resolver used to open the input file.
+	 * @param input     The input file.
+	 * @param converter The batch converter.
+	 * @param output    The file to write the converted output to.
+	 */
+	public void convert(ContentResolver resolver, Uri input, BatchConverter converter, File output) {
+		mFinishedTask = null;
+		mTask = new ConvertTask(resolver, input, converter, output);
+		mTask.execute();
+	}
+
+	/**
+	 * Returns true if a conversion is running or its result hasn't been delivered yet.
+	 */
+	public boolean isConverting() {
+		return mTask != null || mFinishedTask != null;
+	}
+
+	private void deliverResult(ConvertTask task) {
+		mFinishedTask = null;
+		if (task.mCount == null) {
+			mCallbacks.onConversionFailed(task.mError);
+		} else {
+			mCallbacks.onConversionFinished(task.mCount, task.mOutput);
+		}
+	}
+
+	/**
+	 * Streams the file through the batch converter in the background.
+	 */
+	private class ConvertTask extends AsyncTask<Void, Void, Long> {
+		private final ContentResolver mResolver;
+		private final Uri mInput;
+		private final BatchConverter mConverter;
+		private final File mOutput;
+		private IOException mError;
+		private Long mCount;
+
+		public ConvertTask(ContentResolver resolver, Uri input, BatchConverter converter, File output) {
+			mResolver = resolver;
+			mInput = input;
+			mConverter = converter;
+			mOutput = output;
+		}
+
+		@Override
+		protected Long doInBackground(Void... params) {
+			ReadableByteChannel in = null;
+			WritableByteChannel out = null;
+			try {
+				InputStream stream = mResolver.openInputStream(mInput);
+				in = Channels.newChannel(stream);
+				out = new FileOutputStream(mOutput).getChannel();
+				return mConverter.convert(in, out);
+			} catch (IOException e) {
+				mError = e;
+				return null;
+			} finally {
+				closeQuietly(in);
+				closeQuietly(out);
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Long count) {
+			mTask = null;
+			mCount = count;
+			if (isResumed()) {
+				deliverResult(this);
+			} else {
+				mFinishedTask = this;
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+
+	/**
+	 * Callbacks interface that all activities using this fragment must implement.
+	 */
+	public static interface BatchConvertCallbacks {
+		/**
+		 * Called on the main thread when the file has been converted.
+		 *
+		 * @param count  The number of values that were converted.
+		 * @param output The converted file.
+		 */
+		void onConversionFinished(long count, File output);
+
+		/**
+		 * Called on the main thread when the file couldn't be read or written.
+		 */
+		void onConversionFailed(IOException error);
+	}
+}
@@ -16,26 +16,44 @@
 
 package com.emetophobe.unitconverter.fragments;
 
-import android.app.ListFragment;
+import android.app.Fragment;
+import android.content.DialogInterface;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
-import android.support.annotation.ArrayRes;
 import android.support.annotation.NonNull;
-import android.util.Pair;
+import android.support.v7.app.AlertDialog;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.Spinner;
+import android.widget.Toast;
 
+import com.emetophobe.unitconverter.ConversionScheduler;
 import com.emetophobe.unitconverter.ConverterType;
-import com.emetophobe.unitconverter.MathUtils;
+import com.emetophobe.unitconverter.Favorites;
+import com.emetophobe.unitconverter.History;
+import com.emetophobe.unitconverter.Metrics;
+import com.emetophobe.unitconverter.Preferences;
 import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.StartupTrace;
 import com.emetophobe.unitconverter.adapters.ConverterAdapter;
-
-import java.util.ArrayList;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.ConversionResults;
+import com.emetophobe.unitconverter.engine.DecimalParser;
+import com.emetophobe.unitconverter.engine.ExpressionEvaluator;
+import com.emetophobe.unitconverter.engine.HistoryLog;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.DecimalFormatSymbols;
 import java.util.List;
 
 import butterknife.ButterKnife;
@@ -44,20 +62,37 @@ import butterknife.OnItemSelected;
 import butterknife.OnTextChanged;
 
 
-public class GenericConverterFragment extends ListFragment implements SharedPreferences.OnSharedPreferenceChangeListener {
+public class GenericConverterFragment extends Fragment implements SharedPreferences.OnSharedPreferenceChangeListener,
+		ConversionScheduler.Callback {
 	public static final String EXTRA_CONVERTER_TYPE = "converter_type";
-	private static final String PREF_PRECISION = "pref_precision";
-	private static final String DEFAULT_PRECISION = "5";
+	private static final String PREF_EXACT = "pref_exact";
+	private static final long DEBOUNCE_DELAY = 50;
+	private static final String INCHES = "inches";
 
 	private ConverterType mConverterType;
+	private ConversionEngine mEngine;
 	private SharedPreferences mSharedPrefs;
 
-	protected String[] mUnitNames;
-	protected Double[] mUnitValues;
 	protected int mPrecision;
-	private List<Pair<String, Double>> mConversionList = new ArrayList<>();
+	private boolean mExact;
+	private ConversionScheduler mScheduler;
+	private DecimalParser mParser;
+	private ExpressionEvaluator mEvaluator;
+	private int mInchesUnit;
 
 	private ConverterAdapter mAdapter;
+	private ArrayAdapter<String> mSpinnerAdapter;
+
+	// The last complete input, which is added to the history when the converter is paused
+	private HistoryLog mHistory;
+	private HistoryLog.Entry mPendingEntry;
+	private int mPendingUnit = -1;
+	private double mPendingValue = Double.NaN;
+	private boolean mInputComplete;
+	private int mInputUnit;
+	private double mInputValue;
+	private int mRecordedUnit = -1;
+	private double mRecordedValue;
 
 	@InjectView(R.id.unit_spinner)
 	protected Spinner mUnitSpinner;
@@ -65,6 +100,62 @@ public class GenericConverterFragment extends ListFragment implements SharedPref
 	@InjectView(R.id.value_edit)
 	protected EditText mValueEdit;
 
+	@InjectView(R.id.list)
+	protected RecyclerView mList;
+
+
+	/**
+	 * Set up everything that doesn't depend on the view. This only happens once per fragment, so that a converter that
+	 * is detached and attached again keeps its adapters and results.
+	 */
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		StartupTrace.beginSection("GenericConverterFragment.onCreate");
+
+		// Get the converter type and its conversion engine, which holds the unit names and values
+		mConverterType = (ConverterType) getArguments().getSerializable(EXTRA_CONVERTER_TYPE);
+		mEngine = ConversionEngine.forType(mConverterType);
+		mScheduler = new ConversionScheduler(mEngine, DEBOUNCE_DELAY, this);
+		char decimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+		mParser = new DecimalParser(decimalSeparator);
+
+		// Lengths can be typed in feet and inches, e.g. 12'6"
+		mEvaluator = new ExpressionEvaluator(decimalSeparator);
+		mEvaluator.setLengthMarksEnabled(mConverterType == ConverterType.LENGTH);
+		mInchesUnit = mEngine.findUnit(INCHES);
+
+		// Set up the list adapter.
+		mAdapter = new ConverterAdapter(getActivity(), mScheduler.getResults());
+
+		// Set up the shared preferences.
+		mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+		mSharedPrefs.registerOnSharedPreferenceChangeListener(this);
+		updatePrecision();
+		mExact = mSharedPrefs.getBoolean(PREF_EXACT, false);
+
+		// Set up the unit spinner adapter. The unit names are shared by every fragment of this converter type.
+		mSpinnerAdapter = new ArrayAdapter<String>(getActivity(), android.R.layout.simple_spinner_item,
+				mEngine.getUnitNameList());
+		mSpinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+
+		setHasOptionsMenu(true);
+
+		// Start from the last conversion of this converter type
+		mHistory = History.get(getActivity());
+		if (savedInstanceState == null && mHistory != null) {
+			try {
+				mPendingEntry = mHistory.getLatest(mConverterType);
+			} catch (IOException e) {
+				// Start from nothing
+			}
+			if (mPendingEntry != null) {
+				mRecordedUnit = mPendingEntry.getUnit();
+				mRecordedValue = mPendingEntry.getValue();
+			}
+		}
+		StartupTrace.endSection();
+	}
 
 	@Override
 	public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -80,6 +171,7 @@ public class GenericConverterFragment extends ListFragment implements SharedPref
 	@Override
 	public void onDestroyView() {
 		super.onDestroyView();
+		mScheduler.cancel();
 		ButterKnife.reset(this);
 	}
 
@@ -87,25 +179,42 @@ public class GenericConverterFragment extends ListFragment implements SharedPref
 	public void onActivityCreated(Bundle savedInstanceState) {
 		super.onActivityCreated(savedInstanceState);
 
-		// Get the converter type and load the unit names and values
-		mConverterType = (ConverterType) getArguments().getSerializable(EXTRA_CONVERTER_TYPE);
-		mUnitNames = getUnitNames();
-		mUnitValues = getUnitValues();
+		// Attach the adapters to the new views. Value changes are rebound in place instead of being animated.
+		mList.setLayoutManager(new LinearLayoutManager(getActivity()));
+		mList.getItemAnimator().setSupportsChangeAnimations(false);
+		mList.setAdapter(mAdapter);
+		mUnitSpinner.setAdapter(mSpinnerAdapter);
 
-		// Set up the shared preferences.
-		mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
-		mSharedPrefs.registerOnSharedPreferenceChangeListener(this);
-		updatePrecision();
+		if (mPendingEntry != null) {
+			showEntry(mPendingEntry);
+		}
+		if (mPendingUnit >= 0) {
+			showValue(mPendingUnit, mPendingValue);
+		}
+	}
 
-		// Set up the list adapter.
-		mAdapter = new ConverterAdapter(getActivity(), mConversionList);
-		setListAdapter(mAdapter);
-
-		// Set up the unit spinner.
-		ArrayAdapter<CharSequence> spinnerAdapter = new ArrayAdapter<CharSequence>(getActivity(),
-				android.R.layout.simple_spinner_item, mUnitNames);
-		spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-		mUnitSpinner.setAdapter(spinnerAdapter);
+	@Override
+	public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+		inflater.inflate(R.menu.converter_menu, menu);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		switch (item.getItemId()) {
+			case R.id.action_pin:
+				showPinDialog();
+				return true;
+			case R.id.action_unpin:
+				showUnpinDialog();
+				return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+		recordHistory();
 	}
 
 	@Override
@@ -115,12 +224,18 @@ public class GenericConverterFragment extends ListFragment implements SharedPref
 	}
 
 	/**
-	 * Update the conversion list whenever the precision preference is changed.
+	 * Reformat the conversion list whenever the precision preference is changed. Exact results are rounded when they
+	 * are converted, so they are converted again instead.
 	 */
 	@Override
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-		if (key.equals(PREF_PRECISION)) {
+		if (key.equals(Preferences.PREF_PRECISION)) {
 			updatePrecision();
+			if (mExact) {
+				updateListView();
+			}
+		} else if (key.equals(PREF_EXACT)) {
+			mExact = sharedPreferences.getBoolean(PREF_EXACT, false);
 			updateListView();
 		}
 	}
@@ -138,122 +253,169 @@ public class GenericConverterFragment extends ListFragment implements SharedPref
 	 */
 	@OnTextChanged(R.id.value_edit)
 	protected void onTextChanged(CharSequence text) {
+		long start = Metrics.startKeystroke();
 		updateListView();
+		Metrics.endKeystroke(start);
 	}
 
 	/**
-	 * Stores the precision preference.
+	 * Show a conversion from the history. If the view hasn't been created yet, it is shown once it is.
 	 */
-	private void updatePrecision() {
-		mPrecision = MathUtils.parseInt(mSharedPrefs.getString(PREF_PRECISION, DEFAULT_PRECISION));
+	public void showEntry(HistoryLog.Entry entry) {
+		if (mUnitSpinner == null) {
+			mPendingEntry = entry;
+			return;
+		}
+
+		mPendingEntry = null;
+		if (entry.getUnit() < mEngine.getUnitCount()) {
+			showValue(entry.getUnit(), entry.getValue());
+		}
 	}
 
 	/**
-	 * Generate the conversion data and update the adapter.
+	 * Show a value in a unit, for example from a conversion that was typed in the search. If the view hasn't been
+	 * created yet, it is shown once it is.
+	 *
+	 * @param unit  The unit to select.
+	 * @param value The value to show, or NaN to keep the current value.
 	 */
-	private void updateListView() {
-		// Get the unit type and value to be converted.
-		int sourceUnit = mUnitSpinner.getSelectedItemPosition();
-		double value = MathUtils.parseDouble(mValueEdit.getText().toString());
-
-		// Create the conversion list
-		mConversionList.clear();
-		for (int destUnit = 0; destUnit < mUnitNames.length; destUnit++) {
-			// ignore identical unit types
-			if (sourceUnit != destUnit) {
-				mConversionList.add(new Pair<String, Double>(mUnitNames[destUnit], convert(sourceUnit, destUnit, value)));
-			}
+	public void showValue(int unit, double value) {
+		if (mUnitSpinner == null) {
+			mPendingUnit = unit;
+			mPendingValue = value;
+			return;
 		}
 
-		mAdapter.notifyDataSetChanged();
+		mPendingUnit = -1;
+		mUnitSpinner.setSelection(unit);
+		if (!Double.isNaN(value)) {
+			mValueEdit.setText(History.formatValue(value));
+			mValueEdit.setSelection(mValueEdit.length());
+		}
 	}
 
 	/**
-	 * Convert from one unit type to another.
-	 *
-	 * @param sourceUnit The source unit type.
-	 * @param destUnit   The destination unit type.
-	 * @param value      The number to convert.
-	 * @return The converted result.
+	 * Select a unit, for example one that was searched for. If the view hasn't been created yet, it is selected once
+	 * it is.
 	 */
-	protected Double convert(int sourceUnit, int destUnit, double value) {
-		// Just return the value if the units are the same or if the value is 0
-		if (sourceUnit == destUnit || value == 0.0) {
-			return value;
-		}
+	public void showUnit(int unit) {
+		showValue(unit, Double.NaN);
+	}
 
-		// Get the unit conversion values
-		double unitFrom = mUnitValues[sourceUnit];
-		double unitTo = mUnitValues[destUnit];
+	/**
+	 * Pin the conversion of the current value to a unit picked by the user to the widget. Without a complete value,
+	 * the conversion of 1 is pinned.
+	 */
+	private void showPinDialog() {
+		final int sourceUnit = mUnitSpinner.getSelectedItemPosition();
+		final double value = mInputComplete ? mInputValue : 1;
+		String title = getString(R.string.title_pin, History.formatValue(value), mEngine.getUnitName(sourceUnit));
+		String[] names = mEngine.getUnitNameList().toArray(new String[mEngine.getUnitCount()]);
+
+		new AlertDialog.Builder(getActivity()).setTitle(title).setItems(names, new DialogInterface.OnClickListener() {
+			@Override
+			public void onClick(DialogInterface dialog, int which) {
+				Favorites.add(getActivity(), mConverterType, sourceUnit, which, value);
+				Toast.makeText(getActivity(), R.string.pinned, Toast.LENGTH_SHORT).show();
+			}
+		}).show();
+	}
 
-		// Perform the conversion
-		value = value * unitFrom;
-		value = value / unitTo;
+	/**
+	 * Let the user pick a pinned conversion to remove from the widget.
+	 */
+	private void showUnpinDialog() {
+		List<Favorites.Favorite> favorites = Favorites.load(getActivity());
+		String[] labels = new String[favorites.size()];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = favorites.get(i).getText();
+		}
 
-		// Return the rounded result
-		return MathUtils.round(value, mPrecision);
+		AlertDialog.Builder builder = new AlertDialog.Builder(getActivity()).setTitle(R.string.action_unpin);
+		if (labels.length == 0) {
+			builder.setMessage(R.string.favorites_empty);
+		} else {
+			builder.setItems(labels, new DialogInterface.OnClickListener() {
+				@Override
+				public void onClick(DialogInterface dialog, int which) {
+					Favorites.remove(getActivity(), which);
+				}
+			});
+		}
+		builder.show();
 	}
 
 	/**
-	 * Returns a String array of unit names for the current converter type.
+	 * Add the last complete input to the history, unless it was the last one added.
 	 */
-	protected String[] getUnitNames() {
-		switch (mConverterType) {
-			case AREA:
-				return getResources().getStringArray(R.array.area_names);
-			case BYTES:
-				return getResources().getStringArray(R.array.bytes_names);
-			case DENSITY:
-				return getResources().getStringArray(R.array.density_names);
-			case LENGTH:
-				return getResources().getStringArray(R.array.length_names);
-			case MASS:
-				return getResources().getStringArray(R.array.mass_names);
-			case TIME:
-				return getResources().getStringArray(R.array.time_names);
-			case VOLUME:
-				return getResources().getStringArray(R.array.volume_names);
-			default:
-				throw new IllegalArgumentException("Unknown converter type: " + mConverterType);
+	private void recordHistory() {
+		if (mHistory == null || !mInputComplete || mInputUnit < 0 || (mInputUnit == mRecordedUnit
+				&& Double.doubleToLongBits(mInputValue) == Double.doubleToLongBits(mRecordedValue))) {
+			return;
 		}
+
+		mHistory.append(mConverterType, mInputUnit, mInputValue, System.currentTimeMillis());
+		mHistory.flush();
+		mRecordedUnit = mInputUnit;
+		mRecordedValue = mInputValue;
 	}
 
 	/**
-	 * Returns a Double array of unit values for the current converter type.
+	 * Stores the precision preference.
 	 */
-	protected Double[] getUnitValues() {
-		switch (mConverterType) {
-			case AREA:
-				return getUnitValues(R.array.area_units);
-			case BYTES:
-				return getUnitValues(R.array.bytes_units);
-			case DENSITY:
-				return getUnitValues(R.array.density_units);
-			case LENGTH:
-				return getUnitValues(R.array.length_units);
-			case MASS:
-				return getUnitValues(R.array.mass_units);
-			case TIME:
-				return getUnitValues(R.array.time_units);
-			case VOLUME:
-				return getUnitValues(R.array.volume_units);
-			default:
-				throw new IllegalArgumentException("Unknown converter type: " + mConverterType);
-		}
+	private void updatePrecision() {
+		mPrecision = Preferences.getPrecision(mSharedPrefs);
+		mAdapter.setPrecision(mPrecision);
 	}
 
 	/**
-	 * Returns a Double array from the specified string array resource identifier.
-	 *
-	 * @param resourceId The string array resource identifier.
-	 * @return The Double array of unit values.
+	 * Schedule a conversion of the current value. The adapter is updated once the conversion has finished.
 	 */
-	private Double[] getUnitValues(@ArrayRes int resourceId) {
-		String[] strings = getResources().getStringArray(resourceId);
-		Double[] values = new Double[strings.length];
-		for (int i = 0; i < strings.length; i++) {
-			values[i] = Double.valueOf(strings[i]);
+	private void updateListView() {
+		// The preferences can change while the fragment is detached; it converts again once its view is recreated
+		if (mUnitSpinner == null) {
+			return;
 		}
-		return values;
+
+		// Get the unit type and value to be converted. Empty, partial and invalid input never throws; it converts the
+		// part of the expression typed so far, or 0. Exact conversions only apply to plain numbers.
+		int sourceUnit = mUnitSpinner.getSelectedItemPosition();
+		CharSequence text = mValueEdit.getText();
+		long start = Metrics.start();
+		mInputUnit = sourceUnit;
+		if (mExact) {
+			int status = mParser.parseExact(text);
+			BigDecimal value = mParser.getExactValue();
+			if (value != null) {
+				Metrics.PARSE.recordSince(start);
+				mInputComplete = status == DecimalParser.PARSED;
+				mInputValue = value.doubleValue();
+				mScheduler.scheduleExact(sourceUnit, value, mPrecision);
+				return;
+			}
+		}
+
+		int status = mEvaluator.evaluate(text);
+		if (status == ExpressionEvaluator.INVALID) {
+			Metrics.countInvalidInput();
+		}
+		double value = mEvaluator.getValue();
+		if (mEvaluator.usesLengthMarks()) {
+			value = mEngine.convert(mInchesUnit, sourceUnit, value);
+		}
+		Metrics.PARSE.recordSince(start);
+		mInputComplete = status == ExpressionEvaluator.PARSED;
+		mInputValue = value;
+		mScheduler.schedule(sourceUnit, value);
+	}
+
+	/**
+	 * Show the results of the latest conversion. The first results shown since the app was started end the startup.
+	 */
+	@Override
+	public void onConversionFinished(ConversionResults results) {
+		mAdapter.setResults(results);
+		StartupTrace.firstConversion(getActivity());
 	}
 }
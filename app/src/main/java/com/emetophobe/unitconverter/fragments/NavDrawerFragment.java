@@ -38,6 +38,11 @@ import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.StartupTrace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 public class NavDrawerFragment extends Fragment {
@@ -64,7 +69,8 @@ public class NavDrawerFragment extends Fragment {
 		super.onCreate(savedInstanceState);
 
 		// Read in the flag indicating whether or not the user has demonstrated awareness of the
-		// drawer. See PREF_USER_LEARNED_DRAWER for details.
+		// drawer. See PREF_USER_LEARNED_DRAWER for details. The preferences are prewarmed by the
+		// application, so this doesn't wait for them to load.
 		SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
 		mUserLearnedDrawer = sp.getBoolean(PREF_USER_LEARNED_DRAWER, false);
 
@@ -87,20 +93,31 @@ public class NavDrawerFragment extends Fragment {
 		// Indicate that this fragment would like to influence the set of actions in the action bar.
 		setHasOptionsMenu(true);
 
-		// Load the list of converter names
-		String[] converterNames = getResources().getStringArray(R.array.converter_names);
+		// The drawer list is filled in when the drawer is first opened, so only the converter is loaded on startup
+		selectItem(mCurrentSelectedPosition);
+	}
+
+	/**
+	 * Fill in the drawer list with the converter names, followed by the all units view, unless it is already filled in.
+	 */
+	private void populateDrawerList() {
+		if (!isAdded() || mDrawerListView == null || mDrawerListView.getAdapter() != null) {
+			return;
+		}
+
+		StartupTrace.beginSection("NavDrawerFragment.populateDrawerList");
+		List<String> items = new ArrayList<String>(Arrays.asList(getResources().getStringArray(R.array.converter_names)));
+		items.add(getString(R.string.title_all_units));
 
-		// Setup the drawer listview
-		mDrawerListView.setAdapter(new ArrayAdapter<String>(getActionBar().getThemedContext(), R.layout.drawer_list_item, converterNames));
+		mDrawerListView.setAdapter(new ArrayAdapter<String>(getActionBar().getThemedContext(), R.layout.drawer_list_item, items));
 		mDrawerListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
 			@Override
 			public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
 				selectItem(position);
 			}
 		});
-
 		mDrawerListView.setItemChecked(mCurrentSelectedPosition, true);
-		selectItem(mCurrentSelectedPosition);
+		StartupTrace.endSection();
 	}
 
 	public boolean isDrawerOpen() {
@@ -142,6 +159,12 @@ public class NavDrawerFragment extends Fragment {
 				getActivity().supportInvalidateOptionsMenu(); // calls onPrepareOptionsMenu()
 			}
 
+			@Override
+			public void onDrawerSlide(View drawerView, float slideOffset) {
+				super.onDrawerSlide(drawerView, slideOffset);
+				populateDrawerList();
+			}
+
 			@Override
 			public void onDrawerOpened(View drawerView) {
 				super.onDrawerOpened(drawerView);
@@ -149,6 +172,8 @@ public class NavDrawerFragment extends Fragment {
 					return;
 				}
 
+				populateDrawerList();
+
 				if (!mUserLearnedDrawer) {
 					// The user manually opened the drawer; store this flag to prevent auto-showing
 					// the navigation drawer automatically in the future.
@@ -164,6 +189,7 @@ public class NavDrawerFragment extends Fragment {
 		// If the user hasn't 'learned' about the drawer, open it to introduce them to the drawer,
 		// per the navigation drawer design guidelines.
 		if (!mUserLearnedDrawer && !mFromSavedInstanceState) {
+			populateDrawerList();
 			mDrawerLayout.openDrawer(mFragmentContainerView);
 		}
 
@@ -179,11 +205,11 @@ public class NavDrawerFragment extends Fragment {
 	}
 
 	/**
-	 * Called when a navigation item is selected.
+	 * Select a navigation item, as if it was clicked.
 	 */
-	private void selectItem(int position) {
+	public void selectItem(int position) {
 		mCurrentSelectedPosition = position;
-		if (mDrawerListView != null) {
+		if (mDrawerListView != null && mDrawerListView.getAdapter() != null) {
 			mDrawerListView.setItemChecked(position, true);
 		}
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.widget;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import com.emetophobe.unitconverter.Favorites;
+import com.emetophobe.unitconverter.R;
+import com.emetophobe.unitconverter.activities.MainActivity;
+
+import java.util.List;
+
+
+/**
+ * The home screen widget, which shows the pinned conversions. The text of each conversion was formatted when it was
+ * pinned, so updating the widget only reads it. The widget has no update period; it's updated when the pinned
+ * conversions change.
+ */
+public class FavoritesWidgetProvider extends AppWidgetProvider {
+	private static final int[] ROW_IDS = {R.id.favorite_1, R.id.favorite_2, R.id.favorite_3, R.id.favorite_4};
+
+	@Override
+	public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+		appWidgetManager.updateAppWidget(appWidgetIds, createViews(context));
+	}
+
+	/**
+	 * Update every widget that is on the home screen.
+	 */
+	public static void updateAll(Context context) {
+		AppWidgetManager manager = AppWidgetManager.getInstance(context);
+		int[] ids = manager.getAppWidgetIds(new ComponentName(context, FavoritesWidgetProvider.class));
+		if (ids.length > 0) {
+			manager.updateAppWidget(ids, createViews(context));
+		}
+	}
+
+	/**
+	 * Create the views of the widget. Tapping a conversion opens it in its converter.
+	 */
+	private static RemoteViews createViews(Context context) {
+		List<Favorites.Favorite> favorites = Favorites.load(context);
+		RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_favorites);
+		views.setViewVisibility(R.id.favorites_empty, favorites.isEmpty() ? View.VISIBLE : View.GONE);
+		views.setOnClickPendingIntent(R.id.favorites_empty,
+				PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), 0));
+
+		for (int i = 0; i < ROW_IDS.length; i++) {
+			if (i >= favorites.size()) {
+				views.setViewVisibility(ROW_IDS[i], View.GONE);
+				continue;
+			}
+
+			Favorites.Favorite favorite = favorites.get(i);
+			Intent intent = MainActivity.createConversionIntent(context, favorite.getConverterType(),
+					favorite.getSourceUnit(), favorite.getValue());
+			views.setViewVisibility(ROW_IDS[i], View.VISIBLE);
+			views.setTextViewText(ROW_IDS[i], favorite.getText());
+			views.setOnClickPendingIntent(ROW_IDS[i],
+					PendingIntent.getActivity(context, i + 1, intent, PendingIntent.FLAG_UPDATE_CURRENT));
+		}
+		return views;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the multiply and divide conversion path against the precomputed ratio matrix, converting one value to
+ * every unit of a converter type the way the conversion list does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionMatrixBenchmark {
+	@Param({"AREA", "BYTES", "DENSITY", "LENGTH", "MASS", "TIME", "VOLUME"})
+	public ConverterType converterType;
+
+	private ConversionEngine mEngine;
+	private double[] mResults;
+	private int mSourceUnit;
+	private double mValue;
+
+	@Setup
+	public void setUp() {
+		mEngine = ConversionEngine.forType(converterType);
+		mResults = new double[mEngine.getUnitCount()];
+		mSourceUnit = mEngine.getUnitCount() / 2;
+		mValue = 1234.5678;
+	}
+
+	/**
+	 * The original path: multiply by the source factor, then divide by the destination factor.
+	 */
+	@Benchmark
+	public double[] divide() {
+		for (int destUnit = 0; destUnit < mResults.length; destUnit++) {
+			mResults[destUnit] = mEngine.fromBase(destUnit, mEngine.toBase(mSourceUnit, mValue));
+		}
+		return mResults;
+	}
+
+	/**
+	 * A single ratio lookup and multiply per destination unit.
+	 */
+	@Benchmark
+	public double[] matrix() {
+		for (int destUnit = 0; destUnit < mResults.length; destUnit++) {
+			mResults[destUnit] = mEngine.convert(mSourceUnit, destUnit, mValue);
+		}
+		return mResults;
+	}
+
+	/**
+	 * Every destination unit in one row fetch.
+	 */
+	@Benchmark
+	public double[] matrixRow() {
+		mEngine.convertAll(mSourceUnit, mValue, mResults);
+		return mResults;
+	}
+}
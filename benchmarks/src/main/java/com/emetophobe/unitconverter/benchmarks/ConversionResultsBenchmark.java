@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.CatalogResults;
+import com.emetophobe.unitconverter.engine.ConversionResults;
+import com.emetophobe.unitconverter.engine.UnitCatalog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures one conversion list update, for a single converter and for the all units catalog, where each update moves
+ * to a unit of the next converter type. Run with -prof gc to check that the updates don't allocate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionResultsBenchmark {
+	private ConversionResults mResults;
+	private int mUnitCount;
+	private int mSourceUnit;
+	private double mValue;
+
+	private CatalogResults mCatalogResults;
+	private int mCatalogUnitCount;
+	private int mCatalogSourceUnit;
+
+	@Setup
+	public void setUp() {
+		ConversionEngine engine = ConversionEngine.forType(ConverterType.VOLUME);
+		mResults = new ConversionResults(engine);
+		mUnitCount = engine.getUnitCount();
+		mValue = 1234.5678;
+
+		UnitCatalog catalog = UnitCatalog.getInstance();
+		mCatalogResults = new CatalogResults(catalog);
+		mCatalogUnitCount = catalog.getUnitCount();
+	}
+
+	@Benchmark
+	public ConversionResults update() {
+		mSourceUnit = (mSourceUnit + 1) % mUnitCount;
+		mResults.update(mSourceUnit, mValue);
+		return mResults;
+	}
+
+	@Benchmark
+	public CatalogResults catalogUpdate() {
+		// Step by a prime number of units so that consecutive updates land in different converter types
+		mCatalogSourceUnit = (mCatalogSourceUnit + 13) % mCatalogUnitCount;
+		mCatalogResults.update(mCatalogSourceUnit, mValue);
+		return mCatalogResults;
+	}
+}
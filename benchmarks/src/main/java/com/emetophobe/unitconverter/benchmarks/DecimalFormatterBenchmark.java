@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.engine.DecimalFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the original round and String.valueOf formatting against DecimalFormatter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecimalFormatterBenchmark {
+	private static final int COUNT = 1024;
+
+	@Param({"2", "5", "10"})
+	public int precision;
+
+	private final StringBuilder mBuilder = new StringBuilder();
+	private double[] mValues;
+	private int mIndex;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		mValues = new double[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			mValues[i] = random.nextDouble() * Math.pow(10, random.nextInt(16) - 6);
+		}
+	}
+
+	/**
+	 * The original path: MathUtils.round followed by String.valueOf.
+	 */
+	@Benchmark
+	public String roundValueOf() {
+		double number = mValues[mIndex++ & (COUNT - 1)];
+		double pow = Math.pow(10, precision);
+		return String.valueOf(Math.round(number * pow) / pow);
+	}
+
+	@Benchmark
+	public StringBuilder decimalFormatter() {
+		mBuilder.setLength(0);
+		return DecimalFormatter.append(mBuilder, mValues[mIndex++ & (COUNT - 1)], precision);
+	}
+}
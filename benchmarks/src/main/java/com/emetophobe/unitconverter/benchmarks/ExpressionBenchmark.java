@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.engine.ExpressionEvaluator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures evaluating the value text as an expression, per keystroke. The frame budget is 16 ms, so even a full
+ * evaluation of a long expression should take well under a millisecond.
+ * <p/>
+ * full evaluates the whole expression, because its first character changes every time. typeAtEnd adds and removes a
+ * digit at the end, which only evaluates the last token again. parseLiteral is a plain number for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+	@State(Scope.Thread)
+	public static class Input {
+		@Param({"1", "16", "256"})
+		public int terms;
+
+		public final ExpressionEvaluator evaluator = new ExpressionEvaluator();
+		public String[] changedStart;
+		public String[] changedEnd;
+		public int next;
+
+		@Setup
+		public void setUp() {
+			// e.g. "3*1024+(512-7.25)/2^3+..."
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < terms; i++) {
+				builder.append(i == 0 ? "" : "+").append("3*1024+(512-7.25)/2^").append(i % 10);
+			}
+			String expression = builder.toString();
+			changedStart = new String[] {"1" + expression, "2" + expression};
+			changedEnd = new String[] {expression, expression + "1"};
+		}
+	}
+
+	@Benchmark
+	public double full(Input input) {
+		input.next ^= 1;
+		input.evaluator.evaluate(input.changedStart[input.next]);
+		return input.evaluator.getValue();
+	}
+
+	@Benchmark
+	public double typeAtEnd(Input input) {
+		input.next ^= 1;
+		input.evaluator.evaluate(input.changedEnd[input.next]);
+		return input.evaluator.getValue();
+	}
+
+	@Benchmark
+	public double parseLiteral(Input input) {
+		input.next ^= 1;
+		input.evaluator.evaluate(input.next == 0 ? "1234.5678" : "1234.567");
+		return input.evaluator.getValue();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.HistoryLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the history log with a full log of distinct conversions: opening it at startup, reading the recent entries
+ * for the history dialog and the latest entry of a converter, and appending.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryLogBenchmark {
+	private static final int ENTRIES = HistoryLog.DEFAULT_MAX_ENTRIES;
+
+	@State(Scope.Benchmark)
+	public static class Log {
+		public File file;
+		public HistoryLog log;
+
+		@Setup
+		public void setUp() throws IOException {
+			file = File.createTempFile("history", ".log");
+			HistoryLog writer = new HistoryLog(file);
+			for (int i = 0; i < ENTRIES; i++) {
+				writer.append(ConverterType.fromInteger(i % 8), i % 16, i, i);
+			}
+			writer.close();
+			log = new HistoryLog(file);
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			log.close();
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	public HistoryLog open(Log state) throws IOException {
+		HistoryLog log = new HistoryLog(state.file);
+		log.close();
+		return log;
+	}
+
+	@Benchmark
+	public List<HistoryLog.Entry> recent(Log state) throws IOException {
+		return state.log.getRecent(50);
+	}
+
+	@Benchmark
+	public HistoryLog.Entry latest(Log state) throws IOException {
+		return state.log.getLatest(ConverterType.TEMPERATURE);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.ConversionResults;
+import com.emetophobe.unitconverter.engine.DecimalFormatter;
+import com.emetophobe.unitconverter.engine.DecimalParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures each step a keystroke goes through for every converter type: converting the value to every unit, formatting
+ * every row, and the whole keystroke including parsing the input.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+	@Param({"AREA", "BYTES", "DENSITY", "LENGTH", "MASS", "TEMPERATURE", "TIME", "VOLUME"})
+	public ConverterType converterType;
+
+	@Param({"5"})
+	public int precision;
+
+	private final StringBuilder mBuilder = new StringBuilder();
+	private final DecimalParser mParser = new DecimalParser();
+	private ConversionResults mResults;
+	private String mInput;
+
+	@Setup
+	public void setUp() {
+		mResults = new ConversionResults(ConversionEngine.forType(converterType));
+		mResults.update(0, 1234.5678);
+		mInput = "1234.5678";
+	}
+
+	@Benchmark
+	public ConversionResults convert() {
+		mResults.update(0, 1234.5678);
+		return mResults;
+	}
+
+	@Benchmark
+	public StringBuilder format() {
+		for (int position = 0; position < mResults.size(); position++) {
+			mBuilder.setLength(0);
+			DecimalFormatter.append(mBuilder, mResults.getValue(position), precision);
+		}
+		return mBuilder;
+	}
+
+	@Benchmark
+	public StringBuilder keystroke() {
+		mParser.parse(mInput);
+		mResults.update(0, mParser.getValue());
+		for (int position = 0; position < mResults.size(); position++) {
+			mBuilder.setLength(0);
+			DecimalFormatter.append(mBuilder, mResults.getValue(position), precision);
+		}
+		return mBuilder;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.engine.DecimalParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures parsing the value and precision text, including the partial input a user types on the way to a number.
+ * The parseDouble and parseInt benchmarks are the original exception based MathUtils methods.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputParseBenchmark {
+	@State(Scope.Thread)
+	public static class Input {
+		@Param({"1234.5678", "", "-", ".", "1e", "1e-7"})
+		public String text;
+
+		public final DecimalParser parser = new DecimalParser();
+	}
+
+	@Benchmark
+	public double parseDouble(Input input) {
+		return parseDouble(input.text);
+	}
+
+	@Benchmark
+	public double decimalParser(Input input) {
+		input.parser.parse(input.text);
+		return input.parser.getValue();
+	}
+
+	@Benchmark
+	public int parseInt() {
+		return parseInt("5");
+	}
+
+	/**
+	 * Mirrors the original MathUtils.parseDouble, without the android.util.Log call.
+	 */
+	static double parseDouble(String text) {
+		double value = 0;
+		try {
+			value = Double.valueOf(text);
+		} catch (NumberFormatException e) {
+			// MathUtils logs the exception here
+		}
+		return value;
+	}
+
+	/**
+	 * Mirrors the original MathUtils.parseInt, without the android.util.Log call.
+	 */
+	static int parseInt(String text) {
+		int value = 0;
+		try {
+			value = Integer.valueOf(text);
+		} catch (NumberFormatException e) {
+			// MathUtils logs the exception here
+		}
+		return value;
+	}
+}
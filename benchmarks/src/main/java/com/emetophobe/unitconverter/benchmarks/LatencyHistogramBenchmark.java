@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.engine.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the cost that recording metrics adds to each phase of a keystroke. disabled is the path taken while the
+ * metrics preference is off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+	@State(Scope.Thread)
+	public static class Histogram {
+		public final LatencyHistogram histogram = new LatencyHistogram("benchmark");
+		public boolean enabled;
+	}
+
+	@Benchmark
+	public void recordSince(Histogram state) {
+		state.histogram.recordSince(System.nanoTime());
+	}
+
+	@Benchmark
+	public void disabled(Histogram state) {
+		state.histogram.recordSince(state.enabled ? System.nanoTime() : 0);
+	}
+
+	@Benchmark
+	public long percentile(Histogram state) {
+		return state.histogram.getValueAtPercentile(99);
+	}
+}
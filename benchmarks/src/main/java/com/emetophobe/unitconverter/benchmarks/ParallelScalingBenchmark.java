@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.ParallelConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures how the parallel bulk conversion scales with the number of threads. Compare the throughput of each thread
+ * count against threads=1, e.g. ./gradlew :benchmarks:jmh -PjmhArgs="ParallelScaling -p threads=1,2,4,8,16"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelScalingBenchmark {
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	@Param({"16777216"})
+	public int size;
+
+	@Param({"65536"})
+	public int threshold;
+
+	private ForkJoinPool mPool;
+	private ParallelConverter mConverter;
+	private double[] mValues;
+	private double[] mResults;
+	private DoubleBuffer mValuesBuffer;
+	private DoubleBuffer mResultsBuffer;
+
+	@Setup
+	public void setUp() {
+		mPool = new ForkJoinPool(threads);
+		mConverter = new ParallelConverter(ConversionEngine.forType(ConverterType.TEMPERATURE), mPool);
+		mConverter.setThreshold(threshold);
+
+		mValues = new double[size];
+		mResults = new double[size];
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			mValues[i] = random.nextDouble() * 1000.0;
+		}
+
+		mValuesBuffer = ByteBuffer.allocateDirect(size * 8).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		mValuesBuffer.put(mValues).flip();
+		mResultsBuffer = ByteBuffer.allocateDirect(size * 8).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	@TearDown
+	public void tearDown() {
+		mPool.shutdown();
+	}
+
+	@Benchmark
+	public double[] array() {
+		mConverter.convert(0, 1, mValues, mResults);
+		return mResults;
+	}
+
+	@Benchmark
+	public DoubleBuffer mappedLayoutBuffer() {
+		mValuesBuffer.rewind();
+		mResultsBuffer.clear();
+		mConverter.convert(0, 1, mValuesBuffer, mResultsBuffer);
+		return mResultsBuffer;
+	}
+}
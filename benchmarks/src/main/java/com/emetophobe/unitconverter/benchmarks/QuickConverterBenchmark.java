@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.engine.QuickConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures parsing and converting a typed conversion, per keystroke. typeConversion parses every prefix of a
+ * conversion as it's typed, most of which are incomplete. complete parses whole conversions, including one where "in"
+ * is both the unit and the connective.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuickConverterBenchmark {
+	private static final String CONVERSION = "12 sq mi to ha";
+	private static final String[] CONVERSIONS = {"98.6F in C", "5.2 GB in Mbit", "12 in in cm", "100 KiB = kb"};
+
+	@State(Scope.Thread)
+	public static class Input {
+		public final QuickConverter converter = new QuickConverter();
+		public String[] prefixes;
+		public int next;
+
+		@Setup
+		public void setUp() {
+			prefixes = new String[CONVERSION.length()];
+			for (int i = 0; i < prefixes.length; i++) {
+				prefixes[i] = CONVERSION.substring(0, i + 1);
+			}
+		}
+	}
+
+	@Benchmark
+	public int typeConversion(Input input) {
+		input.next = (input.next + 1) % input.prefixes.length;
+		return input.converter.parse(input.prefixes[input.next]);
+	}
+
+	@Benchmark
+	public double complete(Input input) {
+		input.next = (input.next + 1) % CONVERSIONS.length;
+		input.converter.parse(CONVERSIONS[input.next]);
+		return input.converter.getResult();
+	}
+}
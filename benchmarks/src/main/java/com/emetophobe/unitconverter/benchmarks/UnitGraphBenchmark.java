@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.UnitGraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares a cached unit graph conversion, for a compound and a table unit pair, against the conversion engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnitGraphBenchmark {
+	private UnitGraph mGraph;
+	private ConversionEngine mEngine;
+	private int mMilesPerHour;
+	private int mMetersPerSecond;
+	private int mFeet;
+	private int mMeters;
+	private double mValue;
+
+	@Setup
+	public void setUp() {
+		mGraph = UnitGraph.getInstance();
+		mEngine = ConversionEngine.forType(ConverterType.LENGTH);
+
+		int hours = mGraph.findUnit("hours");
+		int seconds = mGraph.findUnit("seconds");
+		mFeet = mEngine.findUnit("feet");
+		mMeters = mEngine.findUnit("meters");
+		mMilesPerHour = mGraph.quotient(mGraph.findUnit("miles"), hours);
+		mMetersPerSecond = mGraph.quotient(mGraph.getUnit(ConverterType.LENGTH, mMeters), seconds);
+		mValue = 1234.5678;
+	}
+
+	@Benchmark
+	public double graphCompound() {
+		return mGraph.convert(mMilesPerHour, mMetersPerSecond, mValue);
+	}
+
+	@Benchmark
+	public double graphTable() {
+		return mGraph.convert(mGraph.getUnit(ConverterType.LENGTH, mFeet), mGraph.getUnit(ConverterType.LENGTH, mMeters),
+				mValue);
+	}
+
+	@Benchmark
+	public double engine() {
+		return mEngine.convert(mFeet, mMeters, mValue);
+	}
+}
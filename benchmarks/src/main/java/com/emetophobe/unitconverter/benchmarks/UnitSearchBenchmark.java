@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.benchmarks;
+
+import com.emetophobe.unitconverter.engine.UnitSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the unit search, per keystroke. typePrefix types a unit name one character at a time, which narrows the
+ * previous prefix matches. fresh searches for a whole query with nothing to narrow, and misspelled only matches by
+ * trigrams.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitSearchBenchmark {
+	private static final String NAME = "kilometers per hour";
+
+	@State(Scope.Thread)
+	public static class Input {
+		public UnitSearchIndex.Searcher searcher;
+		public final int[] results = new int[8];
+		public String[] prefixes;
+		public int next;
+
+		@Setup
+		public void setUp() {
+			searcher = UnitSearchIndex.getInstance().newSearcher();
+			prefixes = new String[NAME.length()];
+			for (int i = 0; i < prefixes.length; i++) {
+				prefixes[i] = NAME.substring(0, i + 1);
+			}
+		}
+	}
+
+	@Benchmark
+	public int typePrefix(Input input) {
+		input.next = (input.next + 1) % input.prefixes.length;
+		return input.searcher.search(input.prefixes[input.next], input.results);
+	}
+
+	@Benchmark
+	public int fresh(Input input) {
+		input.next ^= 1;
+		return input.searcher.search(input.next == 0 ? "sq ft" : "KiB", input.results);
+	}
+
+	@Benchmark
+	public int misspelled(Input input) {
+		input.next ^= 1;
+		return input.searcher.search(input.next == 0 ? "fahrenhiet" : "kilomters", input.results);
+	}
+}
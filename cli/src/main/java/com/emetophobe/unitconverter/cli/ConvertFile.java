@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.cli;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.BatchConverter;
+import com.emetophobe.unitconverter.engine.BinaryConverter;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.UnitGraph;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Command line entry point that converts a column of a CSV or newline delimited file. The input and output default to
+ * stdin and stdout, so it can be used in a pipe.
+ * <p/>
+ * With -b it converts a file of raw little endian doubles or floats instead, in place unless an output file is given.
+ */
+public final class ConvertFile {
+	private static final String USAGE = "Usage: convertfile [-c column] [-d delimiter] [-p precision] "
+			+ "<type> <from unit> <to unit> [input|- [output|-]]\n"
+			+ "       convertfile -b double|float [-j threads] <type> <from unit> <to unit> <input> [output]\n"
+			+ "  -b  convert a binary file of little endian values, in place if there is no output\n"
+			+ "  -j  the number of threads used to convert a binary file (default 1)\n"
+			+ "  -c  the zero based column to convert (default 0)\n"
+			+ "  -d  the field delimiter, or \"tab\" (default ,)\n"
+			+ "  -p  the number of decimal places (default " + BatchConverter.DEFAULT_PRECISION + ")\n"
+			+ "Types: area, bytes, data_rate, density, flow_rate, length, mass, speed, temperature, time, volume\n"
+			+ "Units are given by name or alias, e.g. \"miles/hours\" or \"mph\"";
+
+	private ConvertFile() {
+	}
+
+	public static void main(String[] args) {
+		int column = 0;
+		char delimiter = BatchConverter.DEFAULT_DELIMITER;
+		int precision = BatchConverter.DEFAULT_PRECISION;
+		BinaryConverter.ValueFormat format = null;
+		int threads = 1;
+
+		// Read the options
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i += 2) {
+				if (i + 1 == args.length) {
+					usage("Missing value for " + args[i]);
+				}
+				String value = args[i + 1];
+				switch (args[i]) {
+					case "-c":
+						column = Integer.parseInt(value);
+						break;
+					case "-d":
+						delimiter = value.equalsIgnoreCase("tab") ? '\t' : value.charAt(0);
+						break;
+					case "-p":
+						precision = Integer.parseInt(value);
+						break;
+					case "-j":
+						threads = Integer.parseInt(value);
+						break;
+					case "-b":
+						format = BinaryConverter.ValueFormat.valueOf(value.toUpperCase(Locale.US));
+						break;
+					default:
+						usage("Unknown option " + args[i]);
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage("Invalid number: " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			usage("Unknown value format: " + args[i + 1]);
+		}
+
+		int remaining = args.length - i;
+		if (remaining < 3 || remaining > 5) {
+			usage(null);
+		}
+
+		// Find the converter type and units
+		ConversionEngine engine = findEngine(args[i]);
+		int sourceUnit = findUnit(engine, args[i + 1]);
+		int destUnit = findUnit(engine, args[i + 2]);
+		String input = remaining > 3 ? args[i + 3] : "-";
+		String output = remaining > 4 ? args[i + 4] : "-";
+
+		if (format != null) {
+			if (input.equals("-")) {
+				usage("Binary files can't be read from stdin");
+			}
+			BinaryConverter converter = new BinaryConverter(engine, sourceUnit, destUnit, format);
+			ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+			converter.setPool(pool);
+			convertBinary(converter, input, output);
+			if (pool != null) {
+				pool.shutdown();
+			}
+			return;
+		}
+
+		BatchConverter converter = new BatchConverter(engine, sourceUnit, destUnit, column);
+		converter.setDelimiter(delimiter);
+		converter.setPrecision(precision);
+
+		try (ReadableByteChannel in = openInput(input); WritableByteChannel out = openOutput(output)) {
+			long count = converter.convert(in, out);
+			System.err.println("Converted " + count + " values");
+		} catch (IOException e) {
+			System.err.println("Conversion failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void convertBinary(BinaryConverter converter, String input, String output) {
+		try {
+			long count;
+			if (output.equals("-")) {
+				try (FileChannel channel = FileChannel.open(Paths.get(input), StandardOpenOption.READ,
+						StandardOpenOption.WRITE)) {
+					count = converter.convert(channel);
+				}
+			} else {
+				try (FileChannel in = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+					 FileChannel out = FileChannel.open(Paths.get(output), StandardOpenOption.READ,
+							 StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+					count = converter.convert(in, out);
+				}
+			}
+			System.err.println("Converted " + count + " values");
+		} catch (IOException e) {
+			System.err.println("Conversion failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the engine of a converter type, or of a compound type of the unit graph such as speed.
+	 */
+	private static ConversionEngine findEngine(String name) {
+		String constant = name.toUpperCase(Locale.US).replace('-', '_');
+		for (ConverterType type : ConverterType.values()) {
+			if (type.name().equals(constant)) {
+				return ConversionEngine.forType(type);
+			}
+		}
+		for (UnitGraph.CompoundType type : UnitGraph.CompoundType.values()) {
+			if (type.name().equals(constant)) {
+				return UnitGraph.getInstance().getEngine(type);
+			}
+		}
+		usage("Unknown converter type: " + name);
+		return null;
+	}
+
+	/**
+	 * Returns the unit with a name, ignoring case, or with an alias.
+	 */
+	private static int findUnit(ConversionEngine engine, String name) {
+		int unit = engine.findUnit(name);
+		for (int candidate = 0; unit < 0 && candidate < engine.getUnitCount(); candidate++) {
+			if (Arrays.asList(engine.getUnitAliases(candidate)).contains(name)) {
+				unit = candidate;
+			}
+		}
+		if (unit < 0) {
+			usage("Unknown unit: " + name + ". Must be one of " + engine.getUnitNameList());
+		}
+		return unit;
+	}
+
+	private static ReadableByteChannel openInput(String path) throws IOException {
+		if (path.equals("-")) {
+			return Channels.newChannel(System.in);
+		}
+		return FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+	}
+
+	private static WritableByteChannel openOutput(String path) throws IOException {
+		if (path.equals("-")) {
+			return Channels.newChannel(System.out);
+		}
+		return FileChannel.open(Paths.get(path), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private static void usage(String error) {
+		if (error != null) {
+			System.err.println(error);
+		}
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+}
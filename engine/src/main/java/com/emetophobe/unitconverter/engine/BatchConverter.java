@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Converts one column of a CSV or newline delimited file, streaming it from one channel to another. The converted
+ * column is replaced in place and everything else, including lines whose column isn't a number (e.g. a header), is
+ * copied unchanged.
+ * <p/>
+ * The file is read in fixed size blocks and converted by two pipelined stages: a reader thread splits each block into
+ * lines, parses the column and converts the whole block at once, while the calling thread formats and writes the
+ * previous blocks. The blocks are recycled, so memory use is bounded by a few blocks no matter how large the file is.
+ * <p/>
+ * Lines are split on '\n' and fields on the delimiter; quoted fields that contain the delimiter aren't supported.
+ * Numbers are read and written with '.' as the decimal separator. The text must use an ASCII compatible encoding such
+ * as UTF-8.
+ */
+public final class BatchConverter {
+	public static final char DEFAULT_DELIMITER = ',';
+	public static final int DEFAULT_PRECISION = 5;
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final int BLOCK_COUNT = 4;
+	private static final int INITIAL_LINE_COUNT = 1024;
+
+	private final ConversionEngine mEngine;
+	private final int mSourceUnit;
+	private final int mDestUnit;
+	private final int mColumn;
+	private char mDelimiter = DEFAULT_DELIMITER;
+	private int mPrecision = DEFAULT_PRECISION;
+
+	/**
+	 * Construct a batch converter.
+	 *
+	 * @param engine     The conversion engine.
+	 * @param sourceUnit The unit type of the values in the file.
+	 * @param destUnit   The unit type to convert them to.
+	 * @param column     The zero based index of the column to convert.
+	 */
+	public BatchConverter(ConversionEngine engine, int sourceUnit, int destUnit, int column) {
+		if (column < 0) {
+			throw new IllegalArgumentException("Invalid column: " + column);
+		}
+		mEngine = engine;
+		mSourceUnit = sourceUnit;
+		mDestUnit = destUnit;
+		mColumn = column;
+	}
+
+	/**
+	 * Set the field delimiter, e.g. ',', ';' or '\t'. Defaults to ','.
+	 */
+	public void setDelimiter(char delimiter) {
+		if (delimiter == '\n' || delimiter == '\r') {
+			throw new IllegalArgumentException("Invalid delimiter");
+		}
+		mDelimiter = delimiter;
+	}
+
+	/**
+	 * Set the number of decimal places the converted values are rounded to. Defaults to 5.
+	 */
+	public void setPrecision(int precision) {
+		mPrecision = Math.max(0, precision);
+	}
+
+	/**
+	 * Convert a file. Neither channel is closed, but the input channel may be closed by the interruption of the
+	 * reader thread if the output fails.
+	 *
+	 * @param in  The channel to read the file from.
+	 * @param out The channel to write the converted file to.
+	 * @return The number of values that were converted.
+	 * @throws IOException If either channel fails, or the calling thread is interrupted.
+	 */
+	public long convert(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCK_COUNT);
+		BlockingQueue<Block> full = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);
+		for (int i = 0; i < BLOCK_COUNT; i++) {
+			free.add(new Block(BLOCK_SIZE));
+		}
+
+		ParseStage parseStage = new ParseStage(in, free, full);
+		Thread reader = new Thread(parseStage, "BatchConverter reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		boolean finished = false;
+		try {
+			FormatStage formatStage = new FormatStage(out);
+			while (true) {
+				Block block = full.take();
+				if (block.last) {
+					break;
+				}
+				formatStage.write(block);
+				free.put(block);
+			}
+			formatStage.flush();
+			finished = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Conversion interrupted");
+		} finally {
+			if (!finished) {
+				reader.interrupt();
+			}
+			joinUninterruptibly(reader);
+		}
+
+		if (parseStage.failure != null) {
+			if (parseStage.failure instanceof IOException) {
+				throw (IOException) parseStage.failure;
+			}
+			throw (RuntimeException) parseStage.failure;
+		}
+		return parseStage.convertedCount;
+	}
+
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A block of complete lines, with the position and converted value of the column in each line.
+	 */
+	private static final class Block {
+		byte[] data;
+		int length;
+		int lineCount;
+		int[] lineEnds;
+		int[] fieldStarts;
+		int[] fieldEnds;
+		double[] values;
+		boolean last;
+
+		Block(int capacity) {
+			data = new byte[capacity];
+			lineEnds = new int[INITIAL_LINE_COUNT];
+			fieldStarts = new int[INITIAL_LINE_COUNT];
+			fieldEnds = new int[INITIAL_LINE_COUNT];
+			values = new double[INITIAL_LINE_COUNT];
+		}
+
+		void addLine(int lineEnd, int fieldStart, int fieldEnd, double value) {
+			if (lineCount == lineEnds.length) {
+				int capacity = lineCount * 2;
+				lineEnds = Arrays.copyOf(lineEnds, capacity);
+				fieldStarts = Arrays.copyOf(fieldStarts, capacity);
+				fieldEnds = Arrays.copyOf(fieldEnds, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			lineEnds[lineCount] = lineEnd;
+			fieldStarts[lineCount] = fieldStart;
+			fieldEnds[lineCount] = fieldEnd;
+			values[lineCount] = value;
+			lineCount++;
+		}
+	}
+
+	/**
+	 * Reads the input into blocks of complete lines, then parses and converts the column of every line. Runs on the
+	 * reader thread.
+	 */
+	private final class ParseStage implements Runnable {
+		private final ReadableByteChannel mIn;
+		private final BlockingQueue<Block> mFree;
+		private final BlockingQueue<Block> mFull;
+		private final DecimalParser mParser = new DecimalParser();
+		private final ByteSequence mField = new ByteSequence();
+
+		// The start of a line that didn't fit in the previous block
+		private byte[] mCarry = new byte[BLOCK_SIZE];
+		private int mCarryLength;
+
+		// Read by the calling thread after the reader thread has finished
+		Exception failure;
+		long convertedCount;
+
+		ParseStage(ReadableByteChannel in, BlockingQueue<Block> free, BlockingQueue<Block> full) {
+			mIn = in;
+			mFree = free;
+			mFull = full;
+		}
+
+		@Override
+		public void run() {
+			try {
+				boolean eof = false;
+				while (!eof) {
+					Block block = mFree.take();
+					eof = fill(block);
+					parse(block, eof);
+					if (block.lineCount > 0) {
+						mEngine.convert(mSourceUnit, mDestUnit, block.values, 0, block.values, 0, block.lineCount);
+						mFull.put(block);
+					} else {
+						mFree.put(block);
+					}
+				}
+			} catch (InterruptedException e) {
+				// The calling thread failed and has already reported why
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			}
+
+			Block end = new Block(0);
+			end.last = true;
+			mFull.offer(end);
+		}
+
+		/**
+		 * Fill the block with the carried over start of a line and as much input as fits, growing it if a single line
+		 * doesn't fit. Returns true once the end of the input has been reached.
+		 */
+		private boolean fill(Block block) throws IOException {
+			block.lineCount = 0;
+			if (block.data.length < mCarryLength * 2) {
+				block.data = new byte[mCarryLength * 2];
+			}
+			System.arraycopy(mCarry, 0, block.data, 0, mCarryLength);
+
+			ByteBuffer buffer = ByteBuffer.wrap(block.data);
+			buffer.position(mCarryLength);
+			boolean eof = false;
+			while (buffer.hasRemaining() && !eof) {
+				eof = mIn.read(buffer) < 0;
+			}
+			block.length = buffer.position();
+			return eof;
+		}
+
+		/**
+		 * Split the block into lines and parse the column of each one. The incomplete last line is carried over to the
+		 * next block, unless the end of the input has been reached.
+		 */
+		private void parse(Block block, boolean eof) {
+			byte[] data = block.data;
+			int length = block.length;
+			int lineStart = 0;
+
+			for (int i = 0; i < length; i++) {
+				if (data[i] == '\n') {
+					parseLine(block, lineStart, i + 1);
+					lineStart = i + 1;
+				}
+			}
+			if (eof && lineStart < length) {
+				parseLine(block, lineStart, length);
+				lineStart = length;
+			}
+
+			mCarryLength = length - lineStart;
+			if (mCarry.length < mCarryLength) {
+				mCarry = new byte[mCarryLength * 2];
+			}
+			System.arraycopy(data, lineStart, mCarry, 0, mCarryLength);
+		}
+
+		private void parseLine(Block block, int lineStart, int lineEnd) {
+			byte[] data = block.data;
+			int contentEnd = lineEnd;
+			if (contentEnd > lineStart && data[contentEnd - 1] == '\n') {
+				contentEnd--;
+			}
+			if (contentEnd > lineStart && data[contentEnd - 1] == '\r') {
+				contentEnd--;
+			}
+
+			// Find the column, skipping the fields before it
+			int fieldStart = lineStart;
+			for (int column = 0; column < mColumn; column++) {
+				while (fieldStart < contentEnd && data[fieldStart] != mDelimiter) {
+					fieldStart++;
+				}
+				if (fieldStart == contentEnd) {
+					// The line doesn't have the column
+					block.addLine(lineEnd, -1, -1, 0.0);
+					return;
+				}
+				fieldStart++;
+			}
+			int fieldEnd = fieldStart;
+			while (fieldEnd < contentEnd && data[fieldEnd] != mDelimiter) {
+				fieldEnd++;
+			}
+
+			// Leave the whitespace around the number as it is
+			while (fieldStart < fieldEnd && (data[fieldStart] & 0xff) <= ' ') {
+				fieldStart++;
+			}
+			while (fieldEnd > fieldStart && (data[fieldEnd - 1] & 0xff) <= ' ') {
+				fieldEnd--;
+			}
+
+			mField.set(data, fieldStart, fieldEnd);
+			if (fieldStart < fieldEnd && mParser.parse(mField) == DecimalParser.PARSED) {
+				block.addLine(lineEnd, fieldStart, fieldEnd, mParser.getValue());
+				convertedCount++;
+			} else {
+				block.addLine(lineEnd, -1, -1, 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Writes the lines of each block with their converted values. Runs on the calling thread.
+	 */
+	private final class FormatStage {
+		private final WritableByteChannel mOut;
+		private final ByteBuffer mBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+		private final StringBuilder mBuilder = new StringBuilder();
+
+		FormatStage(WritableByteChannel out) {
+			mOut = out;
+		}
+
+		void write(Block block) throws IOException {
+			int lineStart = 0;
+			for (int line = 0; line < block.lineCount; line++) {
+				int lineEnd = block.lineEnds[line];
+				int fieldStart = block.fieldStarts[line];
+				if (fieldStart < 0) {
+					put(block.data, lineStart, lineEnd);
+				} else {
+					put(block.data, lineStart, fieldStart);
+					putValue(block.values[line]);
+					put(block.data, block.fieldEnds[line], lineEnd);
+				}
+				lineStart = lineEnd;
+			}
+		}
+
+		void flush() throws IOException {
+			mBuffer.flip();
+			while (mBuffer.hasRemaining()) {
+				mOut.write(mBuffer);
+			}
+			mBuffer.clear();
+		}
+
+		private void put(byte[] data, int start, int end) throws IOException {
+			int length = end - start;
+			if (length > mBuffer.remaining()) {
+				flush();
+				if (length > mBuffer.remaining()) {
+					ByteBuffer buffer = ByteBuffer.wrap(data, start, length);
+					while (buffer.hasRemaining()) {
+						mOut.write(buffer);
+					}
+					return;
+				}
+			}
+			mBuffer.put(data, start, length);
+		}
+
+		private void putValue(double value) throws IOException {
+			mBuilder.setLength(0);
+			DecimalFormatter.append(mBuilder, value, mPrecision);
+
+			int length = mBuilder.length();
+			if (length > mBuffer.remaining()) {
+				flush();
+			}
+			for (int i = 0; i < length; i++) {
+				mBuffer.put((byte) mBuilder.charAt(i));
+			}
+		}
+	}
+
+	/**
+	 * A CharSequence view of a range of ASCII bytes, so that the fields can be parsed without decoding them.
+	 */
+	private static final class ByteSequence implements CharSequence {
+		private byte[] mData;
+		private int mStart;
+		private int mEnd;
+
+		void set(byte[] data, int start, int end) {
+			mData = data;
+			mStart = start;
+			mEnd = end;
+		}
+
+		@Override
+		public int length() {
+			return mEnd - mStart;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (mData[mStart + index] & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			ByteSequence sequence = new ByteSequence();
+			sequence.set(mData, mStart + start, mStart + end);
+			return sequence;
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder(this).toString();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Converts files of raw binary values, such as the double or float arrays written by data loggers. The files are
+ * memory mapped and converted through buffer views of the mapping, so the values are never copied and no objects are
+ * allocated per value. Files are mapped in chunks, which keeps the address space used small and supports files larger
+ * than 2 GB. Each chunk can be split across the threads of a fork-join pool as well.
+ */
+public final class BinaryConverter {
+	/**
+	 * The type of the values in a file.
+	 */
+	public enum ValueFormat {
+		DOUBLE(8), FLOAT(4);
+
+		private final int mSize;
+
+		ValueFormat(int size) {
+			mSize = size;
+		}
+
+		/**
+		 * Returns the size of one value in bytes.
+		 */
+		public int getSize() {
+			return mSize;
+		}
+	}
+
+	// A multiple of every value size, and small enough to map on 32-bit devices
+	private static final long CHUNK_SIZE = 32 * 1024 * 1024;
+
+	private final ConversionEngine mEngine;
+	private final int mSourceUnit;
+	private final int mDestUnit;
+	private final ValueFormat mFormat;
+	private ByteOrder mByteOrder = ByteOrder.LITTLE_ENDIAN;
+	private ParallelConverter mParallelConverter;
+
+	/**
+	 * Construct a binary converter.
+	 *
+	 * @param engine     The conversion engine.
+	 * @param sourceUnit The unit type of the values in the file.
+	 * @param destUnit   The unit type to convert them to.
+	 * @param format     The type of the values.
+	 */
+	public BinaryConverter(ConversionEngine engine, int sourceUnit, int destUnit, ValueFormat format) {
+		mEngine = engine;
+		mSourceUnit = sourceUnit;
+		mDestUnit = destUnit;
+		mFormat = format;
+	}
+
+	/**
+	 * Set the byte order of the values. Defaults to little endian.
+	 */
+	public void setByteOrder(ByteOrder byteOrder) {
+		mByteOrder = byteOrder;
+	}
+
+	/**
+	 * Set the pool used to convert each chunk in parallel, or null to convert on the calling thread. Defaults to null.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		mParallelConverter = pool != null ? new ParallelConverter(mEngine, pool) : null;
+	}
+
+	/**
+	 * Convert a file in place.
+	 *
+	 * @param channel A channel opened for reading and writing.
+	 * @return The number of values that were converted.
+	 * @throws IOException If the file can't be mapped, or its size isn't a multiple of the value size.
+	 */
+	public long convert(FileChannel channel) throws IOException {
+		long size = checkSize(channel);
+		for (long position = 0; position < size; position += CHUNK_SIZE) {
+			long length = Math.min(CHUNK_SIZE, size - position);
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+			convertChunk(chunk, chunk);
+		}
+		return size / mFormat.getSize();
+	}
+
+	/**
+	 * Convert a file into another one, which is resized to the size of the input.
+	 *
+	 * @param in  A channel opened for reading.
+	 * @param out A channel opened for reading and writing.
+	 * @return The number of values that were converted.
+	 * @throws IOException If either file can't be mapped, or the size of the input isn't a multiple of the value size.
+	 */
+	public long convert(FileChannel in, FileChannel out) throws IOException {
+		long size = checkSize(in);
+		if (out.size() > size) {
+			out.truncate(size);
+		}
+		for (long position = 0; position < size; position += CHUNK_SIZE) {
+			long length = Math.min(CHUNK_SIZE, size - position);
+			MappedByteBuffer inChunk = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+			MappedByteBuffer outChunk = out.map(FileChannel.MapMode.READ_WRITE, position, length);
+			convertChunk(inChunk, outChunk);
+		}
+		return size / mFormat.getSize();
+	}
+
+	private long checkSize(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size % mFormat.getSize() != 0) {
+			throw new IOException("The file size (" + size + " bytes) isn't a multiple of the " + mFormat
+					+ " size");
+		}
+		return size;
+	}
+
+	private void convertChunk(MappedByteBuffer in, MappedByteBuffer out) {
+		in.order(mByteOrder);
+		out.order(mByteOrder);
+		if (mFormat == ValueFormat.DOUBLE) {
+			DoubleBuffer values = in.asDoubleBuffer();
+			DoubleBuffer results = in == out ? values : out.asDoubleBuffer();
+			if (mParallelConverter != null) {
+				mParallelConverter.convert(mSourceUnit, mDestUnit, values, results);
+			} else {
+				mEngine.convert(mSourceUnit, mDestUnit, values, results);
+			}
+		} else {
+			FloatBuffer values = in.asFloatBuffer();
+			FloatBuffer results = in == out ? values : out.asFloatBuffer();
+			if (mParallelConverter != null) {
+				mParallelConverter.convert(mSourceUnit, mDestUnit, values, results);
+			} else {
+				mEngine.convert(mSourceUnit, mDestUnit, values, results);
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.math.BigDecimal;
+
+
+/**
+ * A reusable list of the results of converting a value from one catalog unit to every compatible unit. Like {@link
+ * ConversionResults}, the results leave out the source unit and never allocate when they're updated.
+ */
+public final class CatalogResults implements ResultList {
+	private final UnitCatalog mCatalog;
+	private final double[] mValues;
+	private int mSourceUnit = -1;
+	private int mStart;
+	private int mEnd;
+
+	/**
+	 * Construct an empty result list.
+	 *
+	 * @param catalog The unit catalog.
+	 */
+	public CatalogResults(UnitCatalog catalog) {
+		mCatalog = catalog;
+		mValues = new double[catalog.getUnitCount()];
+	}
+
+	/**
+	 * Convert a value to every compatible unit, replacing the current results.
+	 *
+	 * @param sourceUnit The source catalog unit.
+	 * @param value      The number to convert.
+	 */
+	public void update(int sourceUnit, double value) {
+		mCatalog.convertAll(sourceUnit, value, mValues);
+		mSourceUnit = sourceUnit;
+		mStart = mCatalog.getFirstUnit(mCatalog.getConverterType(sourceUnit));
+		mEnd = mCatalog.getEndUnit(mCatalog.getConverterType(sourceUnit));
+	}
+
+	@Override
+	public int size() {
+		return mSourceUnit < 0 ? 0 : mEnd - mStart - 1;
+	}
+
+	@Override
+	public int getUnit(int position) {
+		int unit = mStart + position;
+		return unit < mSourceUnit ? unit : unit + 1;
+	}
+
+	@Override
+	public String getName(int position) {
+		return mCatalog.getUnitName(getUnit(position));
+	}
+
+	@Override
+	public double getValue(int position) {
+		return mValues[getUnit(position)];
+	}
+
+	@Override
+	public boolean isExact() {
+		return false;
+	}
+
+	@Override
+	public BigDecimal getExactValue(int position) {
+		return null;
+	}
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Converts values between the units of a single converter type. Engines are created once per converter type from the
+ * tables generated from units.xml and hold their unit factors in primitive arrays, so conversions never allocate.
+ */
+public final class ConversionEngine {
+	private static final ConversionEngine[] sEngines;
+	private static final String[] NO_ALIASES = new String[0];
+
+	static {
+		ConverterType[] types = ConverterType.values();
+		sEngines = new ConversionEngine[types.length];
+		for (ConverterType type : types) {
+			sEngines[type.toInteger()] = new ConversionEngine(type, UnitTables.getNames(type), UnitTables.getScales(type),
+					UnitTables.getOffsets(type), UnitTables.getExactScales(type), UnitTables.getExactOffsets(type),
+					UnitTables.getAliases(type));
+		}
+	}
+
+	private final ConverterType mConverterType;
+	private final String[] mUnitNames;
+	private final List<String> mUnitNameList;
+	private final String[][] mUnitAliases;
+	private final double[] mScales;
+	private final double[] mOffsets;
+	private final String[] mExactScales;
+	private final String[] mExactOffsets;
+	private Ratios mRatios;
+	private ExactRatios mExactRatios;
+
+	/**
+	 * Construct a conversion engine with the specified unit names, factors and aliases.
+	 */
+	private ConversionEngine(ConverterType type, String[] names, double[] scales, double[] offsets,
+			String[] exactScales, String[] exactOffsets, String[][] aliases) {
+		mConverterType = type;
+		mUnitNames = names;
+		mUnitNameList = Collections.unmodifiableList(Arrays.asList(names));
+		mUnitAliases = aliases;
+		mScales = scales;
+		mOffsets = offsets;
+		mExactScales = exactScales;
+		mExactOffsets = exactOffsets;
+	}
+
+	/**
+	 * Returns the conversion engine for the specified converter type.
+	 *
+	 * @param type The converter type.
+	 * @return The shared conversion engine.
+	 */
+	public static ConversionEngine forType(ConverterType type) {
+		return sEngines[type.toInteger()];
+	}
+
+	/**
+	 * Returns a conversion engine for units that aren't a converter type, such as compound units. Its converter type
+	 * is null.
+	 *
+	 * @param names       The unit names.
+	 * @param scales      The factors of the units relative to a common base unit.
+	 * @param exactScales The exact factors of the units relative to a common base unit, as decimals or fractions.
+	 * @param aliases     The aliases of each unit.
+	 */
+	static ConversionEngine forUnits(String[] names, double[] scales, String[] exactScales, String[][] aliases) {
+		return new ConversionEngine(null, names, scales, null, exactScales, null, aliases);
+	}
+
+	/**
+	 * Release the memory held by every engine that can be rebuilt on demand, i.e. the ratio matrices.
+	 */
+	public static void trimMemory() {
+		for (ConversionEngine engine : sEngines) {
+			engine.mRatios = null;
+			engine.mExactRatios = null;
+		}
+	}
+
+	/**
+	 * Build the ratio matrix ahead of the first conversion, e.g. on a background thread while an app is starting. The
+	 * matrix would otherwise be built by the first conversion.
+	 */
+	public void prepare() {
+		if (mOffsets == null) {
+			getRatios();
+		}
+	}
+
+	/**
+	 * Returns the converter type of this engine, or null if its units aren't a converter type.
+	 */
+	public ConverterType getConverterType() {
+		return mConverterType;
+	}
+
+	/**
+	 * Returns the number of units supported by this engine.
+	 */
+	public int getUnitCount() {
+		return mScales.length;
+	}
+
+	/**
+	 * Returns the name of the specified unit type.
+	 */
+	public String getUnitName(int unit) {
+		return mUnitNames[unit];
+	}
+
+	/**
+	 * Returns the symbols and other names of the specified unit type, e.g. "ft" and "foot" for feet. The array is
+	 * shared and must not be modified.
+	 */
+	public String[] getUnitAliases(int unit) {
+		return mUnitAliases != null ? mUnitAliases[unit] : NO_ALIASES;
+	}
+
+	/**
+	 * Returns the unit names in unit order. The list is shared and can't be modified.
+	 */
+	public List<String> getUnitNameList() {
+		return mUnitNameList;
+	}
+
+	/**
+	 * Returns the unit type with the specified name, ignoring case, or -1 if there isn't one.
+	 */
+	public int findUnit(String name) {
+		for (int unit = 0; unit < mUnitNames.length; unit++) {
+			if (mUnitNames[unit].equalsIgnoreCase(name)) {
+				return unit;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if the units have an offset as well as a scale (i.e. temperatures).
+	 */
+	public boolean isAffine() {
+		return mOffsets != null;
+	}
+
+	/**
+	 * Convert from one unit type to another.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param destUnit   The destination unit type.
+	 * @param value      The number to convert.
+	 * @return The converted result.
+	 */
+	public double convert(int sourceUnit, int destUnit, double value) {
+		if (sourceUnit == destUnit) {
+			return value;
+		}
+		if (mOffsets != null) {
+			return fromBase(destUnit, toBase(sourceUnit, value));
+		}
+		return value * getRatios()[sourceUnit * mScales.length + destUnit];
+	}
+
+	/**
+	 * Convert a value from one unit type to every unit type.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param value      The number to convert.
+	 * @param results    The array that receives the converted results, indexed by destination unit. Must hold at least
+	 *                   {@link #getUnitCount()} values.
+	 */
+	public void convertAll(int sourceUnit, double value, double[] results) {
+		convertAll(sourceUnit, value, results, 0);
+	}
+
+	/**
+	 * Convert a value from one unit type to every unit type, into part of a larger array.
+	 *
+	 * @param sourceUnit    The source unit type.
+	 * @param value         The number to convert.
+	 * @param results       The array that receives the converted results, indexed by destination unit from
+	 *                      resultsOffset. Must hold at least {@link #getUnitCount()} values from there.
+	 * @param resultsOffset The index of the result of the first unit.
+	 */
+	public void convertAll(int sourceUnit, double value, double[] results, int resultsOffset) {
+		int count = mScales.length;
+		if (mOffsets != null) {
+			double base = toBase(sourceUnit, value);
+			for (int destUnit = 0; destUnit < count; destUnit++) {
+				results[resultsOffset + destUnit] = fromBase(destUnit, base);
+			}
+		} else {
+			double[] ratios = getRatios();
+			int row = sourceUnit * count;
+			for (int destUnit = 0; destUnit < count; destUnit++) {
+				results[resultsOffset + destUnit] = value * ratios[row + destUnit];
+			}
+		}
+		results[resultsOffset + sourceUnit] = value;
+	}
+
+	/**
+	 * Convert from one unit type to another using exact decimal arithmetic. The unit factors are used exactly as they
+	 * are written in units.xml and the result is only rounded once. This is much slower than {@link #convert(int, int,
+	 * double)}, although the exact ratio between two units is only computed the first time they're converted.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param destUnit   The destination unit type.
+	 * @param value      The number to convert.
+	 * @param precision  The number of decimal places to round the result to (half-even).
+	 * @return The converted result.
+	 */
+	public BigDecimal convertExact(int sourceUnit, int destUnit, BigDecimal value, int precision) {
+		ExactRatios exactRatios = getExactRatios();
+		ExactRatio ratio = exactRatios.get(sourceUnit, destUnit);
+
+		// ((value + sourceOffset) * numerator - destOffset * denominator) / denominator
+		BigDecimal result = value;
+		if (exactRatios.offsets != null) {
+			result = result.add(exactRatios.offsets[sourceUnit]);
+		}
+		result = result.multiply(ratio.numerator);
+		if (exactRatios.offsets != null) {
+			result = result.subtract(exactRatios.offsets[destUnit].multiply(ratio.denominator));
+		}
+		return result.divide(ratio.denominator, precision, RoundingMode.HALF_EVEN);
+	}
+
+	/**
+	 * Convert an array of values from one unit type to another.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param destUnit   The destination unit type.
+	 * @param values     The numbers to convert.
+	 * @param results    The array that receives the converted results. May be the same array as values.
+	 */
+	public void convert(int sourceUnit, int destUnit, double[] values, double[] results) {
+		convert(sourceUnit, destUnit, values, 0, results, 0, values.length);
+	}
+
+	/**
+	 * Convert a range of values from one unit type to another.
+	 *
+	 * @param sourceUnit    The source unit type.
+	 * @param destUnit      The destination unit type.
+	 * @param values        The numbers to convert.
+	 * @param valuesOffset  The index of the first number to convert.
+	 * @param results       The array that receives the converted results. May be the same array as values.
+	 * @param resultsOffset The index of the first converted result.
+	 * @param length        The number of values to convert.
+	 */
+	public void convert(int sourceUnit, int destUnit, double[] values, int valuesOffset, double[] results,
+						int resultsOffset, int length) {
+		// Every bulk conversion uses the same arithmetic as convert(int, int, double), so that the results are
+		// identical. Keep the loops simple so that the JIT can unroll and vectorize them.
+		if (sourceUnit == destUnit) {
+			System.arraycopy(values, valuesOffset, results, resultsOffset, length);
+		} else if (mOffsets == null) {
+			double scale = getScale(sourceUnit, destUnit);
+			for (int i = 0; i < length; i++) {
+				results[resultsOffset + i] = values[valuesOffset + i] * scale;
+			}
+		} else {
+			double sourceOffset = mOffsets[sourceUnit];
+			double sourceScale = mScales[sourceUnit];
+			double destScale = mScales[destUnit];
+			double destOffset = mOffsets[destUnit];
+			for (int i = 0; i < length; i++) {
+				results[resultsOffset + i] = (values[valuesOffset + i] + sourceOffset) * sourceScale / destScale
+						- destOffset;
+			}
+		}
+	}
+
+	/**
+	 * Convert the remaining values of a buffer from one unit type to another. The positions of both buffers are
+	 * advanced by the number of converted values.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param destUnit   The destination unit type.
+	 * @param values     The numbers to convert.
+	 * @param results    The buffer that receives the converted results. May be the values buffer.
+	 * @throws BufferOverflowException if the results buffer has less space remaining than the values buffer.
+	 */
+	public void convert(int sourceUnit, int destUnit, DoubleBuffer values, DoubleBuffer results) {
+		int length = values.remaining();
+		if (results.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		int valuesPosition = values.position();
+		int resultsPosition = results.position();
+
+		if (values.hasArray() && results.hasArray()) {
+			convert(sourceUnit, destUnit, values.array(), values.arrayOffset() + valuesPosition,
+					results.array(), results.arrayOffset() + resultsPosition, length);
+		} else if (sourceUnit == destUnit) {
+			for (int i = 0; i < length; i++) {
+				results.put(resultsPosition + i, values.get(valuesPosition + i));
+			}
+		} else if (mOffsets == null) {
+			double scale = getScale(sourceUnit, destUnit);
+			for (int i = 0; i < length; i++) {
+				results.put(resultsPosition + i, values.get(valuesPosition + i) * scale);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				results.put(resultsPosition + i, convertAffine(sourceUnit, destUnit, values.get(valuesPosition + i)));
+			}
+		}
+
+		values.position(valuesPosition + length);
+		results.position(resultsPosition + length);
+	}
+
+	/**
+	 * Convert the remaining values of a float buffer from one unit type to another. The values are converted in double
+	 * precision and rounded to float once. The positions of both buffers are advanced by the number of converted
+	 * values.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param destUnit   The destination unit type.
+	 * @param values     The numbers to convert.
+	 * @param results    The buffer that receives the converted results. May be the values buffer.
+	 * @throws BufferOverflowException if the results buffer has less space remaining than the values buffer.
+	 */
+	public void convert(int sourceUnit, int destUnit, FloatBuffer values, FloatBuffer results) {
+		int length = values.remaining();
+		if (results.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		int valuesPosition = values.position();
+		int resultsPosition = results.position();
+		if (sourceUnit == destUnit) {
+			for (int i = 0; i < length; i++) {
+				results.put(resultsPosition + i, values.get(valuesPosition + i));
+			}
+		} else if (mOffsets == null) {
+			double scale = getScale(sourceUnit, destUnit);
+			for (int i = 0; i < length; i++) {
+				results.put(resultsPosition + i, (float) (values.get(valuesPosition + i) * scale));
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				results.put(resultsPosition + i, (float) convertAffine(sourceUnit, destUnit,
+						values.get(valuesPosition + i)));
+			}
+		}
+
+		values.position(valuesPosition + length);
+		results.position(resultsPosition + length);
+	}
+
+	/**
+	 * Convert a value to the base unit of this converter type.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param value      The number to convert.
+	 * @return The value in base units.
+	 */
+	public double toBase(int sourceUnit, double value) {
+		if (mOffsets != null) {
+			value += mOffsets[sourceUnit];
+		}
+		return value * mScales[sourceUnit];
+	}
+
+	/**
+	 * Convert a value from the base unit of this converter type.
+	 *
+	 * @param destUnit The destination unit type.
+	 * @param value    The value in base units.
+	 * @return The converted number.
+	 */
+	public double fromBase(int destUnit, double value) {
+		value = value / mScales[destUnit];
+		if (mOffsets != null) {
+			value -= mOffsets[destUnit];
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the factor that a value in the source unit is multiplied by to convert it to the destination unit.
+	 */
+	private double getScale(int sourceUnit, int destUnit) {
+		return mScales[sourceUnit] / mScales[destUnit];
+	}
+
+	/**
+	 * Convert a value between two different units with offsets, through the base unit like {@link #toBase} and
+	 * {@link #fromBase}. The offsets aren't folded into one, since that rounds differently.
+	 */
+	private double convertAffine(int sourceUnit, int destUnit, double value) {
+		return (value + mOffsets[sourceUnit]) * mScales[sourceUnit] / mScales[destUnit] - mOffsets[destUnit];
+	}
+
+	/**
+	 * Returns the conversion ratios between every pair of units, stored row by row so that the ratio from the source
+	 * unit to the destination unit is at index sourceUnit * count + destUnit. The matrix is built on first use.
+	 */
+	private double[] getRatios() {
+		Ratios ratios = mRatios;
+		if (ratios == null) {
+			ratios = new Ratios(mScales);
+			mRatios = ratios;
+		}
+		return ratios.values;
+	}
+
+	/**
+	 * Returns the exact unit factors, which are parsed on first use.
+	 */
+	private ExactRatios getExactRatios() {
+		ExactRatios exactRatios = mExactRatios;
+		if (exactRatios == null) {
+			exactRatios = new ExactRatios(mExactScales, mExactOffsets);
+			mExactRatios = exactRatios;
+		}
+		return exactRatios;
+	}
+
+	/**
+	 * Holds the ratio matrix in a final field so that it can be built lazily without locking. Racing threads may each
+	 * build a matrix, but the matrices are identical and always fully initialized when read.
+	 */
+	private static final class Ratios {
+		final double[] values;
+
+		Ratios(double[] scales) {
+			int count = scales.length;
+			values = new double[count * count];
+			for (int sourceUnit = 0; sourceUnit < count; sourceUnit++) {
+				for (int destUnit = 0; destUnit < count; destUnit++) {
+					values[sourceUnit * count + destUnit] = scales[sourceUnit] / scales[destUnit];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The exact ratio between two units, as a fraction.
+	 */
+	private static final class ExactRatio {
+		final BigDecimal numerator;
+		final BigDecimal denominator;
+
+		ExactRatio(BigDecimal numerator, BigDecimal denominator) {
+			this.numerator = numerator;
+			this.denominator = denominator;
+		}
+	}
+
+	/**
+	 * Holds the exact unit factors as fractions, and caches the exact ratio between each pair of units once it has been
+	 * computed.
+	 */
+	private static final class ExactRatios {
+		final BigDecimal[] numerators;
+		final BigDecimal[] denominators;
+		final BigDecimal[] offsets;
+		final AtomicReferenceArray<ExactRatio> ratios;
+
+		ExactRatios(String[] scales, String[] offsets) {
+			int count = scales.length;
+			numerators = new BigDecimal[count];
+			denominators = new BigDecimal[count];
+			for (int unit = 0; unit < count; unit++) {
+				int slash = scales[unit].indexOf('/');
+				if (slash < 0) {
+					numerators[unit] = new BigDecimal(scales[unit]);
+					denominators[unit] = BigDecimal.ONE;
+				} else {
+					numerators[unit] = new BigDecimal(scales[unit].substring(0, slash));
+					denominators[unit] = new BigDecimal(scales[unit].substring(slash + 1));
+				}
+			}
+
+			if (offsets != null) {
+				this.offsets = new BigDecimal[count];
+				for (int unit = 0; unit < count; unit++) {
+					this.offsets[unit] = new BigDecimal(offsets[unit]);
+				}
+			} else {
+				this.offsets = null;
+			}
+
+			ratios = new AtomicReferenceArray<>(count * count);
+		}
+
+		/**
+		 * Returns the exact ratio from the source unit to the destination unit.
+		 */
+		ExactRatio get(int sourceUnit, int destUnit) {
+			int index = sourceUnit * numerators.length + destUnit;
+			ExactRatio ratio = ratios.get(index);
+			if (ratio == null) {
+				// (sourceNumerator / sourceDenominator) / (destNumerator / destDenominator)
+				ratio = new ExactRatio(numerators[sourceUnit].multiply(denominators[destUnit]),
+						denominators[sourceUnit].multiply(numerators[destUnit]));
+				ratios.set(index, ratio);
+			}
+			return ratio;
+		}
+	}
+}
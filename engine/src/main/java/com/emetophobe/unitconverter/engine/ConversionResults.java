@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * A reusable list of conversion results. The results hold every unit except the source unit, in unit order, and are
+ * backed by a primitive array that is allocated once so that updating them never allocates.
+ * <p/>
+ * The results can also be updated with exact decimal values, which are much slower and do allocate, and are only
+ * used when the user asks for them.
+ */
+public final class ConversionResults implements ResultList {
+	private final ConversionEngine mEngine;
+	private final double[] mValues;
+	private final BigDecimal[] mExactValues;
+	private int mSourceUnit = -1;
+	private boolean mExact;
+
+	/**
+	 * Construct an empty result list.
+	 *
+	 * @param engine The conversion engine used to fill the results.
+	 */
+	public ConversionResults(ConversionEngine engine) {
+		mEngine = engine;
+		mValues = new double[engine.getUnitCount()];
+		mExactValues = new BigDecimal[engine.getUnitCount()];
+	}
+
+	/**
+	 * Convert a value to every other unit type, replacing the current results.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param value      The number to convert.
+	 */
+	public void update(int sourceUnit, double value) {
+		mEngine.convertAll(sourceUnit, value, mValues);
+		mSourceUnit = sourceUnit;
+		mExact = false;
+	}
+
+	/**
+	 * Convert a value to every other unit type using exact decimal arithmetic, replacing the current results.
+	 *
+	 * @param sourceUnit The source unit type.
+	 * @param value      The number to convert.
+	 * @param precision  The number of decimal places to round the results to.
+	 */
+	public void updateExact(int sourceUnit, BigDecimal value, int precision) {
+		for (int unit = 0; unit < mExactValues.length; unit++) {
+			mExactValues[unit] = unit == sourceUnit ? value : mEngine.convertExact(sourceUnit, unit, value, precision);
+			mValues[unit] = mExactValues[unit].doubleValue();
+		}
+		mSourceUnit = sourceUnit;
+		mExact = true;
+	}
+
+	@Override
+	public boolean isExact() {
+		return mExact;
+	}
+
+	@Override
+	public int size() {
+		return mSourceUnit < 0 ? 0 : mValues.length - 1;
+	}
+
+	@Override
+	public int getUnit(int position) {
+		return position < mSourceUnit ? position : position + 1;
+	}
+
+	@Override
+	public String getName(int position) {
+		return mEngine.getUnitName(getUnit(position));
+	}
+
+	@Override
+	public double getValue(int position) {
+		return mValues[getUnit(position)];
+	}
+
+	@Override
+	public BigDecimal getExactValue(int position) {
+		return mExact ? mExactValues[getUnit(position)] : null;
+	}
+}
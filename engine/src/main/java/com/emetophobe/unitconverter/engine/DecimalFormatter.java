@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+
+/**
+ * Formats doubles as plain decimal numbers rounded half-even to a fixed number of decimal places, writing the digits
+ * straight into a StringBuilder. Trailing zeros are dropped, so 2.50 is written as 2.5 and 3.0 as 3.
+ * <p/>
+ * A number is rounded as the shortest decimal that identifies it, i.e. the digits of {@link Double#toString}, which is
+ * the same as {@code BigDecimal.valueOf(number).setScale(n, RoundingMode.HALF_EVEN)}. So 2.675 rounds to 2.68 even
+ * though the nearest double is slightly below it. Whole numbers of 2^53 and above are shown exactly. The rounding is
+ * done with a cached table of powers of ten and an exact product of the fraction, and never allocates. Only more than
+ * 15 decimal places and magnitudes of 1e18 and above fall back to BigDecimal; those magnitudes are written in
+ * scientific notation.
+ */
+public final class DecimalFormatter {
+	/**
+	 * The largest number of decimal places that can be rounded without falling back to BigDecimal.
+	 */
+	private static final int MAX_FAST_PRECISION = 15;
+
+	/**
+	 * Magnitudes at or above this are written in scientific notation.
+	 */
+	private static final double SCIENTIFIC_THRESHOLD = 1e18;
+
+	/**
+	 * Every integer below this magnitude is a double, so the integer part of a smaller number is exact.
+	 */
+	private static final double EXACT_INTEGER_LIMIT = 9007199254740992.0;
+
+	/**
+	 * Splits a double into two halves of 26 bits for an exact product (Dekker).
+	 */
+	private static final double SPLITTER = 134217729.0;
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+
+	private static final long[] LONG_POWERS_OF_TEN = {
+			1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+			100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L,
+			10000000000000000L, 100000000000000000L, 1000000000000000000L
+	};
+
+	/**
+	 * This class cannot be instantiated
+	 */
+	private DecimalFormatter() {
+
+	}
+
+	/**
+	 * Append a number rounded to n decimal places.
+	 *
+	 * @param builder The StringBuilder to append to.
+	 * @param number  The number to format.
+	 * @param n       The number of decimal places, at least 0.
+	 * @return The StringBuilder.
+	 */
+	public static StringBuilder append(StringBuilder builder, double number, int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Invalid precision: " + n);
+		}
+
+		if (Double.isNaN(number) || Double.isInfinite(number)) {
+			return builder.append(number);
+		}
+
+		double magnitude = Math.abs(number);
+		if (magnitude >= SCIENTIFIC_THRESHOLD) {
+			return appendScientific(builder, number, n);
+		}
+
+		if (n > MAX_FAST_PRECISION) {
+			return appendExact(builder, number, n);
+		}
+
+		// Numbers from EXACT_INTEGER_LIMIT up are whole and are shown exactly. Double.toString shortens some of them,
+		// differently between Java versions.
+		long integerPart = (long) magnitude;
+		long digits = magnitude < EXACT_INTEGER_LIMIT ? roundFraction(magnitude, integerPart, n) : 0;
+		if (digits == LONG_POWERS_OF_TEN[n]) {
+			// The fraction rounded up to the next integer
+			integerPart++;
+			digits = 0;
+		}
+
+		if (number < 0 && (integerPart != 0 || digits != 0)) {
+			builder.append('-');
+		}
+		appendLong(builder, integerPart);
+		appendFraction(builder, digits, n);
+		return builder;
+	}
+
+	/**
+	 * Returns the fraction of a number below {@link #EXACT_INTEGER_LIMIT} rounded to n decimal places, as an integer
+	 * number of units of the last place. The result is 10^n if the fraction rounds up to the next integer.
+	 */
+	private static long roundFraction(double magnitude, long integerPart, int n) {
+		// The subtraction is exact
+		double fraction = magnitude - integerPart;
+		if (fraction == 0) {
+			return 0;
+		}
+
+		// The exact product of the fraction and 10^n is high + low
+		double power = POWERS_OF_TEN[n];
+		double high = fraction * power;
+		double ulp = Math.ulp(magnitude);
+		double upperWidth = ulp * 0.5 * power;
+		if (high < 0.25 && upperWidth < 0.25) {
+			// Far below the first tie, which also keeps the split from underflowing
+			return 0;
+		}
+		double low = multiplyError(fraction, power, high);
+
+		// The distances to the neighbouring doubles in units of the last place. Any decimal within them is a
+		// representation of the number.
+		double lowerWidth = isPowerOfTwo(magnitude) ? upperWidth * 0.5 : upperWidth;
+		boolean even = isMantissaEven(magnitude);
+
+		// The scaled fraction is floor + remainder + low. The remainder is exact, and low is kept apart from it since
+		// adding them would lose low near a tie.
+		long floor = (long) Math.floor(high);
+		double remainder = high - floor;
+		if (remainder == 0 && low < 0) {
+			floor--;
+			remainder = 1;
+		}
+
+		if (upperWidth >= 0.5) {
+			// Several places round to the number, so it is shown as the one with the most trailing zeros
+			long last = LONG_POWERS_OF_TEN[n];
+			for (int place = n; place >= 0; place--) {
+				long unit = LONG_POWERS_OF_TEN[place];
+				long below = floor - floor % unit;
+				long above = below + unit;
+				double belowDistance = ((floor - below) + remainder) + low;
+				double aboveDistance = ((above - floor) - remainder) - low;
+				boolean belowMatches = below > 0 && isWithin(belowDistance, lowerWidth, even);
+				boolean aboveMatches = above < last && isWithin(aboveDistance, upperWidth, even);
+				if (belowMatches && aboveMatches && belowDistance == aboveDistance) {
+					// Equally close, so the one with an even last digit is shown
+					return (below / unit & 1) == 0 ? below : above;
+				} else if (belowMatches && (!aboveMatches || belowDistance < aboveDistance)) {
+					return below;
+				} else if (aboveMatches) {
+					return above;
+				}
+			}
+		}
+
+		// The number is shown with more decimals than n, and is only a tie if the tie itself is its shortest decimal:
+		// the tie has to represent the number, be closer than any other decimal of one more place, and there can't be
+		// a whole unit that represents it
+		double tieDistance = (remainder - 0.5) + low;
+		double distance = Math.abs(tieDistance);
+		if (distance < 0.05 && isWithin(distance, tieDistance < 0 ? lowerWidth : upperWidth, even)
+				&& !isWithin(0.5 - distance, Math.max(lowerWidth, upperWidth), even)) {
+			long lastDigit = n == 0 ? integerPart : floor;
+			return (lastDigit & 1) == 0 ? floor : floor + 1;
+		}
+		return tieDistance < 0 ? floor : floor + 1;
+	}
+
+	/**
+	 * Returns the rounding error of the product of two doubles, i.e. a * b - product exactly (Dekker). The arguments
+	 * must be small enough for the splits not to overflow or underflow.
+	 */
+	private static double multiplyError(double a, double b, double product) {
+		double split = SPLITTER * a;
+		double aHigh = split - (split - a);
+		double aLow = a - aHigh;
+		split = SPLITTER * b;
+		double bHigh = split - (split - b);
+		double bLow = b - bHigh;
+		return ((aHigh * bHigh - product) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+	}
+
+	/**
+	 * Returns true if a decimal at a distance from the number rounds to the number. Decimals exactly halfway to the
+	 * neighbouring double round to the one with an even mantissa.
+	 */
+	private static boolean isWithin(double distance, double width, boolean even) {
+		return even ? distance <= width : distance < width;
+	}
+
+	/**
+	 * Returns true if a positive double is a power of two, so that the double below it is closer than the one above.
+	 */
+	private static boolean isPowerOfTwo(double magnitude) {
+		return (Double.doubleToRawLongBits(magnitude) & 0x000fffffffffffffL) == 0 && magnitude >= Double.MIN_NORMAL;
+	}
+
+	/**
+	 * Returns true if the last bit of the mantissa of a double is 0.
+	 */
+	private static boolean isMantissaEven(double magnitude) {
+		return (Double.doubleToRawLongBits(magnitude) & 1) == 0;
+	}
+
+	/**
+	 * Append the decimal digits of a non-negative long.
+	 */
+	private static void appendLong(StringBuilder builder, long value) {
+		int power = 0;
+		while (power < LONG_POWERS_OF_TEN.length - 1 && value >= LONG_POWERS_OF_TEN[power + 1]) {
+			power++;
+		}
+		for (; power >= 0; power--) {
+			long digit = value / LONG_POWERS_OF_TEN[power];
+			builder.append((char) ('0' + digit));
+			value -= digit * LONG_POWERS_OF_TEN[power];
+		}
+	}
+
+	/**
+	 * Append n fractional digits without their trailing zeros, preceded by a decimal point unless they're all zero.
+	 */
+	private static void appendFraction(StringBuilder builder, long digits, int n) {
+		if (digits == 0) {
+			return;
+		}
+		while (digits % 10 == 0) {
+			digits /= 10;
+			n--;
+		}
+		builder.append('.');
+		for (int power = n - 1; power >= 0; power--) {
+			long digit = digits / LONG_POWERS_OF_TEN[power];
+			builder.append((char) ('0' + digit));
+			digits -= digit * LONG_POWERS_OF_TEN[power];
+		}
+	}
+
+	/**
+	 * Append a number rounded to n decimal places using BigDecimal.
+	 */
+	private static StringBuilder appendExact(StringBuilder builder, double number, int n) {
+		BigDecimal decimal = Math.abs(number) < EXACT_INTEGER_LIMIT ? BigDecimal.valueOf(number)
+				: new BigDecimal(number);
+		BigDecimal rounded = decimal.setScale(n, RoundingMode.HALF_EVEN);
+		if (rounded.signum() == 0) {
+			return builder.append('0');
+		}
+		return builder.append(rounded.stripTrailingZeros().toPlainString());
+	}
+
+	/**
+	 * Append a number in scientific notation with up to n decimal places in the significand.
+	 */
+	private static StringBuilder appendScientific(StringBuilder builder, double number, int n) {
+		int significantDigits = Math.min(n, 16) + 1;
+		BigDecimal rounded = BigDecimal.valueOf(number)
+				.round(new MathContext(significantDigits, RoundingMode.HALF_EVEN)).stripTrailingZeros();
+
+		String digits = rounded.unscaledValue().abs().toString();
+		int exponent = digits.length() - 1 - rounded.scale();
+
+		if (rounded.signum() < 0) {
+			builder.append('-');
+		}
+		builder.append(digits.charAt(0));
+		if (digits.length() > 1) {
+			builder.append('.').append(digits, 1, digits.length());
+		}
+		builder.append('E');
+		appendLong(builder, exponent);
+		return builder;
+	}
+}
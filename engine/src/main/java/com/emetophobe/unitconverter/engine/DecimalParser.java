@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * Parses decimal numbers from a CharSequence without throwing exceptions or allocating. Partial input that the user is
+ * still typing, such as "-", "." or "1e", is reported as incomplete instead of being treated as an error.
+ * <p/>
+ * Results are correctly rounded. Numbers with at most 18 significant digits whose value and power of ten are both
+ * exactly representable take the exact fast path (Clinger's algorithm), and anything else falls back to
+ * Double.parseDouble.
+ * <p/>
+ * {@link #parseExact(CharSequence)} also keeps the number as an exact BigDecimal, for exact conversions.
+ * <p/>
+ * A parser keeps the value of the last parse, so each thread must use its own parser.
+ */
+public final class DecimalParser {
+	/**
+	 * The text is a complete number.
+	 */
+	public static final int PARSED = 0;
+
+	/**
+	 * The text is empty or only contains whitespace.
+	 */
+	public static final int EMPTY = 1;
+
+	/**
+	 * The text is the beginning of a number, e.g. "-", "." or "1e-". The value is that of the complete part, if any.
+	 */
+	public static final int INCOMPLETE = 2;
+
+	/**
+	 * The text isn't a number.
+	 */
+	public static final int INVALID = 3;
+
+	private static final int MAX_DIGITS = 18;
+	private static final int MAX_EXPONENT = 100000;
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+			1e19, 1e20, 1e21, 1e22
+	};
+
+	private final char mDecimalSeparator;
+	private double mValue;
+	private BigDecimal mExactValue;
+
+	// The complete part of the number in the text of the last parse
+	private int mNumberStart;
+	private int mNumberEnd;
+
+	/**
+	 * Construct a parser that accepts '.' as the decimal separator.
+	 */
+	public DecimalParser() {
+		this('.');
+	}
+
+	/**
+	 * Construct a parser that accepts the specified decimal separator, for example the one of the user's locale. '.'
+	 * is always accepted as well.
+	 *
+	 * @param decimalSeparator The decimal separator.
+	 */
+	public DecimalParser(char decimalSeparator) {
+		mDecimalSeparator = decimalSeparator;
+	}
+
+	/**
+	 * Returns the value of the last parse, or 0 if it didn't contain a number.
+	 */
+	public double getValue() {
+		return mValue;
+	}
+
+	/**
+	 * Parse a decimal number. Leading and trailing whitespace is ignored.
+	 *
+	 * @param text The text to parse.
+	 * @return One of {@link #PARSED}, {@link #EMPTY}, {@link #INCOMPLETE} or {@link #INVALID}.
+	 */
+	public int parse(CharSequence text) {
+		return parse(text, 0, text.length());
+	}
+
+	/**
+	 * Parse a decimal number from part of a text. Leading and trailing whitespace is ignored.
+	 *
+	 * @param text  The text to parse.
+	 * @param start The index of the first character of the number.
+	 * @param end   The index after the last character of the number.
+	 * @return One of {@link #PARSED}, {@link #EMPTY}, {@link #INCOMPLETE} or {@link #INVALID}.
+	 */
+	public int parse(CharSequence text, int start, int end) {
+		mValue = 0.0;
+		mNumberStart = 0;
+		mNumberEnd = 0;
+
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return EMPTY;
+		}
+
+		int i = start;
+		boolean negative = false;
+		char c = text.charAt(i);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			i++;
+		}
+
+		// Read the significand, keeping up to 18 significant digits so that they fit in a long
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenSeparator = false;
+		boolean truncated = false;
+
+		for (; i < end; i++) {
+			c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				seenDigit = true;
+				int digit = c - '0';
+				if (mantissa == 0 && digit == 0) {
+					// Leading zeros aren't significant, but move the decimal point after it
+					if (seenSeparator) {
+						exponent--;
+					}
+				} else if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + digit;
+					digits++;
+					if (seenSeparator) {
+						exponent--;
+					}
+				} else {
+					truncated |= digit != 0;
+					if (!seenSeparator) {
+						exponent++;
+					}
+				}
+			} else if ((c == '.' || c == mDecimalSeparator) && !seenSeparator) {
+				seenSeparator = true;
+			} else {
+				break;
+			}
+		}
+
+		if (!seenDigit) {
+			return i == end ? INCOMPLETE : INVALID;
+		}
+
+		// Read the exponent
+		if (i < end) {
+			int significandEnd = i;
+			c = text.charAt(i);
+			if (c != 'e' && c != 'E') {
+				return INVALID;
+			}
+			i++;
+
+			boolean negativeExponent = false;
+			if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+				negativeExponent = text.charAt(i) == '-';
+				i++;
+			}
+			if (i == end) {
+				mValue = toDouble(negative, mantissa, exponent, truncated, text, start, significandEnd);
+				mNumberStart = start;
+				mNumberEnd = significandEnd;
+				return INCOMPLETE;
+			}
+
+			int explicitExponent = 0;
+			for (; i < end; i++) {
+				c = text.charAt(i);
+				if (c < '0' || c > '9') {
+					return INVALID;
+				}
+				if (explicitExponent < MAX_EXPONENT) {
+					explicitExponent = explicitExponent * 10 + (c - '0');
+				}
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+
+		mValue = toDouble(negative, mantissa, exponent, truncated, text, start, end);
+		mNumberStart = start;
+		mNumberEnd = end;
+		return PARSED;
+	}
+
+	/**
+	 * Parse a decimal number into an exact BigDecimal as well as a double. Partial input is handled like
+	 * {@link #parse(CharSequence)}: {@link #getExactValue()} returns the complete part of the number, or 0 if there
+	 * isn't one, and {@link #getValue()} returns the same number as a double.
+	 *
+	 * @param text The text to parse.
+	 * @return One of {@link #PARSED}, {@link #EMPTY}, {@link #INCOMPLETE} or {@link #INVALID}.
+	 */
+	public int parseExact(CharSequence text) {
+		int status = parse(text);
+		mExactValue = null;
+		if (status == INVALID || Double.isInfinite(mValue)) {
+			return status;
+		}
+		if (mNumberStart == mNumberEnd) {
+			mExactValue = BigDecimal.ZERO;
+			return status;
+		}
+
+		String number = text.subSequence(mNumberStart, mNumberEnd).toString();
+		if (mDecimalSeparator != '.') {
+			number = number.replace(mDecimalSeparator, '.');
+		}
+		mExactValue = new BigDecimal(number);
+		return status;
+	}
+
+	/**
+	 * Returns the exact value of the last {@link #parseExact(CharSequence)}, or null if the text was invalid or the
+	 * number is too large to be converted as a double either.
+	 */
+	public BigDecimal getExactValue() {
+		return mExactValue;
+	}
+
+	/**
+	 * Returns the correctly rounded value of mantissa * 10^exponent.
+	 */
+	private double toDouble(boolean negative, long mantissa, int exponent, boolean truncated, CharSequence text,
+							int start, int end) {
+		if (mantissa == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+
+		if (!truncated && mantissa <= MAX_EXACT_MANTISSA) {
+			double value = Double.NaN;
+			if (exponent >= 0 && exponent <= 22) {
+				value = mantissa * POWERS_OF_TEN[exponent];
+			} else if (exponent < 0 && exponent >= -22) {
+				value = mantissa / POWERS_OF_TEN[-exponent];
+			} else if (exponent > 22 && exponent <= 22 + 15) {
+				// Move part of the exponent into the mantissa if it stays exact, e.g. 12e30 = 12000000000e22
+				long scaled = mantissa;
+				for (int e = exponent; e > 22 && scaled <= MAX_EXACT_MANTISSA; e--) {
+					scaled *= 10;
+				}
+				if (scaled <= MAX_EXACT_MANTISSA) {
+					value = scaled * POWERS_OF_TEN[22];
+				}
+			}
+			if (!Double.isNaN(value)) {
+				return negative ? -value : value;
+			}
+		}
+
+		return slowParse(text, start, end);
+	}
+
+	/**
+	 * Parse the number with Double.parseDouble. This allocates, but is only needed for numbers with more significant
+	 * digits or larger exponents than the fast path can handle exactly.
+	 */
+	private double slowParse(CharSequence text, int start, int end) {
+		String number = text.subSequence(start, end).toString();
+		if (mDecimalSeparator != '.') {
+			number = number.replace(mDecimalSeparator, '.');
+		}
+		return Double.parseDouble(number);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.util.Arrays;
+
+
+/**
+ * The dimension of a unit as a vector of exponents of the base quantities, e.g. L^3/T for a flow rate. Only units
+ * with the same dimension can be converted into each other.
+ */
+public final class Dimension {
+	public static final int LENGTH = 0;
+	public static final int MASS = 1;
+	public static final int TIME = 2;
+	public static final int TEMPERATURE = 3;
+	public static final int INFORMATION = 4;
+
+	private static final String[] SYMBOLS = {"L", "M", "T", "K", "B"};
+
+	private final int[] mExponents;
+
+	/**
+	 * Construct a dimension from its exponents, in the order of the base quantity constants. The array is copied.
+	 */
+	public Dimension(int[] exponents) {
+		if (exponents.length != SYMBOLS.length) {
+			throw new IllegalArgumentException("A dimension needs " + SYMBOLS.length + " exponents");
+		}
+		mExponents = exponents.clone();
+	}
+
+	/**
+	 * Returns the exponent of the specified base quantity.
+	 */
+	public int getExponent(int quantity) {
+		return mExponents[quantity];
+	}
+
+	/**
+	 * Returns the dimension of the product of a unit of this dimension and a unit of the other one.
+	 */
+	public Dimension multiply(Dimension other) {
+		int[] exponents = new int[mExponents.length];
+		for (int i = 0; i < exponents.length; i++) {
+			exponents[i] = mExponents[i] + other.mExponents[i];
+		}
+		return new Dimension(exponents);
+	}
+
+	/**
+	 * Returns the dimension of the quotient of a unit of this dimension and a unit of the other one.
+	 */
+	public Dimension divide(Dimension other) {
+		int[] exponents = new int[mExponents.length];
+		for (int i = 0; i < exponents.length; i++) {
+			exponents[i] = mExponents[i] - other.mExponents[i];
+		}
+		return new Dimension(exponents);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Dimension && Arrays.equals(mExponents, ((Dimension) o).mExponents);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(mExponents);
+	}
+
+	/**
+	 * Returns the dimension in the notation used by units.xml, e.g. M/L^3.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder numerator = new StringBuilder();
+		StringBuilder denominator = new StringBuilder();
+		for (int i = 0; i < mExponents.length; i++) {
+			int exponent = mExponents[i];
+			if (exponent != 0) {
+				StringBuilder builder = exponent > 0 ? numerator : denominator;
+				if (builder.length() > 0) {
+					builder.append(' ');
+				}
+				builder.append(SYMBOLS[i]);
+				if (Math.abs(exponent) != 1) {
+					builder.append('^').append(Math.abs(exponent));
+				}
+			}
+		}
+
+		if (numerator.length() == 0) {
+			numerator.append('1');
+		}
+		if (denominator.length() > 0) {
+			numerator.append('/').append(denominator);
+		}
+		return numerator.toString();
+	}
+}
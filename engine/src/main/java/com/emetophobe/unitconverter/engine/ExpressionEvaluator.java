@@ -0,0 +1,575 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates arithmetic expressions such as "3*1024+512" or "2^(1/2)" while the user types them. The operators are +,
+ * -, * (or \u00d7), / (or \u00f7), ^ (right associative), unary minus and parentheses, and numbers are parsed by a
+ * {@link DecimalParser}.
+ * <p/>
+ * With length marks enabled, ' and " mark feet and inches, so 12'6" is 150. An expression that uses the marks is
+ * evaluated in inches, see {@link #usesLengthMarks()}.
+ * <p/>
+ * The expression is compiled to a postfix program. The parser state is kept after every token and the value stack
+ * after every instruction, so when the text changes only the tokens after the unchanged prefix are compiled and
+ * evaluated again. Typing at the end of a long expression is a constant amount of work per keystroke, and nothing is
+ * allocated once the arrays have grown to the length of the expression.
+ * <p/>
+ * Partial input is evaluated as far as it goes: trailing operators are ignored, open parentheses are closed and the
+ * result is reported as incomplete. Like the parser, the evaluator never throws on bad input.
+ * <p/>
+ * An evaluator keeps the state of the last expression, so each thread must use its own evaluator.
+ */
+public final class ExpressionEvaluator {
+	/**
+	 * The text is a complete expression.
+	 */
+	public static final int PARSED = DecimalParser.PARSED;
+
+	/**
+	 * The text is empty or only contains whitespace.
+	 */
+	public static final int EMPTY = DecimalParser.EMPTY;
+
+	/**
+	 * The text is the beginning of an expression, e.g. "3*" or "(1+2". The value is that of the complete part.
+	 */
+	public static final int INCOMPLETE = DecimalParser.INCOMPLETE;
+
+	/**
+	 * The text isn't an expression. The value is 0.
+	 */
+	public static final int INVALID = DecimalParser.INVALID;
+
+	// Program instructions
+	private static final int PUSH = 0;
+	private static final int ADD = 1;
+	private static final int SUBTRACT = 2;
+	private static final int MULTIPLY = 3;
+	private static final int DIVIDE = 4;
+	private static final int POWER = 5;
+	private static final int NEGATE = 6;
+	private static final int FEET = 7;
+	private static final int INCHES = 8;
+
+	// Operator stack entry that never becomes an instruction
+	private static final int OPEN_PARENTHESIS = 9;
+
+	// Parser states
+	private static final int EXPECT_OPERAND = 0;
+	private static final int AFTER_OPERAND = 1;
+	private static final int AFTER_MARK = 2;
+
+	private static final double INCHES_PER_FOOT = 12.0;
+	private static final int INITIAL_CAPACITY = 16;
+
+	// A number token depends on up to two characters after its end, e.g. the "e+" of "1e+5"
+	private static final int LOOKAHEAD = 3;
+
+	private final DecimalParser mParser;
+	private final char mDecimalSeparator;
+	private boolean mLengthMarksEnabled;
+
+	// The text of the last evaluation
+	private char[] mText = new char[INITIAL_CAPACITY];
+	private int mTextLength;
+
+	// The compiled program
+	private int[] mInstructions = new int[INITIAL_CAPACITY];
+	private double[] mConstants = new double[INITIAL_CAPACITY];
+	private int mProgramLength;
+
+	// The value stack after each instruction: the result of instruction i, and the instruction whose result is below
+	// it. The first mEvaluatedLength entries are up to date.
+	private double[] mStackValues = new double[INITIAL_CAPACITY];
+	private int[] mStackBelow = new int[INITIAL_CAPACITY];
+	private int mEvaluatedLength;
+
+	// The operator stack. Entries are never changed once pushed, so a checkpoint only needs the top of the stack.
+	private int[] mOperators = new int[INITIAL_CAPACITY];
+	private int[] mOperatorsBelow = new int[INITIAL_CAPACITY];
+	private int mOperatorCount;
+	private int mOperatorTop = -1;
+	private int mState;
+	private int mMarkCount;
+
+	// The parser state after each token. Checkpoint 0 is the start of the text.
+	private int[] mTokenEnds = new int[INITIAL_CAPACITY];
+	private int[] mTokenProgramLengths = new int[INITIAL_CAPACITY];
+	private int[] mTokenOperatorTops = new int[INITIAL_CAPACITY];
+	private int[] mTokenOperatorCounts = new int[INITIAL_CAPACITY];
+	private int[] mTokenStates = new int[INITIAL_CAPACITY];
+	private int[] mTokenMarkCounts = new int[INITIAL_CAPACITY];
+	private int mTokenCount;
+
+	private boolean mIncomplete;
+	private int mStatus;
+	private double mValue;
+	private boolean mUsesLengthMarks;
+
+	/**
+	 * Construct an evaluator that accepts '.' as the decimal separator.
+	 */
+	public ExpressionEvaluator() {
+		this('.');
+	}
+
+	/**
+	 * Construct an evaluator that accepts the specified decimal separator, for example the one of the user's locale.
+	 * '.' is always accepted as well.
+	 *
+	 * @param decimalSeparator The decimal separator.
+	 */
+	public ExpressionEvaluator(char decimalSeparator) {
+		mParser = new DecimalParser(decimalSeparator);
+		mDecimalSeparator = decimalSeparator;
+		reset();
+	}
+
+	/**
+	 * Enable or disable the feet and inches marks. They are invalid when disabled, which is the default.
+	 *
+	 * @param enabled True to accept the marks.
+	 */
+	public void setLengthMarksEnabled(boolean enabled) {
+		if (mLengthMarksEnabled != enabled) {
+			mLengthMarksEnabled = enabled;
+			reset();
+		}
+	}
+
+	/**
+	 * Returns the value of the last evaluation, or 0 if it was empty or invalid.
+	 */
+	public double getValue() {
+		return mValue;
+	}
+
+	/**
+	 * Returns true if the last expression used the feet or inches marks, in which case its value is in inches.
+	 */
+	public boolean usesLengthMarks() {
+		return mUsesLengthMarks;
+	}
+
+	/**
+	 * Evaluate an expression. Only the part of the text after the prefix it shares with the last expression is
+	 * compiled and evaluated again.
+	 *
+	 * @param text The text to evaluate.
+	 * @return One of {@link #PARSED}, {@link #EMPTY}, {@link #INCOMPLETE} or {@link #INVALID}.
+	 */
+	public int evaluate(CharSequence text) {
+		int length = text.length();
+		int prefix = 0;
+		int common = Math.min(length, mTextLength);
+		while (prefix < common && text.charAt(prefix) == mText[prefix]) {
+			prefix++;
+		}
+		if (prefix == length && prefix == mTextLength) {
+			return mStatus;
+		}
+
+		// Keep the new text for the next evaluation
+		if (mText.length < length) {
+			mText = Arrays.copyOf(mText, Math.max(length, mText.length * 2));
+		}
+		for (int i = prefix; i < length; i++) {
+			mText[i] = text.charAt(i);
+		}
+		mTextLength = length;
+
+		// Compile the changed tokens, and finish the program with the operators left on the stack
+		mIncomplete = false;
+		if (!compile(text, restore(prefix))) {
+			mStatus = INVALID;
+			mValue = 0.0;
+			mUsesLengthMarks = false;
+			return mStatus;
+		}
+		mStatus = finish();
+		mUsesLengthMarks = mMarkCount > 0;
+		return mStatus;
+	}
+
+	/**
+	 * Forget the last expression.
+	 */
+	private void reset() {
+		mTextLength = 0;
+		mProgramLength = 0;
+		mEvaluatedLength = 0;
+		mOperatorCount = 0;
+		mOperatorTop = -1;
+		mState = EXPECT_OPERAND;
+		mMarkCount = 0;
+		mTokenCount = 0;
+		checkpoint(0);
+		mStatus = EMPTY;
+		mValue = 0.0;
+		mUsesLengthMarks = false;
+	}
+
+	/**
+	 * Go back to the last token that can't be changed by text after the specified prefix.
+	 *
+	 * @return The position to continue compiling from.
+	 */
+	private int restore(int prefix) {
+		int token = mTokenCount - 1;
+		while (token > 0 && mTokenEnds[token] + LOOKAHEAD > prefix) {
+			token--;
+		}
+
+		mTokenCount = token + 1;
+		mProgramLength = mTokenProgramLengths[token];
+		mOperatorTop = mTokenOperatorTops[token];
+		mOperatorCount = mTokenOperatorCounts[token];
+		mState = mTokenStates[token];
+		mMarkCount = mTokenMarkCounts[token];
+		mEvaluatedLength = Math.min(mEvaluatedLength, mProgramLength);
+		return mTokenEnds[token];
+	}
+
+	/**
+	 * Compile the tokens from the specified position to the end of the text, with a checkpoint after each one.
+	 *
+	 * @return False if the text isn't an expression. The checkpoints before the error are kept.
+	 */
+	private boolean compile(CharSequence text, int position) {
+		int length = text.length();
+		while (true) {
+			while (position < length && text.charAt(position) <= ' ') {
+				position++;
+			}
+			if (position == length) {
+				return true;
+			}
+
+			char c = text.charAt(position);
+			int end = position + 1;
+			if (isDigit(c) || c == '.' || c == mDecimalSeparator) {
+				if (mState == AFTER_OPERAND) {
+					return false;
+				} else if (mState == AFTER_MARK) {
+					// 12'6" is 12' + 6"
+					pushOperator(ADD);
+				}
+				end = scanNumber(text, position, length);
+				// A number can only be incomplete while it is being typed at the end of the text
+				int status = mParser.parse(text, position, end);
+				if (status == DecimalParser.INVALID || (status == DecimalParser.INCOMPLETE && end < length)) {
+					return false;
+				}
+				mIncomplete = status == DecimalParser.INCOMPLETE;
+				emit(PUSH, mParser.getValue());
+				mState = AFTER_OPERAND;
+			} else {
+				switch (c) {
+					case '(':
+						if (mState == AFTER_OPERAND) {
+							return false;
+						} else if (mState == AFTER_MARK) {
+							pushOperator(ADD);
+						}
+						push(OPEN_PARENTHESIS);
+						mState = EXPECT_OPERAND;
+						break;
+					case ')':
+						if (mState == EXPECT_OPERAND) {
+							return false;
+						}
+						while (mOperatorTop != -1 && mOperators[mOperatorTop] != OPEN_PARENTHESIS) {
+							emit(pop(), 0.0);
+						}
+						if (mOperatorTop == -1) {
+							return false;
+						}
+						pop();
+						mState = AFTER_OPERAND;
+						break;
+					case '+':
+						// Unary plus is ignored
+						if (mState != EXPECT_OPERAND) {
+							pushOperator(ADD);
+						}
+						break;
+					case '-':
+						if (mState == EXPECT_OPERAND) {
+							push(NEGATE);
+						} else {
+							pushOperator(SUBTRACT);
+						}
+						break;
+					case '*':
+					case '\u00d7':
+						if (!pushBinaryOperator(MULTIPLY)) {
+							return false;
+						}
+						break;
+					case '/':
+					case '\u00f7':
+						if (!pushBinaryOperator(DIVIDE)) {
+							return false;
+						}
+						break;
+					case '^':
+						if (!pushBinaryOperator(POWER)) {
+							return false;
+						}
+						break;
+					case '\'':
+					case '"':
+						if (!mLengthMarksEnabled || mState != AFTER_OPERAND) {
+							return false;
+						}
+						emit(c == '\'' ? FEET : INCHES, 0.0);
+						mMarkCount++;
+						mState = AFTER_MARK;
+						break;
+					default:
+						return false;
+				}
+			}
+
+			position = end;
+			checkpoint(position);
+		}
+	}
+
+	/**
+	 * Find the end of the number token at the specified position. An exponent is only part of the number if it is
+	 * followed by a digit or by the end of the text, where it is still being typed.
+	 */
+	private int scanNumber(CharSequence text, int position, int length) {
+		int i = position;
+		while (i < length && (isDigit(text.charAt(i)) || text.charAt(i) == '.' || text.charAt(i) == mDecimalSeparator)) {
+			i++;
+		}
+
+		if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			int j = i + 1;
+			if (j < length && (text.charAt(j) == '+' || text.charAt(j) == '-')) {
+				j++;
+			}
+			if (j == length) {
+				return j;
+			}
+			if (isDigit(text.charAt(j))) {
+				while (j < length && isDigit(text.charAt(j))) {
+					j++;
+				}
+				return j;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Finish the program with the operators left on the stack and evaluate it. The instructions added here aren't kept,
+	 * since the next token can still change them.
+	 */
+	private int finish() {
+		int committedLength = mProgramLength;
+		int top = mOperatorTop;
+		int state = mState;
+		boolean incomplete = mIncomplete;
+
+		// Drop the operators that are still waiting for an operand. The left operand of a binary operator is complete.
+		while (state == EXPECT_OPERAND && top != -1) {
+			int operator = mOperators[top];
+			if (operator != NEGATE && operator != OPEN_PARENTHESIS) {
+				state = AFTER_OPERAND;
+			}
+			top = mOperatorsBelow[top];
+			incomplete = true;
+		}
+		if (state == EXPECT_OPERAND) {
+			mValue = 0.0;
+			return mTokenCount == 1 ? EMPTY : INCOMPLETE;
+		}
+
+		// Close the open parentheses
+		while (top != -1) {
+			int operator = mOperators[top];
+			if (operator == OPEN_PARENTHESIS) {
+				incomplete = true;
+			} else {
+				emit(operator, 0.0);
+			}
+			top = mOperatorsBelow[top];
+		}
+
+		run(mEvaluatedLength, committedLength);
+		mEvaluatedLength = committedLength;
+		run(committedLength, mProgramLength);
+		mValue = mStackValues[mProgramLength - 1];
+		mProgramLength = committedLength;
+		return incomplete ? INCOMPLETE : PARSED;
+	}
+
+	/**
+	 * Run the instructions in the specified range. The result of each instruction is on top of the stack when the next
+	 * one runs.
+	 */
+	private void run(int start, int end) {
+		double[] values = mStackValues;
+		int[] below = mStackBelow;
+		for (int i = start; i < end; i++) {
+			int top = i - 1;
+			switch (mInstructions[i]) {
+				case PUSH:
+					values[i] = mConstants[i];
+					below[i] = top;
+					break;
+				case NEGATE:
+					values[i] = -values[top];
+					below[i] = below[top];
+					break;
+				case FEET:
+					values[i] = values[top] * INCHES_PER_FOOT;
+					below[i] = below[top];
+					break;
+				case INCHES:
+					values[i] = values[top];
+					below[i] = below[top];
+					break;
+				default:
+					int left = below[top];
+					values[i] = apply(mInstructions[i], values[left], values[top]);
+					below[i] = below[left];
+					break;
+			}
+		}
+	}
+
+	private static double apply(int operator, double left, double right) {
+		switch (operator) {
+			case ADD:
+				return left + right;
+			case SUBTRACT:
+				return left - right;
+			case MULTIPLY:
+				return left * right;
+			case DIVIDE:
+				return left / right;
+			default:
+				return Math.pow(left, right);
+		}
+	}
+
+	/**
+	 * Push a binary operator that can't start an operand.
+	 *
+	 * @return False if an operand was expected.
+	 */
+	private boolean pushBinaryOperator(int operator) {
+		if (mState == EXPECT_OPERAND) {
+			return false;
+		}
+		pushOperator(operator);
+		return true;
+	}
+
+	/**
+	 * Push a binary operator, after emitting the operators on the stack that bind more tightly. Power is right
+	 * associative and everything else is left associative.
+	 */
+	private void pushOperator(int operator) {
+		int precedence = precedence(operator);
+		while (mOperatorTop != -1) {
+			int top = precedence(mOperators[mOperatorTop]);
+			if (top < precedence || (top == precedence && operator == POWER)) {
+				break;
+			}
+			emit(pop(), 0.0);
+		}
+		push(operator);
+		mState = EXPECT_OPERAND;
+	}
+
+	private static int precedence(int operator) {
+		switch (operator) {
+			case ADD:
+			case SUBTRACT:
+				return 1;
+			case MULTIPLY:
+			case DIVIDE:
+				return 2;
+			case NEGATE:
+				return 3;
+			case POWER:
+				return 4;
+			default:
+				return 0;
+		}
+	}
+
+	private void push(int operator) {
+		if (mOperatorCount == mOperators.length) {
+			mOperators = Arrays.copyOf(mOperators, mOperatorCount * 2);
+			mOperatorsBelow = Arrays.copyOf(mOperatorsBelow, mOperatorCount * 2);
+		}
+		mOperators[mOperatorCount] = operator;
+		mOperatorsBelow[mOperatorCount] = mOperatorTop;
+		mOperatorTop = mOperatorCount++;
+	}
+
+	private int pop() {
+		int operator = mOperators[mOperatorTop];
+		mOperatorTop = mOperatorsBelow[mOperatorTop];
+		return operator;
+	}
+
+	private void emit(int instruction, double constant) {
+		if (mProgramLength == mInstructions.length) {
+			int capacity = mProgramLength * 2;
+			mInstructions = Arrays.copyOf(mInstructions, capacity);
+			mConstants = Arrays.copyOf(mConstants, capacity);
+			mStackValues = Arrays.copyOf(mStackValues, capacity);
+			mStackBelow = Arrays.copyOf(mStackBelow, capacity);
+		}
+		mInstructions[mProgramLength] = instruction;
+		mConstants[mProgramLength] = constant;
+		mProgramLength++;
+	}
+
+	private void checkpoint(int position) {
+		if (mTokenCount == mTokenEnds.length) {
+			int capacity = mTokenCount * 2;
+			mTokenEnds = Arrays.copyOf(mTokenEnds, capacity);
+			mTokenProgramLengths = Arrays.copyOf(mTokenProgramLengths, capacity);
+			mTokenOperatorTops = Arrays.copyOf(mTokenOperatorTops, capacity);
+			mTokenOperatorCounts = Arrays.copyOf(mTokenOperatorCounts, capacity);
+			mTokenStates = Arrays.copyOf(mTokenStates, capacity);
+			mTokenMarkCounts = Arrays.copyOf(mTokenMarkCounts, capacity);
+		}
+		mTokenEnds[mTokenCount] = position;
+		mTokenProgramLengths[mTokenCount] = mProgramLength;
+		mTokenOperatorTops[mTokenCount] = mOperatorTop;
+		mTokenOperatorCounts[mTokenCount] = mOperatorCount;
+		mTokenStates[mTokenCount] = mState;
+		mTokenMarkCounts[mTokenCount] = mMarkCount;
+		mTokenCount++;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An append-only log of conversions, stored as fixed size binary records: the converter type and source unit packed
+ * into an int, the value and the timestamp. Opening a log only reads its header, so a log with tens of thousands of
+ * entries opens as quickly as an empty one.
+ * <p/>
+ * Appended entries are buffered in memory and written in batches on a background thread. The most recent entries are
+ * read through a memory mapping of the tail of the file, together with the entries that haven't been written yet.
+ * Once the log grows past its maximum size it is compacted: repeated conversions are dropped and at most half the
+ * maximum number of entries, the newest ones, are kept.
+ * <p/>
+ * A log can be used from any thread. History is best effort, so entries that can't be written are dropped.
+ */
+public final class HistoryLog implements Closeable {
+	/**
+	 * A conversion in the log.
+	 */
+	public static final class Entry {
+		private final ConverterType mConverterType;
+		private final int mUnit;
+		private final double mValue;
+		private final long mTimestamp;
+
+		private Entry(int typeAndUnit, double value, long timestamp) {
+			mConverterType = ConverterType.fromInteger(typeAndUnit >>> 16);
+			mUnit = typeAndUnit & 0xffff;
+			mValue = value;
+			mTimestamp = timestamp;
+		}
+
+		public ConverterType getConverterType() {
+			return mConverterType;
+		}
+
+		/**
+		 * Returns the source unit type.
+		 */
+		public int getUnit() {
+			return mUnit;
+		}
+
+		public double getValue() {
+			return mValue;
+		}
+
+		/**
+		 * Returns the time of the conversion in milliseconds since the epoch.
+		 */
+		public long getTimestamp() {
+			return mTimestamp;
+		}
+	}
+
+	/**
+	 * The default time in milliseconds that appended entries are buffered before they are written.
+	 */
+	public static final long DEFAULT_FLUSH_DELAY = 1000;
+
+	/**
+	 * The default number of entries at which the log is compacted.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 50000;
+
+	private static final int MAGIC = 0x55434831;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 20;
+	private static final int TYPE_COUNT = ConverterType.values().length;
+
+	// Number of entries that are written at once as soon as they have been appended
+	private static final int BATCH_SIZE = 256;
+
+	// Number of entries in the mapped tail, which is also the number searched for the latest entry of a converter type
+	private static final int TAIL_SIZE = 1024;
+
+	private final File mFile;
+	private final ScheduledExecutorService mWriter;
+	private long mFlushDelay = DEFAULT_FLUSH_DELAY;
+	private int mMaxEntries = DEFAULT_MAX_ENTRIES;
+
+	// The file and the number of entries written to it. Locked before the pending entries when both are needed.
+	private final Object mFileLock = new Object();
+	private FileChannel mChannel;
+	private long mWrittenCount;
+
+	// A mapping of the newest written entries, which is mapped again after entries are written
+	private MappedByteBuffer mTail;
+
+	// The entries that haven't been written yet, locked by this
+	private ByteBuffer mPending = ByteBuffer.allocate(BATCH_SIZE * RECORD_SIZE);
+	private ByteBuffer mSpare = ByteBuffer.allocate(BATCH_SIZE * RECORD_SIZE);
+	private boolean mFlushScheduled;
+
+	/**
+	 * Open a log, creating it if it doesn't exist. A record that was only partly written, for example because the
+	 * process was killed, is removed. A file that isn't a log is replaced by an empty log.
+	 *
+	 * @param file The log file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public HistoryLog(File file) throws IOException {
+		mFile = file;
+		mWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "HistoryLog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		openChannel();
+	}
+
+	/**
+	 * Set the time in milliseconds that appended entries are buffered before they are written.
+	 */
+	public void setFlushDelay(long flushDelay) {
+		mFlushDelay = flushDelay;
+	}
+
+	/**
+	 * Set the number of entries at which the log is compacted.
+	 */
+	public void setMaxEntries(int maxEntries) {
+		mMaxEntries = maxEntries;
+	}
+
+	/**
+	 * Append a conversion. The entry is readable immediately and written within the flush delay.
+	 *
+	 * @param type      The converter type.
+	 * @param unit      The source unit type.
+	 * @param value     The value that was converted.
+	 * @param timestamp The time of the conversion in milliseconds since the epoch.
+	 */
+	public synchronized void append(ConverterType type, int unit, double value, long timestamp) {
+		if (mPending.remaining() < RECORD_SIZE) {
+			ByteBuffer pending = ByteBuffer.allocate(mPending.capacity() * 2);
+			mPending.flip();
+			pending.put(mPending);
+			mPending = pending;
+		}
+		mPending.putInt(type.toInteger() << 16 | unit).putDouble(value).putLong(timestamp);
+
+		if (mPending.position() >= BATCH_SIZE * RECORD_SIZE) {
+			mWriter.execute(mFlushTask);
+		} else if (!mFlushScheduled) {
+			mWriter.schedule(mFlushTask, mFlushDelay, TimeUnit.MILLISECONDS);
+			mFlushScheduled = true;
+		}
+	}
+
+	/**
+	 * Write the appended entries now, in the background. Called when the entries could otherwise be lost, for example
+	 * when the app is paused.
+	 */
+	public void flush() {
+		mWriter.execute(mFlushTask);
+	}
+
+	/**
+	 * Compact the log in the background, keeping at most the specified number of entries.
+	 */
+	public void compact(final int maxEntries) {
+		mWriter.execute(new Runnable() {
+			@Override
+			public void run() {
+				compactQuietly(maxEntries);
+			}
+		});
+	}
+
+	/**
+	 * Write the appended entries and close the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		mWriter.execute(mFlushTask);
+		mWriter.shutdown();
+		try {
+			mWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (mFileLock) {
+			mChannel.close();
+		}
+	}
+
+	/**
+	 * Returns the number of entries, including the ones that haven't been written yet.
+	 */
+	public long getCount() {
+		synchronized (mFileLock) {
+			synchronized (this) {
+				return mWrittenCount + mPending.position() / RECORD_SIZE;
+			}
+		}
+	}
+
+	/**
+	 * Returns the most recent entries, newest first.
+	 *
+	 * @param maxEntries The maximum number of entries to return.
+	 * @throws IOException If the log can't be read.
+	 */
+	public List<Entry> getRecent(int maxEntries) throws IOException {
+		return read(null, maxEntries, maxEntries);
+	}
+
+	/**
+	 * Returns the most recent entry of a converter type, or null if there isn't a recent one.
+	 *
+	 * @param type The converter type.
+	 * @throws IOException If the log can't be read.
+	 */
+	public Entry getLatest(ConverterType type) throws IOException {
+		List<Entry> entries = read(type, 1, TAIL_SIZE);
+		return entries.isEmpty() ? null : entries.get(0);
+	}
+
+	/**
+	 * Read the newest entries of a converter type, or of every type if it is null, newest first.
+	 *
+	 * @param type        The converter type, or null.
+	 * @param maxEntries  The maximum number of entries to return.
+	 * @param searchLimit The maximum number of entries to search.
+	 */
+	private List<Entry> read(ConverterType type, int maxEntries, int searchLimit) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		int typeValue = type != null ? type.toInteger() : -1;
+
+		synchronized (mFileLock) {
+			// The entries that haven't been written are the newest
+			synchronized (this) {
+				for (int position = mPending.position() - RECORD_SIZE; position >= 0 && entries.size() < maxEntries
+						&& searchLimit > 0; position -= RECORD_SIZE, searchLimit--) {
+					addEntry(entries, mPending, position, typeValue);
+				}
+			}
+
+			int count = (int) Math.min(searchLimit, mWrittenCount);
+			if (entries.size() < maxEntries && count > 0) {
+				MappedByteBuffer tail = mapTail(count);
+				int end = tail.capacity() / RECORD_SIZE;
+				for (int position = (end - 1) * RECORD_SIZE; position >= (end - count) * RECORD_SIZE
+						&& entries.size() < maxEntries; position -= RECORD_SIZE) {
+					addEntry(entries, tail, position, typeValue);
+				}
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns a mapping that ends with the newest written entries and contains at least the specified number of them.
+	 * The tail mapping is kept until entries are written, and larger requests are mapped separately. Must be called
+	 * with the file lock held.
+	 */
+	private MappedByteBuffer mapTail(int count) throws IOException {
+		if (count > TAIL_SIZE) {
+			return map(count);
+		}
+		if (mTail == null) {
+			mTail = map((int) Math.min(TAIL_SIZE, mWrittenCount));
+		}
+		return mTail;
+	}
+
+	private MappedByteBuffer map(int count) throws IOException {
+		return mChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + (mWrittenCount - count) * RECORD_SIZE,
+				(long) count * RECORD_SIZE);
+	}
+
+	private static void addEntry(List<Entry> entries, ByteBuffer buffer, int position, int typeValue) {
+		int typeAndUnit = buffer.getInt(position);
+		int entryType = typeAndUnit >>> 16;
+		if (entryType < TYPE_COUNT && (typeValue < 0 || entryType == typeValue)) {
+			entries.add(new Entry(typeAndUnit, buffer.getDouble(position + 4), buffer.getLong(position + 12)));
+		}
+	}
+
+	/**
+	 * Writes the pending entries on the writer thread, and compacts the log once it is too large.
+	 */
+	private final Runnable mFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (mFileLock) {
+				write();
+			}
+			if (mWrittenCount > mMaxEntries) {
+				// Compact to half the maximum, so that a log of distinct conversions isn't compacted on every write
+				compactQuietly(mMaxEntries / 2);
+			}
+		}
+	};
+
+	/**
+	 * Write the pending entries at the end of the file. Must be called with the file lock held.
+	 */
+	private void write() {
+		ByteBuffer batch;
+		synchronized (this) {
+			mFlushScheduled = false;
+			if (mPending.position() == 0) {
+				return;
+			}
+			batch = mPending;
+			mPending = mSpare;
+			mSpare = batch;
+		}
+
+		batch.flip();
+		try {
+			long position = HEADER_SIZE + mWrittenCount * RECORD_SIZE;
+			while (batch.hasRemaining()) {
+				position += mChannel.write(batch, position);
+			}
+			mWrittenCount += batch.limit() / RECORD_SIZE;
+			mTail = null;
+		} catch (IOException e) {
+			// The batch is dropped. Remove any part of it that was written.
+			try {
+				mChannel.truncate(HEADER_SIZE + mWrittenCount * RECORD_SIZE);
+			} catch (IOException ignored) {
+				// The partial record is removed when the log is opened again
+			}
+		}
+		batch.clear();
+	}
+
+	private void compactQuietly(int maxEntries) {
+		try {
+			synchronized (mFileLock) {
+				write();
+				compactFile(maxEntries);
+			}
+		} catch (IOException e) {
+			// The log stays as it was
+		}
+	}
+
+	/**
+	 * Rewrite the log with only the newest entry of each conversion, up to the specified number of entries. The new
+	 * log is written to a temporary file that replaces the log once it is complete, so the log is never lost. Must be
+	 * called with the file lock held.
+	 */
+	private void compactFile(int maxEntries) throws IOException {
+		MappedByteBuffer records = mChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+				mWrittenCount * RECORD_SIZE);
+
+		// Find the entries to keep, newest first
+		Set<Conversion> conversions = new HashSet<>();
+		int[] kept = new int[(int) Math.min(maxEntries, mWrittenCount)];
+		int keptCount = 0;
+		for (int position = (int) ((mWrittenCount - 1) * RECORD_SIZE); position >= 0 && keptCount < kept.length;
+				position -= RECORD_SIZE) {
+			if (conversions.add(new Conversion(records.getInt(position), records.getLong(position + 4)))) {
+				kept[keptCount++] = position;
+			}
+		}
+
+		// Write them oldest first
+		File compacted = new File(mFile.getPath() + ".tmp");
+		RandomAccessFile file = new RandomAccessFile(compacted, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			channel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keptCount * RECORD_SIZE);
+			buffer.putInt(MAGIC).putInt(RECORD_SIZE);
+			for (int i = keptCount - 1; i >= 0; i--) {
+				records.limit(kept[i] + RECORD_SIZE).position(kept[i]);
+				buffer.put(records);
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} finally {
+			file.close();
+		}
+
+		mChannel.close();
+		if (!compacted.renameTo(mFile)) {
+			openChannel();
+			throw new IOException("Can't replace " + mFile + " with " + compacted);
+		}
+		openChannel();
+	}
+
+	/**
+	 * Open the log file and count its entries. Must be called with the file lock held, or from the constructor.
+	 */
+	private void openChannel() throws IOException {
+		mTail = null;
+		FileChannel channel = new RandomAccessFile(mFile, "rw").getChannel();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			long size = channel.size();
+			if (size < HEADER_SIZE || channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC
+					|| header.getInt(4) != RECORD_SIZE) {
+				header.clear();
+				header.putInt(MAGIC).putInt(RECORD_SIZE).flip();
+				channel.truncate(0);
+				channel.write(header, 0);
+				size = HEADER_SIZE;
+			}
+
+			mWrittenCount = (size - HEADER_SIZE) / RECORD_SIZE;
+			channel.truncate(HEADER_SIZE + mWrittenCount * RECORD_SIZE);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		mChannel = channel;
+	}
+
+	/**
+	 * The converter type, unit and value of an entry, which is the same for repeated conversions.
+	 */
+	private static final class Conversion {
+		private final int mTypeAndUnit;
+		private final long mValueBits;
+
+		Conversion(int typeAndUnit, long valueBits) {
+			mTypeAndUnit = typeAndUnit;
+			mValueBits = valueBits;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Conversion)) {
+				return false;
+			}
+			Conversion other = (Conversion) o;
+			return mTypeAndUnit == other.mTypeAndUnit && mValueBits == other.mValueBits;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mTypeAndUnit + (int) (mValueBits ^ (mValueBits >>> 32));
+		}
+	}
+}
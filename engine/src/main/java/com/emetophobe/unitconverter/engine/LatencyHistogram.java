@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies in nanoseconds into log-linear buckets, in the style of HdrHistogram. Every power of two is split
+ * into 32 buckets, so recorded values keep about 3% precision from 1 ns up to about 18 minutes, with a fixed amount of
+ * memory and no allocation per value.
+ * <p/>
+ * Values can be recorded from any thread. Reading while values are being recorded gives a close but not necessarily
+ * consistent snapshot.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_MAGNITUDE = 40;
+	private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+	private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final String mName;
+	private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong mTotalCount = new AtomicLong();
+	private final AtomicLong mTotalValue = new AtomicLong();
+	private final AtomicLong mMaxValue = new AtomicLong();
+
+	/**
+	 * Construct an empty histogram.
+	 *
+	 * @param name The name shown in reports.
+	 */
+	public LatencyHistogram(String name) {
+		mName = name;
+	}
+
+	/**
+	 * Returns the name shown in reports.
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Record a latency. Negative values are recorded as 0 and values beyond the range as the largest value.
+	 *
+	 * @param nanos The latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		mCounts.incrementAndGet(getIndex(value));
+		mTotalCount.incrementAndGet();
+		mTotalValue.addAndGet(value);
+
+		long max = mMaxValue.get();
+		while (value > max && !mMaxValue.compareAndSet(max, value)) {
+			max = mMaxValue.get();
+		}
+	}
+
+	/**
+	 * Record the time since a start time from System.nanoTime(). A start time of 0 isn't recorded, so that callers can
+	 * use 0 when recording is disabled.
+	 *
+	 * @param startNanos The start time.
+	 */
+	public void recordSince(long startNanos) {
+		if (startNanos != 0) {
+			record(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Remove every recorded value.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			mCounts.set(i, 0);
+		}
+		mTotalCount.set(0);
+		mTotalValue.set(0);
+		mMaxValue.set(0);
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 */
+	public long getCount() {
+		return mTotalCount.get();
+	}
+
+	/**
+	 * Returns the largest recorded value, or 0 if there isn't one.
+	 */
+	public long getMax() {
+		return mMaxValue.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded values, or 0 if there aren't any.
+	 */
+	public double getMean() {
+		long count = mTotalCount.get();
+		return count == 0 ? 0.0 : (double) mTotalValue.get() / count;
+	}
+
+	/**
+	 * Returns the value at a percentile, as the largest value of its bucket, or 0 if there aren't any values.
+	 *
+	 * @param percentile The percentile, from 0 to 100.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = mTotalCount.get();
+		long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += mCounts.get(i);
+			if (cumulative >= target) {
+				return Math.min(getHighestValue(i), mMaxValue.get());
+			}
+		}
+		return mMaxValue.get();
+	}
+
+	/**
+	 * Write the percentile distribution of the recorded values as tab separated lines of value in microseconds,
+	 * percentile and cumulative count, like HdrHistogram's percentile output.
+	 *
+	 * @param out The output.
+	 * @throws IOException If the output can't be written to.
+	 */
+	public void writePercentiles(Appendable out) throws IOException {
+		long count = mTotalCount.get();
+		out.append("# ").append(mName).append('\n');
+		out.append("value_us\tpercentile\tcount\n");
+		if (count == 0) {
+			return;
+		}
+
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long bucketCount = mCounts.get(i);
+			if (bucketCount != 0) {
+				cumulative += bucketCount;
+				out.append(String.valueOf(getHighestValue(i) / 1000.0)).append('\t')
+						.append(String.valueOf(100.0 * cumulative / count)).append('\t')
+						.append(String.valueOf(cumulative)).append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Returns the bucket of a value. Values below 32 have a bucket each, and above that each power of two has 32
+	 * buckets.
+	 */
+	private static int getIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * Returns the largest value that falls into a bucket.
+	 */
+	private static long getHighestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Splits large bulk conversions across the threads of a fork-join pool. Each value is written to its own position in
+ * the results, so the output is exactly the same as that of the sequential conversion, whatever the order the parts
+ * are converted in. Conversions with no more values than the split threshold run sequentially on the calling thread.
+ * <p/>
+ * This is meant for the batch tools on the JVM; ForkJoinPool is only available on Android 5.0 and above.
+ */
+public final class ParallelConverter {
+	public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+	private final ConversionEngine mEngine;
+	private final ForkJoinPool mPool;
+	private int mThreshold = DEFAULT_THRESHOLD;
+
+	/**
+	 * Construct a parallel converter.
+	 *
+	 * @param engine The conversion engine.
+	 * @param pool   The pool that runs the conversions. It isn't shut down by the converter.
+	 */
+	public ParallelConverter(ConversionEngine engine, ForkJoinPool pool) {
+		mEngine = engine;
+		mPool = pool;
+	}
+
+	/**
+	 * Returns the conversion engine.
+	 */
+	public ConversionEngine getEngine() {
+		return mEngine;
+	}
+
+	/**
+	 * Set the largest number of values that are converted as a single task. Larger conversions are split in half until
+	 * the parts are no larger than this. Defaults to 65536.
+	 */
+	public void setThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Invalid threshold: " + threshold);
+		}
+		mThreshold = threshold;
+	}
+
+	/**
+	 * Convert an array of values from one unit type to another.
+	 *
+	 * @see ConversionEngine#convert(int, int, double[], double[])
+	 */
+	public void convert(int sourceUnit, int destUnit, double[] values, double[] results) {
+		convert(sourceUnit, destUnit, values, 0, results, 0, values.length);
+	}
+
+	/**
+	 * Convert a range of values from one unit type to another.
+	 *
+	 * @see ConversionEngine#convert(int, int, double[], int, double[], int, int)
+	 */
+	public void convert(int sourceUnit, int destUnit, double[] values, int valuesOffset, double[] results,
+						int resultsOffset, int length) {
+		if (length <= mThreshold) {
+			mEngine.convert(sourceUnit, destUnit, values, valuesOffset, results, resultsOffset, length);
+		} else {
+			mPool.invoke(new ArrayTask(sourceUnit, destUnit, values, valuesOffset, results, resultsOffset, 0, length));
+		}
+	}
+
+	/**
+	 * Convert the remaining values of a buffer from one unit type to another.
+	 *
+	 * @see ConversionEngine#convert(int, int, DoubleBuffer, DoubleBuffer)
+	 */
+	public void convert(int sourceUnit, int destUnit, DoubleBuffer values, DoubleBuffer results) {
+		int length = values.remaining();
+		if (length <= mThreshold) {
+			mEngine.convert(sourceUnit, destUnit, values, results);
+			return;
+		}
+		if (results.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		int valuesPosition = values.position();
+		int resultsPosition = results.position();
+		mPool.invoke(new DoubleBufferTask(sourceUnit, destUnit, values, results, 0, length));
+		values.position(valuesPosition + length);
+		results.position(resultsPosition + length);
+	}
+
+	/**
+	 * Convert the remaining values of a float buffer from one unit type to another.
+	 *
+	 * @see ConversionEngine#convert(int, int, FloatBuffer, FloatBuffer)
+	 */
+	public void convert(int sourceUnit, int destUnit, FloatBuffer values, FloatBuffer results) {
+		int length = values.remaining();
+		if (length <= mThreshold) {
+			mEngine.convert(sourceUnit, destUnit, values, results);
+			return;
+		}
+		if (results.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		int valuesPosition = values.position();
+		int resultsPosition = results.position();
+		mPool.invoke(new FloatBufferTask(sourceUnit, destUnit, values, results, 0, length));
+		values.position(valuesPosition + length);
+		results.position(resultsPosition + length);
+	}
+
+	/**
+	 * Converts the range [from, to) of the values, splitting it in half until it's no larger than the threshold.
+	 */
+	private abstract class SplitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int sourceUnit;
+		final int destUnit;
+		final int from;
+		final int to;
+
+		SplitTask(int sourceUnit, int destUnit, int from, int to) {
+			this.sourceUnit = sourceUnit;
+			this.destUnit = destUnit;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= mThreshold) {
+				convertRange();
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(split(from, middle), split(middle, to));
+			}
+		}
+
+		abstract SplitTask split(int from, int to);
+
+		abstract void convertRange();
+	}
+
+	private final class ArrayTask extends SplitTask {
+		private static final long serialVersionUID = 1L;
+
+		private final double[] mValues;
+		private final int mValuesOffset;
+		private final double[] mResults;
+		private final int mResultsOffset;
+
+		ArrayTask(int sourceUnit, int destUnit, double[] values, int valuesOffset, double[] results, int resultsOffset,
+				  int from, int to) {
+			super(sourceUnit, destUnit, from, to);
+			mValues = values;
+			mValuesOffset = valuesOffset;
+			mResults = results;
+			mResultsOffset = resultsOffset;
+		}
+
+		@Override
+		SplitTask split(int from, int to) {
+			return new ArrayTask(sourceUnit, destUnit, mValues, mValuesOffset, mResults, mResultsOffset, from, to);
+		}
+
+		@Override
+		void convertRange() {
+			mEngine.convert(sourceUnit, destUnit, mValues, mValuesOffset + from, mResults, mResultsOffset + from,
+					to - from);
+		}
+	}
+
+	private final class DoubleBufferTask extends SplitTask {
+		private static final long serialVersionUID = 1L;
+
+		private final DoubleBuffer mValues;
+		private final DoubleBuffer mResults;
+
+		DoubleBufferTask(int sourceUnit, int destUnit, DoubleBuffer values, DoubleBuffer results, int from, int to) {
+			super(sourceUnit, destUnit, from, to);
+			mValues = values;
+			mResults = results;
+		}
+
+		@Override
+		SplitTask split(int from, int to) {
+			return new DoubleBufferTask(sourceUnit, destUnit, mValues, mResults, from, to);
+		}
+
+		@Override
+		void convertRange() {
+			// Each part converts through its own views, so the positions of the shared buffers aren't touched
+			DoubleBuffer values = mValues.duplicate();
+			values.position(values.position() + from).limit(values.position() + to - from);
+			DoubleBuffer results = mResults.duplicate();
+			results.position(results.position() + from).limit(results.position() + to - from);
+			mEngine.convert(sourceUnit, destUnit, values, results);
+		}
+	}
+
+	private final class FloatBufferTask extends SplitTask {
+		private static final long serialVersionUID = 1L;
+
+		private final FloatBuffer mValues;
+		private final FloatBuffer mResults;
+
+		FloatBufferTask(int sourceUnit, int destUnit, FloatBuffer values, FloatBuffer results, int from, int to) {
+			super(sourceUnit, destUnit, from, to);
+			mValues = values;
+			mResults = results;
+		}
+
+		@Override
+		SplitTask split(int from, int to) {
+			return new FloatBufferTask(sourceUnit, destUnit, mValues, mResults, from, to);
+		}
+
+		@Override
+		void convertRange() {
+			FloatBuffer values = mValues.duplicate();
+			values.position(values.position() + from).limit(values.position() + to - from);
+			FloatBuffer results = mResults.duplicate();
+			results.position(results.position() + from).limit(results.position() + to - from);
+			mEngine.convert(sourceUnit, destUnit, values, results);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+
+/**
+ * Parses and converts a whole conversion typed as text, e.g. "12 sq mi to ha", "98.6F in C" or "5.2 GB -> Mbit". The
+ * text is a number, the source unit, a connective ("to", "in", "into", "as", "->", an arrow or "=") and the target
+ * unit. Units are looked up in the {@link UnitSymbolTable}, and the converter type is the one that both units share.
+ * <p/>
+ * Parsing never throws or allocates, so it can run on every keystroke. Text that the user is still typing, such as
+ * "12 sq mi to h", is reported as incomplete, with the value and the source unit if they are known.
+ * <p/>
+ * A converter keeps the result of the last parse, so each thread must use its own converter.
+ */
+public final class QuickConverter {
+	/**
+	 * The text is a complete conversion.
+	 */
+	public static final int PARSED = 0;
+
+	/**
+	 * The text is empty or only contains whitespace.
+	 */
+	public static final int EMPTY = 1;
+
+	/**
+	 * The text is the beginning of a conversion, e.g. "12", "12 sq mi" or "12 sq mi to". The value and source unit
+	 * are set if they are known.
+	 */
+	public static final int INCOMPLETE = 2;
+
+	/**
+	 * The text isn't a conversion, e.g. the number is invalid or the units can't be converted to each other.
+	 */
+	public static final int INVALID = 3;
+
+	// The most units that a symbol is looked up as, e.g. "oz" as ounces and fluid ounces
+	private static final int MAX_CANDIDATES = 8;
+
+	private static final String[] WORD_CONNECTIVES = {"to", "in", "into", "as"};
+	private static final String[] SYMBOL_CONNECTIVES = {"->", "\u2192", "="};
+
+	private final UnitSymbolTable mSymbols;
+	private final UnitCatalog mCatalog;
+	private final DecimalParser mParser;
+	private final char mDecimalSeparator;
+	private final int[] mSources = new int[MAX_CANDIDATES];
+	private final int[] mTargets = new int[MAX_CANDIDATES];
+
+	private double mValue;
+	private double mResult;
+	private int mSourceUnit;
+	private int mTargetUnit;
+
+	/**
+	 * Construct a converter that accepts '.' as the decimal separator.
+	 */
+	public QuickConverter() {
+		this('.');
+	}
+
+	/**
+	 * Construct a converter that accepts the specified decimal separator, for example the one of the user's locale.
+	 * '.' is always accepted as well.
+	 */
+	public QuickConverter(char decimalSeparator) {
+		mSymbols = UnitSymbolTable.getInstance();
+		mCatalog = mSymbols.getCatalog();
+		mParser = new DecimalParser(decimalSeparator);
+		mDecimalSeparator = decimalSeparator;
+	}
+
+	/**
+	 * Returns the number of the last parse, or 0 if there isn't one.
+	 */
+	public double getValue() {
+		return mValue;
+	}
+
+	/**
+	 * Returns the catalog unit of the number of the last parse, or -1 if it isn't known.
+	 */
+	public int getSourceUnit() {
+		return mSourceUnit;
+	}
+
+	/**
+	 * Returns the catalog unit to convert to of the last parse, or -1 if it isn't known.
+	 */
+	public int getTargetUnit() {
+		return mTargetUnit;
+	}
+
+	/**
+	 * Returns the converter type of the units of the last parse, or null if the source unit isn't known.
+	 */
+	public ConverterType getConverterType() {
+		return mSourceUnit < 0 ? null : mCatalog.getConverterType(mSourceUnit);
+	}
+
+	/**
+	 * Returns the converted number of the last parse, if it was {@link #PARSED}.
+	 */
+	public double getResult() {
+		return mResult;
+	}
+
+	/**
+	 * Parse and convert a conversion.
+	 *
+	 * @param text The text to parse.
+	 * @return One of {@link #PARSED}, {@link #EMPTY}, {@link #INCOMPLETE} or {@link #INVALID}.
+	 */
+	public int parse(CharSequence text) {
+		mValue = 0.0;
+		mResult = Double.NaN;
+		mSourceUnit = -1;
+		mTargetUnit = -1;
+
+		int start = skipSpace(text, 0, text.length());
+		int end = trimSpace(text, start, text.length());
+		if (start == end) {
+			return EMPTY;
+		}
+
+		// The number ends where the unit starts, with or without a space, e.g. "98.6F"
+		int numberEnd = scanNumber(text, start, end);
+		int status = mParser.parse(text, start, numberEnd);
+		if (status == DecimalParser.EMPTY || status == DecimalParser.INVALID) {
+			return INVALID;
+		}
+		mValue = mParser.getValue();
+
+		int unitStart = skipSpace(text, numberEnd, end);
+		if (unitStart == end) {
+			return INCOMPLETE;
+		}
+		if (status == DecimalParser.INCOMPLETE) {
+			return INVALID;
+		}
+		return parseUnits(text, unitStart, end);
+	}
+
+	/**
+	 * Parse the units after the number. Every connective is tried in turn, since "in" can also be the unit, as in
+	 * "12 in in cm".
+	 */
+	private int parseUnits(CharSequence text, int start, int end) {
+		boolean incompatible = false;
+		boolean unknownSource = false;
+		for (int i = start; i < end; i++) {
+			int length = getConnectiveLength(text, i, start, end);
+			if (length == 0) {
+				continue;
+			}
+
+			int sourceEnd = trimSpace(text, start, i);
+			int targetStart = skipSpace(text, i + length, end);
+			if (sourceEnd == start) {
+				continue;
+			}
+			int sourceCount = mSymbols.lookup(text, start, sourceEnd, mSources);
+			int targetCount = targetStart == end ? 0 : mSymbols.lookup(text, targetStart, end, mTargets);
+			if (sourceCount == 0) {
+				unknownSource |= targetCount > 0;
+				continue;
+			}
+			if (mSourceUnit < 0) {
+				mSourceUnit = mSources[0];
+			}
+			if (targetCount == 0) {
+				// The target is still being typed
+				continue;
+			}
+
+			// Pick the first pair of units of the same converter type, preferring case-sensitive matches
+			for (int s = 0; s < sourceCount; s++) {
+				ConverterType type = mCatalog.getConverterType(mSources[s]);
+				for (int t = 0; t < targetCount; t++) {
+					if (mCatalog.getConverterType(mTargets[t]) == type) {
+						mSourceUnit = mSources[s];
+						mTargetUnit = mTargets[t];
+						mResult = mCatalog.convert(mSourceUnit, mTargetUnit, mValue);
+						return PARSED;
+					}
+				}
+			}
+			incompatible = true;
+		}
+
+		// Without a target, the rest of the text is the source unit, e.g. "12 sq in"
+		if (mSourceUnit < 0 && mSymbols.lookup(text, start, end, mSources) > 0) {
+			mSourceUnit = mSources[0];
+		}
+		return incompatible || (unknownSource && mSourceUnit < 0) ? INVALID : INCOMPLETE;
+	}
+
+	/**
+	 * Returns the length of the connective at an index of the units, or 0 if there isn't one. Words must be whole
+	 * words, while symbols can be written without spaces, e.g. "5ft->m".
+	 */
+	private static int getConnectiveLength(CharSequence text, int index, int start, int end) {
+		for (String symbol : SYMBOL_CONNECTIVES) {
+			if (regionMatches(text, index, end, symbol)) {
+				return symbol.length();
+			}
+		}
+
+		if (index > start && text.charAt(index - 1) > ' ') {
+			return 0;
+		}
+		for (String word : WORD_CONNECTIVES) {
+			int wordEnd = index + word.length();
+			if (regionMatches(text, index, end, word) && (wordEnd == end || text.charAt(wordEnd) <= ' ')) {
+				return word.length();
+			}
+		}
+		return 0;
+	}
+
+	private static boolean regionMatches(CharSequence text, int index, int end, String word) {
+		if (end - index < word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.toLowerCase(text.charAt(index + i)) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index after the number at the start of the text. An exponent is only part of the number if it has
+	 * digits, so "1e" is one unit of "e" rather than an incomplete number.
+	 */
+	private int scanNumber(CharSequence text, int start, int end) {
+		int i = start;
+		char c = text.charAt(i);
+		if (c == '-' || c == '+') {
+			i++;
+		}
+		while (i < end && (isDigit(c = text.charAt(i)) || c == '.' || c == mDecimalSeparator)) {
+			i++;
+		}
+
+		if (i < end && i > start && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			int exponent = i + 1;
+			if (exponent < end && (text.charAt(exponent) == '-' || text.charAt(exponent) == '+')) {
+				exponent++;
+			}
+			if (exponent < end && isDigit(text.charAt(exponent))) {
+				i = exponent;
+				while (i < end && isDigit(text.charAt(i))) {
+					i++;
+				}
+			}
+		}
+		return i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int skipSpace(CharSequence text, int start, int end) {
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimSpace(CharSequence text, int start, int end) {
+		while (end > start && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+}
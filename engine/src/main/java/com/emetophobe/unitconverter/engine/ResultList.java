@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.math.BigDecimal;
+
+
+/**
+ * A list of conversion results that can be shown by an adapter.
+ */
+public interface ResultList {
+	/**
+	 * Returns the number of results.
+	 */
+	int size();
+
+	/**
+	 * Returns the destination unit of the result at the specified position. The results are in unit order.
+	 */
+	int getUnit(int position);
+
+	/**
+	 * Returns the unit name of the result at the specified position.
+	 */
+	String getName(int position);
+
+	/**
+	 * Returns the converted value of the result at the specified position.
+	 */
+	double getValue(int position);
+
+	/**
+	 * Returns true if the results hold exact decimal values.
+	 */
+	boolean isExact();
+
+	/**
+	 * Returns the exact converted value of the result at the specified position, or null if the results aren't exact.
+	 */
+	BigDecimal getExactValue(int position);
+}
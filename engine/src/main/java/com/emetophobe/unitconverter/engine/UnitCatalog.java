@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Every unit of every converter type in one flat list. The units of each converter type are stored contiguously in
+ * converter type order, so the units a value can be converted to are always a single range of the catalog, and
+ * converting to all of them is one pass over a shared array.
+ */
+public final class UnitCatalog {
+	private static final UnitCatalog sInstance = new UnitCatalog();
+
+	private final ConversionEngine[] mEngines;
+	private final int[] mTypeStarts;
+	private final int[] mTypes;
+	private final List<String> mUnitNameList;
+
+	private UnitCatalog() {
+		ConverterType[] types = ConverterType.values();
+		mEngines = new ConversionEngine[types.length];
+		mTypeStarts = new int[types.length + 1];
+		for (int type = 0; type < types.length; type++) {
+			mEngines[type] = ConversionEngine.forType(ConverterType.fromInteger(type));
+			mTypeStarts[type + 1] = mTypeStarts[type] + mEngines[type].getUnitCount();
+		}
+
+		int count = mTypeStarts[types.length];
+		mTypes = new int[count];
+		List<String> names = new ArrayList<>(count);
+		for (int type = 0; type < types.length; type++) {
+			for (int unit = mTypeStarts[type]; unit < mTypeStarts[type + 1]; unit++) {
+				mTypes[unit] = type;
+			}
+			names.addAll(mEngines[type].getUnitNameList());
+		}
+		mUnitNameList = Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * Returns the shared catalog.
+	 */
+	public static UnitCatalog getInstance() {
+		return sInstance;
+	}
+
+	/**
+	 * Returns the number of units in the catalog.
+	 */
+	public int getUnitCount() {
+		return mTypes.length;
+	}
+
+	/**
+	 * Returns the name of the specified catalog unit.
+	 */
+	public String getUnitName(int unit) {
+		return mUnitNameList.get(unit);
+	}
+
+	/**
+	 * Returns the symbols and other names of the specified catalog unit. The array is shared and must not be modified.
+	 */
+	public String[] getUnitAliases(int unit) {
+		int type = mTypes[unit];
+		return mEngines[type].getUnitAliases(unit - mTypeStarts[type]);
+	}
+
+	/**
+	 * Returns the names of every catalog unit in catalog order. The list is shared and can't be modified.
+	 */
+	public List<String> getUnitNameList() {
+		return mUnitNameList;
+	}
+
+	/**
+	 * Returns the converter type of the specified catalog unit.
+	 */
+	public ConverterType getConverterType(int unit) {
+		return ConverterType.fromInteger(mTypes[unit]);
+	}
+
+	/**
+	 * Returns the catalog unit of the first unit of the specified converter type.
+	 */
+	public int getFirstUnit(ConverterType type) {
+		return mTypeStarts[type.toInteger()];
+	}
+
+	/**
+	 * Returns the catalog unit after the last unit of the specified converter type.
+	 */
+	public int getEndUnit(ConverterType type) {
+		return mTypeStarts[type.toInteger() + 1];
+	}
+
+	/**
+	 * Convert a value between two catalog units of the same converter type.
+	 *
+	 * @param sourceUnit The source catalog unit.
+	 * @param destUnit   The destination catalog unit.
+	 * @param value      The number to convert.
+	 * @return The converted number.
+	 * @throws IllegalArgumentException if the units are of different converter types.
+	 */
+	public double convert(int sourceUnit, int destUnit, double value) {
+		int type = mTypes[sourceUnit];
+		if (mTypes[destUnit] != type) {
+			throw new IllegalArgumentException("Incompatible units: " + getUnitName(sourceUnit) + " and "
+					+ getUnitName(destUnit));
+		}
+		int start = mTypeStarts[type];
+		return mEngines[type].convert(sourceUnit - start, destUnit - start, value);
+	}
+
+	/**
+	 * Convert a value from a catalog unit to every compatible unit, i.e. every unit of the same converter type.
+	 *
+	 * @param sourceUnit The source catalog unit.
+	 * @param value      The number to convert.
+	 * @param results    The array that receives the converted results, indexed by catalog unit. Must hold at least
+	 *                   {@link #getUnitCount()} values. Only the range of the source unit's converter type is written.
+	 */
+	public void convertAll(int sourceUnit, double value, double[] results) {
+		int type = mTypes[sourceUnit];
+		int start = mTypeStarts[type];
+		mEngines[type].convertAll(sourceUnit - start, value, results, start);
+	}
+}
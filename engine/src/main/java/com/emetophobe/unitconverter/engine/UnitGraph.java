@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Converts between units that are connected by a graph, which includes compound units derived from the unit tables,
+ * e.g. speeds (miles/hours), flow rates (liters/minutes), data rates (megabytes/seconds) or densities (pounds/gallons
+ * (UK)).
+ * <p/>
+ * Every unit has a dimension, and every dimension has a coherent unit, such as m^3 for L^3 or kg/m^3 for M/L^3. The
+ * table units are connected to the coherent unit of their converter type's dimension, and a compound unit is connected
+ * to the coherent unit of its dimension by resolving the paths of its parts. Two units can be converted if there is a
+ * path between them, i.e. if they have the same dimension. Resolved conversions are cached, so that converting
+ * between the same units again is a single lookup.
+ * <p/>
+ * The units of the catalog keep their catalog index as their unit id. The units of the {@link CompoundType}s are
+ * added next, and each compound type also has a {@link ConversionEngine}, so that it can be used wherever a converter
+ * type is. The graph is safe to use from several threads.
+ */
+public final class UnitGraph {
+	private static final UnitGraph sInstance = new UnitGraph(UnitCatalog.getInstance());
+
+	private final UnitCatalog mCatalog;
+	private final List<Node> mNodes = new ArrayList<>();
+	private final Map<Dimension, Integer> mCoherentUnits = new HashMap<>();
+	private final Map<String, Integer> mCompoundUnits = new HashMap<>();
+	private final Map<Long, Conversion> mConversions = new ConcurrentHashMap<>();
+	private final int[][] mCompoundTypeUnits = new int[CompoundType.values().length][];
+	private final ConversionEngine[] mCompoundTypeEngines = new ConversionEngine[CompoundType.values().length];
+
+	private UnitGraph(UnitCatalog catalog) {
+		mCatalog = catalog;
+
+		// Add the catalog units first, so that their ids are the same as their catalog index
+		for (ConverterType type : ConverterType.values()) {
+			Dimension dimension = new Dimension(UnitTables.getDimension(type));
+			for (String name : ConversionEngine.forType(type).getUnitNameList()) {
+				mNodes.add(new Node(name, dimension));
+			}
+		}
+
+		// Connect them to the coherent unit of their dimension
+		for (ConverterType type : ConverterType.values()) {
+			int first = catalog.getFirstUnit(type);
+			int coherentUnit = getCoherentUnit(new Dimension(UnitTables.getDimension(type)));
+			double siFactor = UnitTables.getSiFactor(type);
+			double[] scales = UnitTables.getScales(type);
+			double[] offsets = UnitTables.getOffsets(type);
+
+			for (int unit = 0; unit < scales.length; unit++) {
+				// coherent = (value + offset) * scale * siFactor
+				double scale = scales[unit] * siFactor;
+				double offset = offsets != null ? offsets[unit] * scale : 0.0;
+				connect(first + unit, coherentUnit, scale, offset);
+			}
+		}
+
+		// Add the units of the compound types, and an engine that converts through the coherent unit of each type. The
+		// parts of the units of a type all have the same converter types, so the exact factors of the parts can be
+		// divided into exact factors relative to the base units of those converter types.
+		for (CompoundType type : CompoundType.values()) {
+			String[][] units = type.mUnits;
+			int[] ids = new int[units.length];
+			String[] names = new String[units.length];
+			String[][] aliases = new String[units.length][];
+			double[] scales = new double[units.length];
+			String[] exactScales = new String[units.length];
+			int firstNumerator = 0;
+			int firstDenominator = 0;
+			for (int unit = 0; unit < units.length; unit++) {
+				String name = units[unit][0];
+				int separator = name.lastIndexOf('/');
+				int numerator = findUnit(name.substring(0, separator));
+				int denominator = findUnit(name.substring(separator + 1));
+				if (unit == 0) {
+					firstNumerator = numerator;
+					firstDenominator = denominator;
+				}
+				if (catalog.getConverterType(numerator) != catalog.getConverterType(firstNumerator)
+						|| catalog.getConverterType(denominator) != catalog.getConverterType(firstDenominator)) {
+					throw new IllegalStateException("The parts of the units of " + type
+							+ " must have the same converter types");
+				}
+				ids[unit] = quotient(numerator, denominator);
+				names[unit] = name;
+				aliases[unit] = Arrays.copyOfRange(units[unit], 1, units[unit].length);
+				scales[unit] = resolveToCoherent(ids[unit]).getScale();
+				exactScales[unit] = divideExact(getExactScale(numerator), getExactScale(denominator));
+			}
+			mCompoundTypeUnits[type.ordinal()] = ids;
+			mCompoundTypeEngines[type.ordinal()] = ConversionEngine.forUnits(names, scales, exactScales, aliases);
+		}
+	}
+
+	/**
+	 * Returns the shared unit graph.
+	 */
+	public static UnitGraph getInstance() {
+		return sInstance;
+	}
+
+	/**
+	 * Returns the id of a unit of a converter type.
+	 *
+	 * @param type The converter type.
+	 * @param unit The unit type, as used by the type's {@link ConversionEngine}.
+	 * @return The unit id.
+	 */
+	public int getUnit(ConverterType type, int unit) {
+		return mCatalog.getFirstUnit(type) + unit;
+	}
+
+	/**
+	 * Returns the id of a unit of a compound type.
+	 *
+	 * @param type The compound type.
+	 * @param unit The unit type, as used by the type's {@link ConversionEngine}.
+	 * @return The unit id.
+	 */
+	public int getUnit(CompoundType type, int unit) {
+		return mCompoundTypeUnits[type.ordinal()][unit];
+	}
+
+	/**
+	 * Returns the conversion engine of a compound type. Its converter type is null.
+	 */
+	public ConversionEngine getEngine(CompoundType type) {
+		return mCompoundTypeEngines[type.ordinal()];
+	}
+
+	/**
+	 * Returns the id of the first unit with the specified name, ignoring case, or -1 if there isn't one.
+	 */
+	public synchronized int findUnit(String name) {
+		for (int unit = 0; unit < mNodes.size(); unit++) {
+			if (mNodes.get(unit).name.equalsIgnoreCase(name)) {
+				return unit;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of units in the graph, which grows as compound units are added.
+	 */
+	public synchronized int getUnitCount() {
+		return mNodes.size();
+	}
+
+	/**
+	 * Returns the name of the specified unit.
+	 */
+	public synchronized String getUnitName(int unit) {
+		return mNodes.get(unit).name;
+	}
+
+	/**
+	 * Returns the dimension of the specified unit.
+	 */
+	public synchronized Dimension getDimension(int unit) {
+		return mNodes.get(unit).dimension;
+	}
+
+	/**
+	 * Returns the compound unit made of one unit divided by another, e.g. miles/hours, adding it to the graph if it
+	 * isn't there yet.
+	 *
+	 * @param numerator   The id of the numerator unit.
+	 * @param denominator The id of the denominator unit.
+	 * @return The id of the compound unit.
+	 * @throws IllegalArgumentException if either unit has an offset, like degrees Celsius.
+	 */
+	public synchronized int quotient(int numerator, int denominator) {
+		String name = mNodes.get(numerator).name + '/' + mNodes.get(denominator).name;
+		Integer existing = mCompoundUnits.get(name);
+		if (existing != null) {
+			return existing;
+		}
+
+		Dimension dimension = mNodes.get(numerator).dimension.divide(mNodes.get(denominator).dimension);
+		Conversion numeratorConversion = resolveToCoherent(numerator);
+		Conversion denominatorConversion = resolveToCoherent(denominator);
+		if (numeratorConversion.getOffset() != 0.0 || denominatorConversion.getOffset() != 0.0) {
+			throw new IllegalArgumentException("Compound units can't be made of units with an offset: " + name);
+		}
+
+		int unit = mNodes.size();
+		mNodes.add(new Node(name, dimension));
+		connect(unit, getCoherentUnit(dimension), numeratorConversion.getScale() / denominatorConversion.getScale(),
+				0.0);
+		mCompoundUnits.put(name, unit);
+		return unit;
+	}
+
+	/**
+	 * Convert a value from one unit to another.
+	 *
+	 * @throws IllegalArgumentException if the units have different dimensions.
+	 */
+	public double convert(int sourceUnit, int destUnit, double value) {
+		return resolve(sourceUnit, destUnit).apply(value);
+	}
+
+	/**
+	 * Returns the conversion from one unit to another, resolving it the first time.
+	 *
+	 * @param sourceUnit The id of the source unit.
+	 * @param destUnit   The id of the destination unit.
+	 * @return The conversion.
+	 * @throws IllegalArgumentException if the units have different dimensions.
+	 */
+	public Conversion resolve(int sourceUnit, int destUnit) {
+		Long key = ((long) sourceUnit << 32) | destUnit;
+		Conversion conversion = mConversions.get(key);
+		if (conversion == null) {
+			conversion = findPath(sourceUnit, destUnit);
+			mConversions.put(key, conversion);
+		}
+		return conversion;
+	}
+
+	/**
+	 * Returns the exact factor of a catalog unit relative to the base unit of its converter type.
+	 */
+	private String getExactScale(int unit) {
+		ConverterType type = mCatalog.getConverterType(unit);
+		return UnitTables.getExactScales(type)[unit - mCatalog.getFirstUnit(type)];
+	}
+
+	/**
+	 * Divide two exact factors, which are decimals or fractions such as "5/9", into a fraction.
+	 */
+	private static String divideExact(String numerator, String denominator) {
+		BigDecimal[] dividend = parseFraction(numerator);
+		BigDecimal[] divisor = parseFraction(denominator);
+		return dividend[0].multiply(divisor[1]).toPlainString() + '/'
+				+ dividend[1].multiply(divisor[0]).toPlainString();
+	}
+
+	private static BigDecimal[] parseFraction(String fraction) {
+		int slash = fraction.indexOf('/');
+		if (slash < 0) {
+			return new BigDecimal[]{new BigDecimal(fraction), BigDecimal.ONE};
+		}
+		return new BigDecimal[]{new BigDecimal(fraction.substring(0, slash)),
+				new BigDecimal(fraction.substring(slash + 1))};
+	}
+
+	/**
+	 * Returns the coherent unit of a dimension, adding it to the graph if needed.
+	 */
+	private int getCoherentUnit(Dimension dimension) {
+		Integer unit = mCoherentUnits.get(dimension);
+		if (unit == null) {
+			unit = mNodes.size();
+			mNodes.add(new Node("[" + dimension + "]", dimension));
+			mCoherentUnits.put(dimension, unit);
+		}
+		return unit;
+	}
+
+	private Conversion resolveToCoherent(int unit) {
+		return findPath(unit, getCoherentUnit(mNodes.get(unit).dimension));
+	}
+
+	/**
+	 * Add an edge in both directions, where to = from * scale + offset.
+	 */
+	private void connect(int from, int to, double scale, double offset) {
+		mNodes.get(from).edges.add(new Edge(to, scale, offset, false));
+		mNodes.get(to).edges.add(new Edge(from, scale, offset, true));
+	}
+
+	/**
+	 * Find the conversion from one unit to another with a breadth first search, composing the conversions of the edges
+	 * along the way.
+	 */
+	private synchronized Conversion findPath(int sourceUnit, int destUnit) {
+		Node source = mNodes.get(sourceUnit);
+		Node dest = mNodes.get(destUnit);
+		if (!source.dimension.equals(dest.dimension)) {
+			throw new IllegalArgumentException("Can't convert " + source.name + " (" + source.dimension + ") to "
+					+ dest.name + " (" + dest.dimension + ")");
+		}
+
+		Conversion[] conversions = new Conversion[mNodes.size()];
+		conversions[sourceUnit] = new Conversion(1.0, 0.0);
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		queue.add(sourceUnit);
+
+		while (!queue.isEmpty()) {
+			int unit = queue.remove();
+			Conversion conversion = conversions[unit];
+			if (unit == destUnit) {
+				return conversion;
+			}
+			for (Edge edge : mNodes.get(unit).edges) {
+				if (conversions[edge.to] == null) {
+					conversions[edge.to] = edge.follow(conversion);
+					queue.add(edge.to);
+				}
+			}
+		}
+
+		// Units with the same dimension are always connected through its coherent unit
+		throw new IllegalStateException("No path from " + source.name + " to " + dest.name);
+	}
+
+	/**
+	 * The compound quantities that are predefined, with the names of their units, each made of a numerator and a
+	 * denominator unit of the tables, followed by their aliases. Densities already have a table of their own.
+	 */
+	public enum CompoundType {
+		SPEED(new String[][]{
+				{"feet/seconds", "ft/s", "fps"},
+				{"kilometers/hours", "km/h", "kph"},
+				{"meters/seconds", "m/s"},
+				{"miles/hours", "mi/h", "mph"}
+		}),
+		FLOW_RATE(new String[][]{
+				{"cubic meters/seconds", "m3/s", "m\u00b3/s"},
+				{"gallons (US, liquid)/minutes", "gal/min", "gpm"},
+				{"liters/minutes", "L/min", "l/min"},
+				{"liters/seconds", "L/s", "l/s"}
+		}),
+		DATA_RATE(new String[][]{
+				{"bits/seconds", "bit/s", "bps"},
+				{"kilobits/seconds", "kbit/s", "kbps"},
+				{"megabits/seconds", "Mbit/s", "Mbps"},
+				{"megabytes/seconds", "MB/s", "MBps"},
+				{"gigabits/seconds", "Gbit/s", "Gbps"}
+		});
+
+		private final String[][] mUnits;
+
+		CompoundType(String[][] units) {
+			mUnits = units;
+		}
+	}
+
+	/**
+	 * An affine conversion between two units: to = from * scale + offset.
+	 */
+	public static final class Conversion {
+		private final double mScale;
+		private final double mOffset;
+
+		Conversion(double scale, double offset) {
+			mScale = scale;
+			mOffset = offset;
+		}
+
+		public double getScale() {
+			return mScale;
+		}
+
+		public double getOffset() {
+			return mOffset;
+		}
+
+		/**
+		 * Convert a value.
+		 */
+		public double apply(double value) {
+			return value * mScale + mOffset;
+		}
+
+		@Override
+		public String toString() {
+			return "x * " + mScale + " + " + mOffset;
+		}
+	}
+
+	private static final class Node {
+		final String name;
+		final Dimension dimension;
+		final List<Edge> edges = new ArrayList<>(2);
+
+		Node(String name, Dimension dimension) {
+			this.name = name;
+			this.dimension = dimension;
+		}
+	}
+
+	/**
+	 * An edge of the graph. Edges are stored with the conversion of the direction they were added in, and an edge that
+	 * is followed in the other direction divides by the scale rather than multiplying by its reciprocal, which avoids
+	 * the rounding error of the reciprocal.
+	 */
+	private static final class Edge {
+		final int to;
+		final double scale;
+		final double offset;
+		final boolean inverse;
+
+		Edge(int to, double scale, double offset, boolean inverse) {
+			this.to = to;
+			this.scale = scale;
+			this.offset = offset;
+			this.inverse = inverse;
+		}
+
+		/**
+		 * Returns the conversion to this edge's unit, given the conversion to the unit it starts from.
+		 */
+		Conversion follow(Conversion conversion) {
+			if (inverse) {
+				return new Conversion(conversion.getScale() / scale, (conversion.getOffset() - offset) / scale);
+			}
+			return new Conversion(conversion.getScale() * scale, conversion.getOffset() * scale + offset);
+		}
+	}
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Finds catalog units by name or alias, across every converter type. The index is built once from the unit catalog
+ * and is immutable, so it can be shared; each thread searches through its own {@link Searcher}.
+ * <p/>
+ * Every name and alias is a term. The prefix index is a sorted array of every term and of every word within a term,
+ * e.g. "feet" in "square feet", so the terms that start with the query are one binary searched range of it. That range
+ * is kept, and when the query is extended as the user types only the previous range is searched again. Terms that
+ * don't start with the query can still match through the trigram postings, which tolerate typos such as "kilomter".
+ * <p/>
+ * Results are ranked: exact matches, then prefixes of a term, then prefixes of a word, then fuzzy matches. Searching
+ * doesn't allocate.
+ */
+public final class UnitSearchIndex {
+	// Scores of the match kinds, from best to worst. Shorter completions of the query rank higher within a kind.
+	private static final int SCORE_EXACT = 1000;
+	private static final int SCORE_PREFIX = 600;
+	private static final int SCORE_WORD = 450;
+	private static final int SCORE_FUZZY = 300;
+	private static final int SCORE_SAME_CASE = 50;
+	private static final int MAX_LENGTH_PENALTY = 100;
+
+	// Fuzzy matches need at least this Jaccard similarity between their trigrams and the query's
+	private static final double MIN_SIMILARITY = 0.35;
+	private static final int MIN_FUZZY_LENGTH = 3;
+
+	private final UnitCatalog mCatalog;
+
+	// The terms: their text as written and in lower case, their catalog unit and their number of distinct trigrams
+	private final String[] mTerms;
+	private final String[] mLowerTerms;
+	private final int[] mTermUnits;
+	private final int[] mTermTrigramCounts;
+
+	// The prefix index: every term and word within a term, sorted by the text from that offset
+	private final int[] mKeyTerms;
+	private final int[] mKeyOffsets;
+
+	// The trigram postings, as an open addressing hash table of trigrams to ranges of mPostings
+	private final long[] mTrigrams;
+	private final int[] mPostingStarts;
+	private final int[] mPostingEnds;
+	private final int[] mPostings;
+
+	/**
+	 * Holds the shared index, which is built the first time it's needed.
+	 */
+	private static final class Holder {
+		static final UnitSearchIndex sInstance = new UnitSearchIndex(UnitCatalog.getInstance());
+	}
+
+	/**
+	 * Returns the shared index of the unit catalog.
+	 */
+	public static UnitSearchIndex getInstance() {
+		return Holder.sInstance;
+	}
+
+	private UnitSearchIndex(UnitCatalog catalog) {
+		mCatalog = catalog;
+
+		// Collect the names and aliases of every unit
+		List<String> terms = new ArrayList<>();
+		List<Integer> units = new ArrayList<>();
+		for (int unit = 0; unit < catalog.getUnitCount(); unit++) {
+			terms.add(catalog.getUnitName(unit));
+			units.add(unit);
+			for (String alias : catalog.getUnitAliases(unit)) {
+				terms.add(alias);
+				units.add(unit);
+			}
+		}
+
+		int termCount = terms.size();
+		mTerms = terms.toArray(new String[termCount]);
+		mLowerTerms = new String[termCount];
+		mTermUnits = new int[termCount];
+		for (int term = 0; term < termCount; term++) {
+			mLowerTerms[term] = mTerms[term].toLowerCase(Locale.ROOT);
+			mTermUnits[term] = units.get(term);
+		}
+
+		// Build the prefix index from the start of every term and of every word after the first
+		List<Integer> keys = new ArrayList<>();
+		for (int term = 0; term < termCount; term++) {
+			String text = mLowerTerms[term];
+			for (int offset = 0; offset < text.length(); offset++) {
+				if (offset == 0 || (isSeparator(text.charAt(offset - 1)) && !isSeparator(text.charAt(offset)))) {
+					keys.add(term << 8 | Math.min(offset, 255));
+				}
+			}
+		}
+		Integer[] sortedKeys = keys.toArray(new Integer[keys.size()]);
+		Arrays.sort(sortedKeys, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return mLowerTerms[a >>> 8].substring(a & 0xff).compareTo(mLowerTerms[b >>> 8].substring(b & 0xff));
+			}
+		});
+		mKeyTerms = new int[sortedKeys.length];
+		mKeyOffsets = new int[sortedKeys.length];
+		for (int i = 0; i < sortedKeys.length; i++) {
+			mKeyTerms[i] = sortedKeys[i] >>> 8;
+			mKeyOffsets[i] = sortedKeys[i] & 0xff;
+		}
+
+		// Build the trigram postings. Each term's trigrams are made distinct first.
+		long[][] termTrigrams = new long[termCount][];
+		mTermTrigramCounts = new int[termCount];
+		int trigramCount = 0;
+		for (int term = 0; term < termCount; term++) {
+			termTrigrams[term] = getTrigrams(mLowerTerms[term]);
+			mTermTrigramCounts[term] = termTrigrams[term].length;
+			trigramCount += termTrigrams[term].length;
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(trigramCount, 1)) * 4;
+		mTrigrams = new long[capacity];
+		Arrays.fill(mTrigrams, -1);
+		int[] counts = new int[capacity];
+		for (long[] trigrams : termTrigrams) {
+			for (long trigram : trigrams) {
+				int slot = findSlot(trigram);
+				mTrigrams[slot] = trigram;
+				counts[slot]++;
+			}
+		}
+
+		mPostingStarts = new int[capacity];
+		mPostingEnds = new int[capacity];
+		int start = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			mPostingStarts[slot] = start;
+			mPostingEnds[slot] = start;
+			start += counts[slot];
+		}
+		mPostings = new int[start];
+		for (int term = 0; term < termCount; term++) {
+			for (long trigram : termTrigrams[term]) {
+				mPostings[mPostingEnds[findSlot(trigram)]++] = term;
+			}
+		}
+	}
+
+	/**
+	 * Returns a new searcher. A searcher keeps the state of its last search and must only be used by one thread.
+	 */
+	public Searcher newSearcher() {
+		return new Searcher();
+	}
+
+	/**
+	 * Returns the converter type and unit of a catalog unit through the catalog the index was built from.
+	 */
+	public UnitCatalog getCatalog() {
+		return mCatalog;
+	}
+
+	/**
+	 * Returns the slot of a trigram in the hash table, or the empty slot where it belongs.
+	 */
+	private int findSlot(long trigram) {
+		int mask = mTrigrams.length - 1;
+		int slot = (int) (trigram ^ (trigram >>> 29)) * 0x9e3779b9 & mask;
+		while (mTrigrams[slot] != -1 && mTrigrams[slot] != trigram) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the distinct trigrams of a lower case term, which is padded with spaces so that its start and end
+	 * count as well.
+	 */
+	private static long[] getTrigrams(String text) {
+		long[] trigrams = new long[text.length() + 1];
+		int count = 0;
+		for (int i = -2; i < text.length() - 1; i++) {
+			long trigram = getTrigram(text, i);
+			if (!contains(trigrams, count, trigram)) {
+				trigrams[count++] = trigram;
+			}
+		}
+		return Arrays.copyOf(trigrams, count);
+	}
+
+	/**
+	 * Returns the trigram that starts at the specified index, where the indices before the text and the index after it
+	 * are spaces.
+	 */
+	private static long getTrigram(CharSequence text, int index) {
+		long trigram = 0;
+		for (int i = index; i < index + 3; i++) {
+			char c = i >= 0 && i < text.length() ? text.charAt(i) : ' ';
+			trigram = trigram << 16 | c;
+		}
+		return trigram;
+	}
+
+	private static boolean contains(long[] values, int count, long value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == ' ' || c == '/' || c == '(' || c == ',';
+	}
+
+	/**
+	 * Searches the index, keeping the prefix range of the last query so that typing more of it only searches that
+	 * range. All scratch space is allocated up front.
+	 */
+	public final class Searcher {
+		private final StringBuilder mQuery = new StringBuilder();
+		private int mRangeStart;
+		private int mRangeEnd;
+
+		private final int[] mUnitScores = new int[mCatalog.getUnitCount()];
+		private final int[] mTouchedUnits = new int[mCatalog.getUnitCount()];
+		private int mTouchedCount;
+
+		private final int[] mSharedTrigrams = new int[mTerms.length];
+		private final int[] mTouchedTerms = new int[mTerms.length];
+		private long[] mQueryTrigrams = new long[16];
+
+		private Searcher() {
+			mRangeEnd = mKeyTerms.length;
+		}
+
+		/**
+		 * Find the units that best match a query, ignoring case.
+		 *
+		 * @param query   The query, e.g. "sq ft" or "kib".
+		 * @param results The array that receives the best matching catalog units, best first. Its length is the
+		 *                maximum number of results.
+		 * @return The number of results.
+		 */
+		public int search(CharSequence query, int[] results) {
+			// Narrow the last prefix range if the query extends the last query
+			int length = query.length();
+			boolean extended = length >= mQuery.length();
+			for (int i = 0; i < length && i < mQuery.length() && extended; i++) {
+				extended = Character.toLowerCase(query.charAt(i)) == mQuery.charAt(i);
+			}
+			if (!extended) {
+				mRangeStart = 0;
+				mRangeEnd = mKeyTerms.length;
+			}
+			mQuery.setLength(0);
+			for (int i = 0; i < length; i++) {
+				mQuery.append(Character.toLowerCase(query.charAt(i)));
+			}
+			trimQuery();
+			if (mQuery.length() == 0) {
+				mRangeStart = 0;
+				mRangeEnd = mKeyTerms.length;
+				return 0;
+			}
+
+			mRangeStart = lowerBound(mRangeStart, mRangeEnd, false);
+			mRangeEnd = lowerBound(mRangeStart, mRangeEnd, true);
+			for (int key = mRangeStart; key < mRangeEnd; key++) {
+				scorePrefix(query, mKeyTerms[key], mKeyOffsets[key]);
+			}
+			if (mQuery.length() >= MIN_FUZZY_LENGTH) {
+				scoreTrigrams();
+			}
+			return collect(results);
+		}
+
+		private void trimQuery() {
+			int end = mQuery.length();
+			while (end > 0 && mQuery.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			mQuery.setLength(end);
+			int start = 0;
+			while (start < end && mQuery.charAt(start) <= ' ') {
+				start++;
+			}
+			mQuery.delete(0, start);
+		}
+
+		/**
+		 * Returns the first key in the range that isn't before the query, or if past is true, the first key that is
+		 * after every key starting with the query.
+		 */
+		private int lowerBound(int start, int end, boolean past) {
+			while (start < end) {
+				int middle = (start + end) >>> 1;
+				int comparison = compareKey(middle);
+				if (comparison < 0 || (past && comparison == 0)) {
+					start = middle + 1;
+				} else {
+					end = middle;
+				}
+			}
+			return start;
+		}
+
+		/**
+		 * Compare a key with the query. Keys that start with the query compare as equal.
+		 */
+		private int compareKey(int key) {
+			String text = mLowerTerms[mKeyTerms[key]];
+			int offset = mKeyOffsets[key];
+			int length = mQuery.length();
+			for (int i = 0; i < length; i++) {
+				if (offset + i == text.length()) {
+					return -1;
+				}
+				int difference = text.charAt(offset + i) - mQuery.charAt(i);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return 0;
+		}
+
+		private void scorePrefix(CharSequence query, int term, int offset) {
+			int remaining = mLowerTerms[term].length() - offset - mQuery.length();
+			int score;
+			if (offset > 0) {
+				score = SCORE_WORD - Math.min(remaining, MAX_LENGTH_PENALTY);
+			} else if (remaining == 0) {
+				score = SCORE_EXACT + (mTerms[term].contentEquals(query) ? SCORE_SAME_CASE : 0);
+			} else {
+				score = SCORE_PREFIX - Math.min(remaining, MAX_LENGTH_PENALTY);
+			}
+			addScore(mTermUnits[term], score);
+		}
+
+		/**
+		 * Score the terms by the Jaccard similarity of their trigrams with the query's.
+		 */
+		private void scoreTrigrams() {
+			int queryCount = 0;
+			for (int i = -2; i < mQuery.length() - 1; i++) {
+				long trigram = getTrigram(mQuery, i);
+				if (!contains(mQueryTrigrams, queryCount, trigram)) {
+					if (queryCount == mQueryTrigrams.length) {
+						mQueryTrigrams = Arrays.copyOf(mQueryTrigrams, queryCount * 2);
+					}
+					mQueryTrigrams[queryCount++] = trigram;
+				}
+			}
+
+			int touchedTerms = 0;
+			for (int i = 0; i < queryCount; i++) {
+				int slot = findSlot(mQueryTrigrams[i]);
+				for (int posting = mPostingStarts[slot]; posting < mPostingEnds[slot]; posting++) {
+					int term = mPostings[posting];
+					if (mSharedTrigrams[term]++ == 0) {
+						mTouchedTerms[touchedTerms++] = term;
+					}
+				}
+			}
+
+			for (int i = 0; i < touchedTerms; i++) {
+				int term = mTouchedTerms[i];
+				int shared = mSharedTrigrams[term];
+				mSharedTrigrams[term] = 0;
+				double similarity = (double) shared / (queryCount + mTermTrigramCounts[term] - shared);
+				if (similarity >= MIN_SIMILARITY) {
+					addScore(mTermUnits[term], (int) (SCORE_FUZZY * similarity));
+				}
+			}
+		}
+
+		private void addScore(int unit, int score) {
+			if (mUnitScores[unit] == 0) {
+				mTouchedUnits[mTouchedCount++] = unit;
+			}
+			mUnitScores[unit] = Math.max(mUnitScores[unit], score);
+		}
+
+		/**
+		 * Copy the best scoring units into the results, best first and then in catalog order, and clear the scores.
+		 */
+		private int collect(int[] results) {
+			int count = 0;
+			for (int i = 0; i < mTouchedCount; i++) {
+				// Insert the unit into the sorted results, dropping the worst result if they are full
+				int unit = mTouchedUnits[i];
+				int position = count;
+				while (position > 0 && isBetter(unit, results[position - 1])) {
+					position--;
+				}
+				if (position < results.length) {
+					int end = Math.min(count, results.length - 1);
+					System.arraycopy(results, position, results, position + 1, end - position);
+					results[position] = unit;
+					count = Math.min(count + 1, results.length);
+				}
+			}
+
+			for (int i = 0; i < mTouchedCount; i++) {
+				mUnitScores[mTouchedUnits[i]] = 0;
+			}
+			mTouchedCount = 0;
+			return count;
+		}
+
+		private boolean isBetter(int unit, int other) {
+			int score = mUnitScores[unit];
+			int otherScore = mUnitScores[other];
+			return score > otherScore || (score == otherScore && unit < other);
+		}
+	}
+}
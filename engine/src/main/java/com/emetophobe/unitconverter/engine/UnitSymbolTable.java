@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Looks up catalog units by their exact name or alias, e.g. "sq mi", "degF" or "Mbit". The table is built once from the
+ * unit catalog and is immutable, so it can be shared between threads.
+ * <p/>
+ * Symbols are matched case-sensitively first, since "Mb" and "MB" are different units, and then case-insensitively.
+ * Runs of whitespace match a single space. Both tables are open addressing hash tables that are hashed and compared
+ * straight from the text, so a lookup doesn't allocate.
+ */
+public final class UnitSymbolTable {
+	private final UnitCatalog mCatalog;
+	private final Table mExactTable;
+	private final Table mFoldedTable;
+
+	/**
+	 * Holds the shared table, which is built the first time it's needed.
+	 */
+	private static final class Holder {
+		static final UnitSymbolTable sInstance = new UnitSymbolTable(UnitCatalog.getInstance());
+	}
+
+	/**
+	 * Returns the shared symbol table of the unit catalog.
+	 */
+	public static UnitSymbolTable getInstance() {
+		return Holder.sInstance;
+	}
+
+	private UnitSymbolTable(UnitCatalog catalog) {
+		mCatalog = catalog;
+
+		// Map every name and alias to the units it names, in catalog order
+		Map<String, List<Integer>> exact = new LinkedHashMap<>();
+		Map<String, List<Integer>> folded = new LinkedHashMap<>();
+		for (int unit = 0; unit < catalog.getUnitCount(); unit++) {
+			addSymbol(exact, folded, catalog.getUnitName(unit), unit);
+			for (String alias : catalog.getUnitAliases(unit)) {
+				addSymbol(exact, folded, alias, unit);
+			}
+		}
+		mExactTable = new Table(exact, false);
+		mFoldedTable = new Table(folded, true);
+	}
+
+	private static void addSymbol(Map<String, List<Integer>> exact, Map<String, List<Integer>> folded, String symbol,
+			int unit) {
+		addUnit(exact, normalize(symbol, false), unit);
+		addUnit(folded, normalize(symbol, true), unit);
+	}
+
+	private static void addUnit(Map<String, List<Integer>> symbols, String symbol, int unit) {
+		if (symbol.isEmpty()) {
+			return;
+		}
+		List<Integer> units = symbols.get(symbol);
+		if (units == null) {
+			units = new ArrayList<>(1);
+			symbols.put(symbol, units);
+		}
+		if (!units.contains(unit)) {
+			units.add(unit);
+		}
+	}
+
+	/**
+	 * Returns the catalog that the symbols refer to.
+	 */
+	public UnitCatalog getCatalog() {
+		return mCatalog;
+	}
+
+	/**
+	 * Find the units named by part of a text. Leading and trailing whitespace is ignored.
+	 *
+	 * @param text  The text that holds the symbol.
+	 * @param start The index of the first character of the symbol.
+	 * @param end   The index after the last character of the symbol.
+	 * @param units The array that receives the catalog units, the case-sensitive matches first.
+	 * @return The number of units written to the array, 0 if the symbol is unknown.
+	 */
+	public int lookup(CharSequence text, int start, int end, int[] units) {
+		int count = mExactTable.lookup(text, start, end, units, 0);
+		return mFoldedTable.lookup(text, start, end, units, count);
+	}
+
+	/**
+	 * Returns the symbol with every run of whitespace replaced by a single space and without leading or trailing
+	 * whitespace, in lower case if it's folded.
+	 */
+	private static String normalize(String symbol, boolean fold) {
+		StringBuilder builder = new StringBuilder(symbol.length());
+		boolean space = false;
+		for (int i = 0; i < symbol.length(); i++) {
+			char c = symbol.charAt(i);
+			if (c <= ' ') {
+				space = builder.length() > 0;
+				continue;
+			}
+			if (space) {
+				builder.append(' ');
+				space = false;
+			}
+			builder.append(fold ? Character.toLowerCase(c) : c);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Hash part of a text the way it would be hashed once normalized.
+	 */
+	private static int hash(CharSequence text, int start, int end, boolean fold) {
+		int hash = 0;
+		boolean started = false;
+		boolean space = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c <= ' ') {
+				space = started;
+				continue;
+			}
+			if (space) {
+				hash = 31 * hash + ' ';
+				space = false;
+			}
+			hash = 31 * hash + (fold ? Character.toLowerCase(c) : c);
+			started = true;
+		}
+
+		// Spread the bits, since only the low bits pick the slot
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		return hash ^ (hash >>> 13);
+	}
+
+	/**
+	 * Returns true if part of a text matches a normalized symbol.
+	 */
+	private static boolean matches(String symbol, CharSequence text, int start, int end, boolean fold) {
+		int length = symbol.length();
+		int j = 0;
+		boolean space = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c <= ' ') {
+				space = j > 0;
+				continue;
+			}
+			if (space) {
+				if (j == length || symbol.charAt(j) != ' ') {
+					return false;
+				}
+				j++;
+				space = false;
+			}
+			if (j == length || symbol.charAt(j) != (fold ? Character.toLowerCase(c) : c)) {
+				return false;
+			}
+			j++;
+		}
+		return j == length;
+	}
+
+	/**
+	 * A hash table of normalized symbols to the units they name. The table is at most half full and is probed
+	 * linearly.
+	 */
+	private static final class Table {
+		private final boolean mFold;
+		private final String[] mSymbols;
+		private final int[] mUnitStarts;
+		private final int[] mUnits;
+
+		// The index of the symbol in each slot plus one, or 0 if the slot is empty
+		private final int[] mSlots;
+		private final int mMask;
+
+		Table(Map<String, List<Integer>> symbols, boolean fold) {
+			mFold = fold;
+			int count = symbols.size();
+			mSymbols = new String[count];
+			mUnitStarts = new int[count + 1];
+			List<Integer> units = new ArrayList<>();
+			int index = 0;
+			for (Map.Entry<String, List<Integer>> entry : symbols.entrySet()) {
+				mSymbols[index] = entry.getKey();
+				units.addAll(entry.getValue());
+				mUnitStarts[++index] = units.size();
+			}
+			mUnits = new int[units.size()];
+			for (int i = 0; i < mUnits.length; i++) {
+				mUnits[i] = units.get(i);
+			}
+
+			int capacity = Integer.highestOneBit(Math.max(count, 1)) * 4;
+			mSlots = new int[capacity];
+			mMask = capacity - 1;
+			for (int symbol = 0; symbol < count; symbol++) {
+				String text = mSymbols[symbol];
+				int slot = hash(text, 0, text.length(), fold) & mMask;
+				while (mSlots[slot] != 0) {
+					slot = (slot + 1) & mMask;
+				}
+				mSlots[slot] = symbol + 1;
+			}
+		}
+
+		/**
+		 * Append the units named by part of a text that aren't in the array yet.
+		 *
+		 * @return The number of units in the array.
+		 */
+		int lookup(CharSequence text, int start, int end, int[] units, int count) {
+			int slot = hash(text, start, end, mFold) & mMask;
+			int symbol;
+			while ((symbol = mSlots[slot] - 1) >= 0) {
+				if (matches(mSymbols[symbol], text, start, end, mFold)) {
+					for (int i = mUnitStarts[symbol]; i < mUnitStarts[symbol + 1] && count < units.length; i++) {
+						if (!contains(units, count, mUnits[i])) {
+							units[count++] = mUnits[i];
+						}
+					}
+					return count;
+				}
+				slot = (slot + 1) & mMask;
+			}
+			return count;
+		}
+
+		private static boolean contains(int[] units, int count, int unit) {
+			for (int i = 0; i < count; i++) {
+				if (units[i] == unit) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Checks that the per keystroke work of a converter, updating the results and formatting every value into a reused
+ * StringBuilder, doesn't allocate once it has warmed up. Results of 1e18 and above, e.g. millennia in femtoseconds,
+ * are skipped since {@link DecimalFormatter} writes them in scientific notation with BigDecimal.
+ */
+public class AllocationTest {
+	private static final int WARM_UP_ITERATIONS = 20000;
+	private static final int ITERATIONS = 5000;
+	private static final int PRECISION = 5;
+	private static final double SCIENTIFIC_THRESHOLD = 1e18;
+
+	@Test
+	public void updateAndFormatDoNotAllocate() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		for (ConverterType type : ConverterType.values()) {
+			ConversionResults results = new ConversionResults(ConversionEngine.forType(type));
+			StringBuilder builder = new StringBuilder(64);
+			run(results, builder, WARM_UP_ITERATIONS);
+
+			// Reading the counter can allocate by itself, so that is subtracted
+			long overhead = threads.getThreadAllocatedBytes(thread);
+			overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+			long start = threads.getThreadAllocatedBytes(thread);
+			run(results, builder, ITERATIONS);
+			long allocated = threads.getThreadAllocatedBytes(thread) - start - overhead;
+			assertEquals(type + " allocated bytes", 0, allocated);
+		}
+	}
+
+	/**
+	 * Convert and format a range of values from every unit.
+	 *
+	 * @return The total length of the formatted values, so that the work can't be optimized away.
+	 */
+	private static long run(ConversionResults results, StringBuilder builder, int iterations) {
+		int unitCount = results.size() + 1;
+		long length = 0;
+		for (int i = 0; i < iterations; i++) {
+			results.update(i % unitCount, 0.25 + (i % 1000) * 0.37);
+			for (int position = 0; position < results.size(); position++) {
+				double value = results.getValue(position);
+				if (Math.abs(value) < SCIENTIFIC_THRESHOLD) {
+					builder.setLength(0);
+					DecimalFormatter.append(builder, value, PRECISION);
+					length += builder.length();
+				}
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Checks that the bulk conversions give exactly the same results as converting one value at a time.
+ */
+public class ConversionEngineTest {
+	private static final double[] VALUES = {0.0, -0.0, 1.0, -40.0, 37.5, 100.0, -273.15, 1e-300, 1e300, 123456.789};
+
+	@Test
+	public void arrayConversionMatchesScalar() {
+		for (ConverterType type : ConverterType.values()) {
+			ConversionEngine engine = ConversionEngine.forType(type);
+			double[] results = new double[VALUES.length];
+			for (int sourceUnit = 0; sourceUnit < engine.getUnitCount(); sourceUnit++) {
+				for (int destUnit = 0; destUnit < engine.getUnitCount(); destUnit++) {
+					engine.convert(sourceUnit, destUnit, VALUES, results);
+					for (int i = 0; i < VALUES.length; i++) {
+						assertSame(type, sourceUnit, destUnit, engine.convert(sourceUnit, destUnit, VALUES[i]),
+								results[i]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void bufferConversionMatchesScalar() {
+		for (ConverterType type : ConverterType.values()) {
+			ConversionEngine engine = ConversionEngine.forType(type);
+			for (int sourceUnit = 0; sourceUnit < engine.getUnitCount(); sourceUnit++) {
+				for (int destUnit = 0; destUnit < engine.getUnitCount(); destUnit++) {
+					// Direct buffers don't have an array, so they take the buffer loop instead of the array loop
+					DoubleBuffer doubles = ByteBuffer.allocateDirect(VALUES.length * 8).asDoubleBuffer();
+					doubles.put(VALUES).flip();
+					engine.convert(sourceUnit, destUnit, doubles, doubles);
+					FloatBuffer floats = FloatBuffer.allocate(VALUES.length);
+					for (double value : VALUES) {
+						floats.put((float) value);
+					}
+					floats.flip();
+					engine.convert(sourceUnit, destUnit, floats, floats);
+
+					for (int i = 0; i < VALUES.length; i++) {
+						assertSame(type, sourceUnit, destUnit, engine.convert(sourceUnit, destUnit, VALUES[i]),
+								doubles.get(i));
+						assertSame(type, sourceUnit, destUnit,
+								(float) engine.convert(sourceUnit, destUnit, (double) (float) VALUES[i]), floats.get(i));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void temperatures() {
+		ConversionEngine engine = ConversionEngine.forType(ConverterType.TEMPERATURE);
+		int celsius = engine.findUnit("celsius");
+		int fahrenheit = engine.findUnit("fahrenheit");
+		assertEquals(32.0, engine.convert(celsius, fahrenheit, 0.0), 1e-12);
+		assertEquals(-40.0, engine.convert(celsius, fahrenheit, -40.0), 1e-12);
+		assertEquals(100.0, engine.convert(fahrenheit, celsius, 212.0), 1e-12);
+	}
+
+	/**
+	 * Assert that two results are the same double, including the sign of zero.
+	 */
+	private static void assertSame(ConverterType type, int sourceUnit, int destUnit, double expected, double actual) {
+		assertEquals(type + " " + sourceUnit + " to " + destUnit, Double.doubleToLongBits(expected),
+				Double.doubleToLongBits(actual));
+	}
+}
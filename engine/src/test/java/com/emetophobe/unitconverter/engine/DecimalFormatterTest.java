@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Compares {@link DecimalFormatter} with rounding the shortest decimal of each number with BigDecimal.
+ */
+public class DecimalFormatterTest {
+	private static final int MAX_PRECISION = 20;
+
+	@Test
+	public void ties() {
+		assertFormats("0.12", 0.125, 2);
+		assertFormats("0.38", 0.375, 2);
+		assertFormats("2.68", 2.675, 2);
+		assertFormats("1", 1.005, 0);
+		assertFormats("1", 1.005, 2);
+		assertFormats("1.02", 1.015, 2);
+		assertFormats("0.04", 0.045, 2);
+		assertFormats("2", 2.5, 0);
+		assertFormats("4", 3.5, 0);
+		assertFormats("-2", -2.5, 0);
+		assertFormats("1", 0.99999999999999994, 15);
+
+		double[] ties = {0.5, 1.5, 0.05, 0.15, 0.25, 0.35, 1.125, 2.675, 1.0005, 9.995, 123.4565, 0.000015};
+		for (double tie : ties) {
+			for (int n = 0; n <= MAX_PRECISION; n++) {
+				assertMatchesReference(tie, n);
+				assertMatchesReference(-tie, n);
+			}
+		}
+	}
+
+	@Test
+	public void decimalInputs() {
+		// Values typed as short decimals and their conversions are often within an ulp of a tie
+		ConversionEngine engine = ConversionEngine.forType(ConverterType.LENGTH);
+		double[] results = new double[engine.getUnitCount()];
+		for (int i = 0; i < 20000; i++) {
+			double value = i * 0.005;
+			engine.convertAll(i % engine.getUnitCount(), value, results);
+			for (double result : results) {
+				assertMatchesReference(result, i % 16);
+			}
+			assertMatchesReference(value, i % 6);
+		}
+	}
+
+	@Test
+	public void largeMagnitudes() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			double value = Math.pow(10, 15 + 3 * random.nextDouble());
+			assertMatchesReference(value, random.nextInt(16));
+		}
+
+		double[] values = {1e15, 999999999999999.9, 1e16, 9007199254740992.0, 9007199254740994.0, 9007199254740996.0,
+				18014398509481988.0, 1e17, 123456789012345680.0,
+				Math.nextAfter(Math.nextAfter(1e18, 0), 0)};
+		for (double value : values) {
+			for (int n = 0; n <= MAX_PRECISION; n++) {
+				assertMatchesReference(value, n);
+				assertMatchesReference(Math.nextAfter(value, 0), n);
+				assertMatchesReference(Math.nextUp(value), n);
+			}
+		}
+	}
+
+	@Test
+	public void petabytesToBits() {
+		ConversionEngine engine = ConversionEngine.forType(ConverterType.BYTES);
+		int petabytes = engine.findUnit("petabytes");
+		int bits = engine.findUnit("bits");
+		for (int i = 1; i <= 1000; i++) {
+			// Up to 100 petabytes, which is just below the scientific notation threshold in bits
+			double value = engine.convert(petabytes, bits, i * 0.1);
+			for (int n = 0; n <= 6; n++) {
+				assertMatchesReference(value, n);
+			}
+		}
+	}
+
+	@Test
+	public void smallMagnitudes() {
+		double[] values = {Double.MIN_VALUE, 1e-310, Double.MIN_NORMAL, 1e-300, 1e-20, 4.9e-6, 5e-6, 5.000000001e-6};
+		for (double value : values) {
+			for (int n = 0; n <= MAX_PRECISION; n++) {
+				assertMatchesReference(value, n);
+				assertMatchesReference(-value, n);
+			}
+		}
+	}
+
+	@Test
+	public void negativeZero() {
+		for (int n = 0; n <= MAX_PRECISION; n++) {
+			assertFormats("0", -0.0, n);
+			assertFormats("0", -0.0001, n < 4 ? n : 0);
+		}
+	}
+
+	@Test
+	public void highPrecision() {
+		assertFormats("0.1", 0.1, 20);
+		assertFormats("0.3333333333333333", 1.0 / 3, 16);
+		assertFormats("0.3333333333333333", 0.33333333333333331, 17);
+
+		Random random = new Random(7);
+		for (int i = 0; i < 10000; i++) {
+			assertMatchesReference(random.nextDouble() * 1000, 16 + random.nextInt(MAX_PRECISION - 15));
+		}
+	}
+
+	@Test
+	public void randomValues() {
+		Random random = new Random(1);
+		for (int i = 0; i < 500000; i++) {
+			double value = Math.pow(10, random.nextDouble() * 28 - 10);
+			assertMatchesReference(random.nextBoolean() ? value : -value, random.nextInt(16));
+		}
+	}
+
+	@Test
+	public void scientificNotation() {
+		assertFormats("1E18", 1e18, 5);
+		assertFormats("1.5E20", 1.5e20, 5);
+		assertFormats("-1.23E30", -1.23456e30, 2);
+		assertFormats("2E20", 1.5e20, 0);
+
+		Random random = new Random(3);
+		for (int i = 0; i < 10000; i++) {
+			double value = Math.pow(10, 18 + random.nextDouble() * 280);
+			int n = random.nextInt(MAX_PRECISION);
+			String text = DecimalFormatter.append(new StringBuilder(), value, n).toString();
+			assertTrue(text, text.matches("\\d(\\.\\d+)?E\\d+"));
+			BigDecimal expected = BigDecimal.valueOf(value).round(new MathContext(Math.min(n, 16) + 1,
+					RoundingMode.HALF_EVEN));
+			assertEquals(value + " to " + n + " places", 0, expected.compareTo(new BigDecimal(text)));
+		}
+	}
+
+	@Test
+	public void nonFiniteNumbers() {
+		assertFormats("NaN", Double.NaN, 2);
+		assertFormats("Infinity", Double.POSITIVE_INFINITY, 2);
+		assertFormats("-Infinity", Double.NEGATIVE_INFINITY, 2);
+	}
+
+	private static void assertFormats(String expected, double value, int n) {
+		assertEquals(value + " to " + n + " places", expected,
+				DecimalFormatter.append(new StringBuilder(), value, n).toString());
+	}
+
+	/**
+	 * Assert that a number is formatted like its shortest decimal rounded with BigDecimal. Whole numbers of 2^53 and
+	 * above are compared with their exact value instead, since Double.toString shortens some of them and that differs
+	 * between Java versions.
+	 */
+	private static void assertMatchesReference(double value, int n) {
+		BigDecimal decimal = Math.abs(value) >= 9007199254740992.0 ? new BigDecimal(value) : BigDecimal.valueOf(value);
+		BigDecimal rounded = decimal.setScale(n, RoundingMode.HALF_EVEN);
+		assertFormats(rounded.signum() == 0 ? "0" : rounded.stripTrailingZeros().toPlainString(), value, n);
+	}
+}
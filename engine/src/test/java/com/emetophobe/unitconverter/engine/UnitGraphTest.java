@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.emetophobe.unitconverter.engine;
+
+import com.emetophobe.unitconverter.ConverterType;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Checks the conversions of the compound units of the unit graph and of their engines.
+ */
+public class UnitGraphTest {
+	private static final double TOLERANCE = 1e-12;
+
+	private final UnitGraph mGraph = UnitGraph.getInstance();
+
+	@Test
+	public void speeds() {
+		ConversionEngine engine = mGraph.getEngine(UnitGraph.CompoundType.SPEED);
+		int mph = engine.findUnit("miles/hours");
+		int kph = engine.findUnit("kilometers/hours");
+		int mps = engine.findUnit("meters/seconds");
+		int fps = engine.findUnit("feet/seconds");
+
+		assertRelative(0.44704, engine.convert(mph, mps, 1.0));
+		assertRelative(100.0 / 3.6, engine.convert(kph, mps, 100.0));
+		assertRelative(88.0, engine.convert(mph, fps, 60.0));
+		assertRelative(0.44704, mGraph.convert(mGraph.getUnit(UnitGraph.CompoundType.SPEED, mph),
+				mGraph.getUnit(UnitGraph.CompoundType.SPEED, mps), 1.0));
+	}
+
+	@Test
+	public void flowRates() {
+		ConversionEngine engine = mGraph.getEngine(UnitGraph.CompoundType.FLOW_RATE);
+		int cubicMetersPerSecond = engine.findUnit("cubic meters/seconds");
+		int litersPerMinute = engine.findUnit("liters/minutes");
+		int litersPerSecond = engine.findUnit("liters/seconds");
+		int gallonsPerMinute = engine.findUnit("gallons (US, liquid)/minutes");
+
+		assertRelative(60000.0, engine.convert(cubicMetersPerSecond, litersPerMinute, 1.0));
+		assertRelative(1.0, engine.convert(litersPerSecond, litersPerMinute, 1.0 / 60.0));
+		assertRelative(3.785411784, engine.convert(gallonsPerMinute, litersPerMinute, 1.0));
+	}
+
+	@Test
+	public void dataRates() {
+		ConversionEngine engine = mGraph.getEngine(UnitGraph.CompoundType.DATA_RATE);
+		int bitsPerSecond = engine.findUnit("bits/seconds");
+		int megabitsPerSecond = engine.findUnit("megabits/seconds");
+		int megabytesPerSecond = engine.findUnit("megabytes/seconds");
+
+		assertRelative(8.0, engine.convert(megabytesPerSecond, megabitsPerSecond, 1.0));
+		assertRelative(1024.0 * 1024.0, engine.convert(megabitsPerSecond, bitsPerSecond, 1.0));
+	}
+
+	@Test
+	public void exactConversions() {
+		ConversionEngine speeds = mGraph.getEngine(UnitGraph.CompoundType.SPEED);
+		assertEquals(new BigDecimal("0.44704"), speeds.convertExact(speeds.findUnit("miles/hours"),
+				speeds.findUnit("meters/seconds"), BigDecimal.ONE, 5));
+		assertEquals(new BigDecimal("27.77778"), speeds.convertExact(speeds.findUnit("kilometers/hours"),
+				speeds.findUnit("meters/seconds"), new BigDecimal(100), 5));
+
+		ConversionEngine flowRates = mGraph.getEngine(UnitGraph.CompoundType.FLOW_RATE);
+		assertEquals(new BigDecimal("60000.00000"), flowRates.convertExact(flowRates.findUnit("cubic meters/seconds"),
+				flowRates.findUnit("liters/minutes"), BigDecimal.ONE, 5));
+
+		// Every pair converts exactly, within the rounding of the double conversion
+		for (UnitGraph.CompoundType type : UnitGraph.CompoundType.values()) {
+			ConversionEngine engine = mGraph.getEngine(type);
+			for (int sourceUnit = 0; sourceUnit < engine.getUnitCount(); sourceUnit++) {
+				for (int destUnit = 0; destUnit < engine.getUnitCount(); destUnit++) {
+					BigDecimal exact = engine.convertExact(sourceUnit, destUnit, new BigDecimal("123.456"), 30);
+					assertRelative(engine.convert(sourceUnit, destUnit, 123.456), exact.doubleValue());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void enginesMatchGraph() {
+		for (UnitGraph.CompoundType type : UnitGraph.CompoundType.values()) {
+			ConversionEngine engine = mGraph.getEngine(type);
+			assertEquals(null, engine.getConverterType());
+			for (int sourceUnit = 0; sourceUnit < engine.getUnitCount(); sourceUnit++) {
+				for (int destUnit = 0; destUnit < engine.getUnitCount(); destUnit++) {
+					assertRelative(mGraph.convert(mGraph.getUnit(type, sourceUnit), mGraph.getUnit(type, destUnit),
+							123.456), engine.convert(sourceUnit, destUnit, 123.456));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void tableUnits() {
+		ConversionEngine engine = ConversionEngine.forType(ConverterType.LENGTH);
+		int feet = mGraph.getUnit(ConverterType.LENGTH, engine.findUnit("feet"));
+		int meters = mGraph.getUnit(ConverterType.LENGTH, engine.findUnit("meters"));
+		assertRelative(0.3048, mGraph.convert(feet, meters, 1.0));
+
+		int celsius = mGraph.findUnit("celsius");
+		int fahrenheit = mGraph.findUnit("fahrenheit");
+		assertRelative(212.0, mGraph.convert(celsius, fahrenheit, 100.0));
+	}
+
+	@Test
+	public void differentDimensions() {
+		try {
+			mGraph.resolve(mGraph.findUnit("miles"), mGraph.getUnit(UnitGraph.CompoundType.SPEED, 0));
+			fail("Converted a length to a speed");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	private static void assertRelative(double expected, double actual) {
+		assertEquals(expected, actual, Math.abs(expected) * TOLERANCE);
+	}
+}
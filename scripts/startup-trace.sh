@@ -0,0 +1,100 @@
+#!/bin/sh
+#
+# Copyright (C) 2013-2015 Mike Cunningham
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Measures cold starts of the installed app on a connected device. Every run force stops the app, launches it and
+# records the launch time reported by the activity manager, the StartupTrace milestones and the fully drawn time, in
+# milliseconds, as one line of startup-<label>.txt. The medians are printed at the end.
+#
+#   scripts/startup-trace.sh [-n runs] [-s serial] <label>
+#   scripts/startup-trace.sh -c <before label> <after label>
+#
+# The second form compares the medians of two earlier recordings.
+
+set -e
+
+PACKAGE=com.emetophobe.unitconverter
+ACTIVITY=$PACKAGE/.activities.MainActivity
+COLUMNS="total_time wait_time activity_created first_conversion fully_drawn"
+RUNS=20
+COMPARE=
+
+usage() {
+	echo "usage: $0 [-n runs] [-s serial] <label>" >&2
+	echo "       $0 -c <before label> <after label>" >&2
+	exit 1
+}
+
+# Print the median of every column of a recording
+medians() {
+	for column in 1 2 3 4 5; do
+		awk -v c=$column '/^#/ { next } $c != "-" { print $c }' "$1" | sort -n |
+			awk '{ v[NR] = $1 } END { if (NR == 0) print "-"; else if (NR % 2) print v[(NR + 1) / 2];
+				else print (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+	done
+}
+
+while getopts "n:s:c" option; do
+	case $option in
+		n) RUNS=$OPTARG ;;
+		s) export ANDROID_SERIAL=$OPTARG ;;
+		c) COMPARE=1 ;;
+		*) usage ;;
+	esac
+done
+shift $((OPTIND - 1))
+
+if [ -n "$COMPARE" ]; then
+	[ $# -eq 2 ] || usage
+	medians "startup-$1.txt" > /tmp/startup-before.$$
+	medians "startup-$2.txt" > /tmp/startup-after.$$
+	echo "$COLUMNS" | tr ' ' '\n' | paste - /tmp/startup-before.$$ /tmp/startup-after.$$ |
+		awk -v b="$1" -v a="$2" 'BEGIN { printf "%-18s %10s %10s %10s\n", "median (ms)", b, a, "change" }
+			{ change = ($2 == "-" || $3 == "-") ? "-" : sprintf("%+d", $3 - $2);
+			printf "%-18s %10s %10s %10s\n", $1, $2, $3, change }'
+	rm -f /tmp/startup-before.$$ /tmp/startup-after.$$
+	exit 0
+fi
+
+[ $# -eq 1 ] || usage
+OUTPUT=startup-$1.txt
+echo "# $COLUMNS" > "$OUTPUT"
+
+run=1
+while [ $run -le "$RUNS" ]; do
+	adb shell am force-stop $PACKAGE
+	adb logcat -c
+	sleep 1
+
+	launch=$(adb shell am start -W -n $ACTIVITY | tr -d '\r')
+	# The fully drawn time is reported after the first conversion, which can come after am start returns
+	sleep 2
+	log=$(adb logcat -d -s StartupTrace:I ActivityManager:I ActivityTaskManager:I | tr -d '\r')
+
+	total=$(echo "$launch" | awk '/^TotalTime:/ { print $2 }')
+	wait=$(echo "$launch" | awk '/^WaitTime:/ { print $2 }')
+	created=$(echo "$log" | awk '/StartupTrace.*activity_created/ { print $(NF - 1) }' | head -n 1)
+	first=$(echo "$log" | awk '/StartupTrace.*first_conversion/ { print $(NF - 1) }' | head -n 1)
+	drawn=$(echo "$log" | sed -n "s/.*Fully drawn $PACKAGE.*+\([0-9s]*\)ms.*/\1/p" | head -n 1 |
+		awk -F s '{ print (NF > 1 ? $1 * 1000 + $2 : $1) }')
+
+	echo "${total:--} ${wait:--} ${created:--} ${first:--} ${drawn:--}" >> "$OUTPUT"
+	echo "run $run: total ${total:--} ms, first conversion ${first:--} ms"
+	run=$((run + 1))
+done
+
+medians "$OUTPUT" > /tmp/startup-medians.$$
+echo "$COLUMNS" | tr ' ' '\n' | paste - /tmp/startup-medians.$$ | awk '{ printf "median %-18s %s ms\n", $1, $2 }'
+rm -f /tmp/startup-medians.$$
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.server;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Helpers for the ASCII text of requests and responses, which is handled as bytes rather than decoded.
+ */
+final class Ascii {
+	/**
+	 * This class cannot be instantiated
+	 */
+	private Ascii() {
+
+	}
+
+	/**
+	 * Returns the ASCII bytes of a text.
+	 */
+	static byte[] getBytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns true if a range of bytes equals a lower case word, ignoring case.
+	 */
+	static boolean equalsIgnoreCase(byte[] data, int start, int end, byte[] word) {
+		return end - start == word.length && startsWithIgnoreCase(data, start, end, word);
+	}
+
+	/**
+	 * Returns true if a range of bytes starts with a lower case word, ignoring case.
+	 */
+	static boolean startsWithIgnoreCase(byte[] data, int start, int end, byte[] word) {
+		if (end - start < word.length) {
+			return false;
+		}
+		for (int i = 0; i < word.length; i++) {
+			int b = data[start + i];
+			if (b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
+			}
+			if (b != word[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A CharSequence view of a range of ASCII bytes, so that numbers can be parsed without decoding them.
+	 */
+	static final class Sequence implements CharSequence {
+		private byte[] mData;
+		private int mStart;
+		private int mEnd;
+
+		void set(byte[] data, int start, int end) {
+			mData = data;
+			mStart = start;
+			mEnd = end;
+		}
+
+		@Override
+		public int length() {
+			return mEnd - mStart;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (mData[mStart + index] & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			Sequence sequence = new Sequence();
+			sequence.set(mData, mStart + start, mStart + end);
+			return sequence;
+		}
+
+		@Override
+		public String toString() {
+			return new String(mData, mStart, mEnd - mStart, StandardCharsets.US_ASCII);
+		}
+	}
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.server;
+
+import com.emetophobe.unitconverter.ConverterType;
+import com.emetophobe.unitconverter.engine.BatchConverter;
+import com.emetophobe.unitconverter.engine.ConversionEngine;
+import com.emetophobe.unitconverter.engine.DecimalFormatter;
+import com.emetophobe.unitconverter.engine.DecimalParser;
+import com.emetophobe.unitconverter.engine.QuickConverter;
+import com.emetophobe.unitconverter.engine.UnitCatalog;
+import com.emetophobe.unitconverter.engine.UnitGraph;
+import com.emetophobe.unitconverter.engine.UnitSymbolTable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+
+/**
+ * Answers the requests of the conversion service:
+ * <ul>
+ * <li>POST /convert/&lt;type&gt;/&lt;from&gt;/&lt;to&gt;[?precision=n] converts a batch of values. The type is a
+ * converter type or a compound type such as speed, whose units are written with an encoded slash, e.g.
+ * /convert/speed/mph/m%2Fs. A text body holds numbers separated by commas or whitespace, and the response has one
+ * converted number per line. An application/octet-stream body holds little endian doubles, and so does the
+ * response.</li>
+ * <li>GET /quick?q=&lt;conversion&gt;[&amp;precision=n] converts a typed conversion such as "12 sq mi to ha".</li>
+ * <li>GET /units lists the units of every converter type and compound type, with their aliases.</li>
+ * </ul>
+ * Units are given by name or alias, e.g. "feet" or "ft". Values are parsed from and formatted into reused buffers, so
+ * a batch isn't boxed or decoded into strings.
+ * <p/>
+ * A handler reuses its buffers for every request, so each event loop has its own.
+ */
+final class ConversionHandler {
+	static final String TEXT = "text/plain; charset=utf-8";
+	static final String BINARY = "application/octet-stream";
+
+	private static final int MAX_CANDIDATES = 8;
+	private static final int MAX_PRECISION = 15;
+	private static final int INITIAL_VALUE_COUNT = 1024;
+	private static final int INITIAL_BODY_SIZE = 16 * 1024;
+
+	private final UnitCatalog mCatalog = UnitCatalog.getInstance();
+	private final UnitSymbolTable mSymbols = UnitSymbolTable.getInstance();
+	private final DecimalParser mParser = new DecimalParser();
+	private final QuickConverter mQuickConverter = new QuickConverter();
+	private final Ascii.Sequence mSequence = new Ascii.Sequence();
+	private final StringBuilder mBuilder = new StringBuilder();
+	private final int[] mCandidates = new int[MAX_CANDIDATES];
+	private double[] mValues = new double[INITIAL_VALUE_COUNT];
+
+	// The response of the last request
+	private int mStatus;
+	private String mContentType;
+	private ByteBuffer mBody = ByteBuffer.allocate(INITIAL_BODY_SIZE);
+
+	// The units of the last conversion request
+	private ConversionEngine mEngine;
+	private int mSourceUnit;
+	private int mDestUnit;
+
+	/**
+	 * Answer a request.
+	 *
+	 * @param request The request.
+	 * @param data    The bytes that hold the body.
+	 * @param start   The index of the first byte of the body.
+	 */
+	void handle(HttpRequest request, byte[] data, int start) {
+		mBody.clear();
+		mContentType = TEXT;
+		int length = (int) request.getContentLength();
+		String path = request.getPath();
+		String method = request.getMethod();
+		try {
+			if (path.startsWith("/convert/")) {
+				if (!method.equals("POST")) {
+					error(405, "Use POST to convert values");
+				} else if (parseUnits(path)) {
+					int precision = getPrecision(request);
+					if (request.isBinary()) {
+						convertBinary(data, start, length);
+					} else if (precision >= 0) {
+						convertText(data, start, length, precision);
+					}
+				}
+			} else if (path.equals("/quick")) {
+				if (method.equals("GET")) {
+					convertQuick(request);
+				} else {
+					error(405, "Use GET to convert a typed conversion");
+				}
+			} else if (path.equals("/units")) {
+				if (method.equals("GET")) {
+					listUnits();
+				} else {
+					error(405, "Use GET to list the units");
+				}
+			} else {
+				error(404, "Not found: " + path);
+			}
+		} catch (IllegalArgumentException e) {
+			error(400, e.getMessage());
+		}
+		mBody.flip();
+	}
+
+	/**
+	 * Returns the status code of the last response.
+	 */
+	int getStatus() {
+		return mStatus;
+	}
+
+	/**
+	 * Returns the content type of the last response.
+	 */
+	String getContentType() {
+		return mContentType;
+	}
+
+	/**
+	 * Returns the body of the last response, ready to be read.
+	 */
+	ByteBuffer getBody() {
+		return mBody;
+	}
+
+	/**
+	 * Find the engine and units of a conversion path, e.g. /convert/length/feet/meters.
+	 *
+	 * @return true if they were found, or false if an error was written.
+	 */
+	private boolean parseUnits(String path) {
+		String[] parts = path.split("/");
+		if (parts.length != 5) {
+			error(404, "Expected /convert/<type>/<from>/<to>");
+			return false;
+		}
+
+		String typeName = HttpRequest.decode(parts[2]).toUpperCase(Locale.US).replace('-', '_');
+		ConverterType type = null;
+		mEngine = null;
+		for (ConverterType converterType : ConverterType.values()) {
+			if (converterType.name().equals(typeName)) {
+				type = converterType;
+				mEngine = ConversionEngine.forType(type);
+			}
+		}
+		for (UnitGraph.CompoundType compoundType : UnitGraph.CompoundType.values()) {
+			if (compoundType.name().equals(typeName)) {
+				mEngine = UnitGraph.getInstance().getEngine(compoundType);
+			}
+		}
+		if (mEngine == null) {
+			error(404, "Unknown converter type: " + parts[2]);
+			return false;
+		}
+		mSourceUnit = findUnit(type, HttpRequest.decode(parts[3]));
+		mDestUnit = findUnit(type, HttpRequest.decode(parts[4]));
+		if (mSourceUnit < 0 || mDestUnit < 0) {
+			error(404, "Unknown unit: " + (mSourceUnit < 0 ? parts[3] : parts[4]) + ". Must be one of "
+					+ mEngine.getUnitNameList());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the unit of the engine with a name or alias, or -1 if there isn't one.
+	 *
+	 * @param type The converter type of the engine, or null if it converts compound units.
+	 * @param name The name or alias.
+	 */
+	private int findUnit(ConverterType type, String name) {
+		int unit = mEngine.findUnit(name);
+		if (unit >= 0) {
+			return unit;
+		}
+		if (type == null) {
+			for (unit = 0; unit < mEngine.getUnitCount(); unit++) {
+				for (String alias : mEngine.getUnitAliases(unit)) {
+					if (alias.equals(name)) {
+						return unit;
+					}
+				}
+			}
+			return -1;
+		}
+
+		int count = mSymbols.lookup(name, 0, name.length(), mCandidates);
+		for (int i = 0; i < count; i++) {
+			if (mCatalog.getConverterType(mCandidates[i]) == type) {
+				return mCandidates[i] - mCatalog.getFirstUnit(type);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the precision parameter, or -1 if an error was written.
+	 */
+	private int getPrecision(HttpRequest request) {
+		String precision = request.getParameter("precision");
+		if (precision == null) {
+			return BatchConverter.DEFAULT_PRECISION;
+		}
+		if (mParser.parse(precision) != DecimalParser.PARSED || mParser.getValue() != Math.rint(mParser.getValue())
+				|| mParser.getValue() < 0 || mParser.getValue() > MAX_PRECISION) {
+			error(400, "The precision must be a whole number between 0 and " + MAX_PRECISION);
+			return -1;
+		}
+		return (int) mParser.getValue();
+	}
+
+	/**
+	 * Convert a body of little endian doubles straight into the response.
+	 */
+	private void convertBinary(byte[] data, int start, int length) {
+		if (length % 8 != 0) {
+			error(400, "A binary body must hold whole doubles");
+			return;
+		}
+
+		ensureBody(length);
+		DoubleBuffer values = ByteBuffer.wrap(data, start, length).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		DoubleBuffer results = mBody.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		mEngine.convert(mSourceUnit, mDestUnit, values, results);
+		mBody.position(length);
+		mStatus = 200;
+		mContentType = BINARY;
+	}
+
+	/**
+	 * Convert a text body of numbers separated by commas or whitespace.
+	 */
+	private void convertText(byte[] data, int start, int length, int precision) {
+		// Parse every number of the body before converting them all at once
+		int end = start + length;
+		int count = 0;
+		mSequence.set(data, start, end);
+		for (int i = start; i < end; ) {
+			while (i < end && isSeparator(data[i])) {
+				i++;
+			}
+			int numberStart = i;
+			while (i < end && !isSeparator(data[i])) {
+				i++;
+			}
+			if (numberStart == i) {
+				break;
+			}
+			if (mParser.parse(mSequence, numberStart - start, i - start) != DecimalParser.PARSED) {
+				error(400, "Invalid number: " + new String(data, numberStart, i - numberStart,
+						StandardCharsets.UTF_8));
+				return;
+			}
+			if (count == mValues.length) {
+				double[] values = new double[count * 2];
+				System.arraycopy(mValues, 0, values, 0, count);
+				mValues = values;
+			}
+			mValues[count++] = mParser.getValue();
+		}
+		mEngine.convert(mSourceUnit, mDestUnit, mValues, 0, mValues, 0, count);
+
+		mStatus = 200;
+		for (int i = 0; i < count; i++) {
+			mBuilder.setLength(0);
+			DecimalFormatter.append(mBuilder, mValues[i], precision).append('\n');
+			appendBuilder();
+		}
+	}
+
+	/**
+	 * Convert a typed conversion, e.g. /quick?q=12+sq+mi+to+ha.
+	 */
+	private void convertQuick(HttpRequest request) {
+		String text = request.getParameter("q");
+		int precision = getPrecision(request);
+		if (text == null) {
+			error(400, "Missing the conversion, e.g. /quick?q=12+sq+mi+to+ha");
+			return;
+		} else if (precision < 0) {
+			return;
+		}
+
+		int status = mQuickConverter.parse(text);
+		if (status != QuickConverter.PARSED) {
+			error(400, "Not a conversion: " + text);
+			return;
+		}
+		mStatus = 200;
+		mBuilder.setLength(0);
+		double value = mQuickConverter.getValue();
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			mBuilder.append((long) value);
+		} else {
+			mBuilder.append(value);
+		}
+		mBuilder.append(' ')
+				.append(mCatalog.getUnitName(mQuickConverter.getSourceUnit())).append(" = ");
+		DecimalFormatter.append(mBuilder, mQuickConverter.getResult(), precision).append(' ')
+				.append(mCatalog.getUnitName(mQuickConverter.getTargetUnit())).append('\n');
+		appendBuilder();
+	}
+
+	/**
+	 * List every unit as a line of its converter type, name and aliases, separated by tabs. The units of the compound
+	 * types follow the units of the catalog.
+	 */
+	private void listUnits() {
+		mStatus = 200;
+		for (int unit = 0; unit < mCatalog.getUnitCount(); unit++) {
+			appendUnit(mCatalog.getConverterType(unit).name(), mCatalog.getUnitName(unit),
+					mCatalog.getUnitAliases(unit));
+		}
+		for (UnitGraph.CompoundType type : UnitGraph.CompoundType.values()) {
+			ConversionEngine engine = UnitGraph.getInstance().getEngine(type);
+			for (int unit = 0; unit < engine.getUnitCount(); unit++) {
+				appendUnit(type.name(), engine.getUnitName(unit), engine.getUnitAliases(unit));
+			}
+		}
+	}
+
+	private void appendUnit(String type, String name, String[] aliases) {
+		mBuilder.setLength(0);
+		mBuilder.append(type.toLowerCase(Locale.US)).append('\t').append(name);
+		for (String alias : aliases) {
+			mBuilder.append('\t').append(alias);
+		}
+		mBuilder.append('\n');
+		appendBuilder();
+	}
+
+	private void error(int status, String message) {
+		mStatus = status;
+		mContentType = TEXT;
+		mBody.clear();
+		mBuilder.setLength(0);
+		mBuilder.append(message).append('\n');
+		appendBuilder();
+	}
+
+	/**
+	 * Append the text of the builder to the body as UTF-8. The units and messages are in the Basic Multilingual
+	 * Plane, so any surrogate, e.g. of an emoji echoed back in an error, is written as '?'.
+	 */
+	private void appendBuilder() {
+		int length = mBuilder.length();
+		ensureBody(mBody.position() + length * 3);
+		for (int i = 0; i < length; i++) {
+			char c = mBuilder.charAt(i);
+			if (c < 0x80) {
+				mBody.put((byte) c);
+			} else if (Character.isSurrogate(c)) {
+				mBody.put((byte) '?');
+			} else if (c < 0x800) {
+				mBody.put((byte) (0xc0 | c >> 6)).put((byte) (0x80 | c & 0x3f));
+			} else {
+				mBody.put((byte) (0xe0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3f)).put((byte) (0x80 | c & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Grow the body so that it can hold at least the specified number of bytes, keeping what was written.
+	 */
+	private void ensureBody(int capacity) {
+		if (mBody.capacity() < capacity) {
+			ByteBuffer body = ByteBuffer.allocate(Math.max(capacity, mBody.capacity() * 2));
+			mBody.flip();
+			body.put(mBody);
+			mBody = body;
+		}
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ',' || b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ';';
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * A local HTTP service that converts values with the same unit tables as the app, so that other programs don't have
+ * to copy the factors of units.xml. See {@link ConversionHandler} for the requests it answers, e.g.
+ * <pre>
+ * curl -d "1, 2.5, 10" http://localhost:8080/convert/length/feet/meters
+ * curl "http://localhost:8080/quick?q=98.6F+in+C"
+ * </pre>
+ * Connections are accepted on one thread and served by a fixed number of event loops with non-blocking IO, so a
+ * handful of threads serve any number of keep-alive connections. The server can be embedded, or run from the
+ * command line.
+ */
+public final class ConversionServer implements Closeable {
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024 * 1024;
+
+	private static final String USAGE = "Usage: conversionserver [-p port] [-t threads] [-a address] [-m max body size]\n"
+			+ "  -p  the port to listen on, or 0 for any free port (default " + DEFAULT_PORT + ")\n"
+			+ "  -t  the number of event loop threads (default the number of processors)\n"
+			+ "  -a  the address to listen on (default the loopback address)\n"
+			+ "  -m  the largest request body in bytes (default " + DEFAULT_MAX_BODY_SIZE + ")";
+
+	private final ServerSocketChannel mServerChannel;
+	private final EventLoop[] mLoops;
+	private final Thread[] mThreads;
+
+	/**
+	 * Construct a server that listens on an address. It doesn't accept connections until it's started.
+	 *
+	 * @param address     The address to listen on.
+	 * @param threads     The number of event loop threads.
+	 * @param maxBodySize The largest request body that is accepted.
+	 * @throws IOException if the address can't be bound.
+	 */
+	public ConversionServer(InetSocketAddress address, int threads, int maxBodySize) throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid thread count: " + threads);
+		}
+
+		mServerChannel = ServerSocketChannel.open();
+		mServerChannel.bind(address);
+		mLoops = new EventLoop[threads];
+		mThreads = new Thread[threads + 1];
+		for (int i = 0; i < threads; i++) {
+			mLoops[i] = new EventLoop(maxBodySize);
+			mThreads[i] = new Thread(mLoops[i], "conversion-loop-" + i);
+		}
+		mThreads[threads] = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "conversion-acceptor");
+	}
+
+	/**
+	 * Start accepting and serving connections.
+	 */
+	public void start() {
+		for (Thread thread : mThreads) {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 */
+	public int getPort() {
+		return mServerChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stop accepting connections and close the open ones.
+	 */
+	@Override
+	public void close() throws IOException {
+		mServerChannel.close();
+		for (EventLoop loop : mLoops) {
+			loop.close();
+		}
+	}
+
+	/**
+	 * Hand the accepted connections to the event loops in turn.
+	 */
+	private void accept() {
+		int next = 0;
+		try {
+			while (true) {
+				SocketChannel channel = mServerChannel.accept();
+				mLoops[next].register(channel);
+				next = (next + 1) % mLoops.length;
+			}
+		} catch (ClosedChannelException e) {
+			// The server was closed
+		} catch (IOException e) {
+			System.err.println("Accepting connections failed: " + e.getMessage());
+		}
+	}
+
+	public static void main(String[] args) {
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+		String host = null;
+
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				if (i + 1 == args.length) {
+					usage("Missing value for " + args[i]);
+				}
+				String value = args[i + 1];
+				switch (args[i]) {
+					case "-p":
+						port = Integer.parseInt(value);
+						break;
+					case "-t":
+						threads = Integer.parseInt(value);
+						break;
+					case "-a":
+						host = value;
+						break;
+					case "-m":
+						maxBodySize = Integer.parseInt(value);
+						break;
+					default:
+						usage("Unknown option " + args[i]);
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage("Invalid number: " + e.getMessage());
+		}
+
+		try {
+			InetAddress address = host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+			ConversionServer server = new ConversionServer(new InetSocketAddress(address, port), threads,
+					maxBodySize);
+			server.start();
+			System.err.println("Listening on " + address.getHostAddress() + ":" + server.getPort() + " with "
+					+ threads + " threads");
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Can't start the server: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void usage(String error) {
+		if (error != null) {
+			System.err.println(error);
+		}
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+}
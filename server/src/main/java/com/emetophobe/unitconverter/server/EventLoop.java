@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Serves the requests of a set of connections on one thread with non-blocking IO. Every request of a connection is
+ * answered in order, including pipelined requests. Conversions take microseconds, so they are answered right on the
+ * loop rather than handed to another thread.
+ * <p/>
+ * While a response can't be written completely, the connection isn't read, so a client that doesn't read its
+ * responses can't make the loop buffer without bound.
+ */
+final class EventLoop implements Runnable, Closeable {
+	private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_IDLE_BUFFER_SIZE = 1024 * 1024;
+	private static final byte[] CONTINUE = Ascii.getBytes("HTTP/1.1 100 Continue\r\n\r\n");
+
+	private final Selector mSelector;
+	private final Queue<SocketChannel> mNewChannels = new ConcurrentLinkedQueue<>();
+	private final ConversionHandler mHandler = new ConversionHandler();
+	private final StringBuilder mHead = new StringBuilder();
+	private final int mMaxBodySize;
+	private volatile boolean mClosed;
+
+	/**
+	 * Construct an event loop.
+	 *
+	 * @param maxBodySize The largest request body that is accepted.
+	 */
+	EventLoop(int maxBodySize) throws IOException {
+		mSelector = Selector.open();
+		mMaxBodySize = maxBodySize;
+	}
+
+	/**
+	 * Serve a new connection. May be called from any thread.
+	 */
+	void register(SocketChannel channel) {
+		mNewChannels.add(channel);
+		mSelector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!mClosed) {
+				mSelector.select();
+				registerNewChannels();
+
+				Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable()) {
+							connection.flush();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.read();
+						}
+					} catch (IOException e) {
+						connection.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Event loop failed: " + e.getMessage());
+		} finally {
+			for (SelectionKey key : mSelector.keys()) {
+				((Connection) key.attachment()).close();
+			}
+			closeQuietly(mSelector);
+		}
+	}
+
+	/**
+	 * Stop the loop and close its connections.
+	 */
+	@Override
+	public void close() {
+		mClosed = true;
+		mSelector.wakeup();
+	}
+
+	private void registerNewChannels() {
+		SocketChannel channel;
+		while ((channel = mNewChannels.poll()) != null) {
+			try {
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				SelectionKey key = channel.register(mSelector, SelectionKey.OP_READ);
+				key.attach(new Connection(channel, key));
+			} catch (IOException e) {
+				closeQuietly(channel);
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// Nothing left to do with it
+		}
+	}
+
+	private static String getReason(int status) {
+		switch (status) {
+			case 200:
+				return "OK";
+			case 400:
+				return "Bad Request";
+			case 404:
+				return "Not Found";
+			case 405:
+				return "Method Not Allowed";
+			case 413:
+				return "Payload Too Large";
+			default:
+				return "Error";
+		}
+	}
+
+	/**
+	 * The state of one connection: the bytes read but not yet answered, and the responses not yet written.
+	 */
+	private final class Connection {
+		private final SocketChannel mChannel;
+		private final SelectionKey mKey;
+		private final HttpRequest mRequest = new HttpRequest();
+
+		// The bytes read, from the start of the first request that hasn't been answered
+		private ByteBuffer mIn = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		// The length of the head of that request once it has been parsed, or 0
+		private int mHeadLength;
+
+		// The responses that haven't been written yet
+		private ByteBuffer mOut = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		private boolean mClosing;
+
+		Connection(SocketChannel channel, SelectionKey key) {
+			mChannel = channel;
+			mKey = key;
+		}
+
+		/**
+		 * Read what has arrived and answer every complete request.
+		 */
+		void read() throws IOException {
+			if (mChannel.read(mIn) < 0) {
+				close();
+				return;
+			}
+
+			byte[] data = mIn.array();
+			int end = mIn.position();
+			int start = 0;
+			while (!mClosing) {
+				if (mHeadLength == 0) {
+					int length = mRequest.parseHead(data, start, end);
+					if (length == 0) {
+						break;
+					} else if (length < 0) {
+						writeError(400, "Malformed request");
+						break;
+					} else if (mRequest.getContentLength() > mMaxBodySize) {
+						writeError(413, "The body can't be larger than " + mMaxBodySize + " bytes");
+						break;
+					}
+					mHeadLength = length;
+					if (mRequest.isExpectContinue() && end - start - length < mRequest.getContentLength()) {
+						ensureOut(CONTINUE.length);
+						mOut.put(CONTINUE);
+					}
+				}
+
+				int requestEnd = start + mHeadLength + (int) mRequest.getContentLength();
+				if (requestEnd > end) {
+					break;
+				}
+				mHandler.handle(mRequest, data, start + mHeadLength);
+				writeResponse(mHandler.getStatus(), mHandler.getContentType(), mHandler.getBody(),
+						mRequest.isKeepAlive());
+				start = requestEnd;
+				mHeadLength = 0;
+			}
+
+			// Keep the rest for the next read, with room for the whole of the next request
+			System.arraycopy(data, start, data, 0, end - start);
+			mIn.position(end - start);
+			int needed = mHeadLength > 0 ? mHeadLength + (int) mRequest.getContentLength() : 0;
+			if (needed > mIn.capacity()) {
+				ByteBuffer in = ByteBuffer.allocate(Math.max(needed, mIn.capacity() * 2));
+				in.put(data, 0, end - start);
+				mIn = in;
+			} else if (end == start && mIn.capacity() > MAX_IDLE_BUFFER_SIZE) {
+				// Don't hold on to the buffer of a large batch while the connection is idle
+				mIn = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+			}
+			flush();
+		}
+
+		/**
+		 * Write as much of the responses as the socket takes. Reading resumes once they are all written.
+		 */
+		void flush() throws IOException {
+			mOut.flip();
+			mChannel.write(mOut);
+			boolean pending = mOut.hasRemaining();
+			mOut.compact();
+
+			if (pending) {
+				mKey.interestOps(SelectionKey.OP_WRITE);
+			} else if (mClosing) {
+				close();
+			} else {
+				mKey.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		void close() {
+			mKey.cancel();
+			closeQuietly(mChannel);
+		}
+
+		private void writeError(int status, String message) {
+			writeResponse(status, ConversionHandler.TEXT, ByteBuffer.wrap(Ascii.getBytes(message + "\n")), false);
+		}
+
+		private void writeResponse(int status, String contentType, ByteBuffer body, boolean keepAlive) {
+			mHead.setLength(0);
+			mHead.append("HTTP/1.1 ").append(status).append(' ').append(getReason(status))
+					.append("\r\nContent-Type: ").append(contentType)
+					.append("\r\nContent-Length: ").append(body.remaining());
+			if (!keepAlive) {
+				mHead.append("\r\nConnection: close");
+				mClosing = true;
+			}
+			mHead.append("\r\n\r\n");
+
+			int length = mHead.length();
+			ensureOut(length + body.remaining());
+			for (int i = 0; i < length; i++) {
+				mOut.put((byte) mHead.charAt(i));
+			}
+			mOut.put(body);
+		}
+
+		private void ensureOut(int length) {
+			if (mOut.remaining() < length) {
+				ByteBuffer out = ByteBuffer.allocate(Math.max(mOut.position() + length, mOut.capacity() * 2));
+				mOut.flip();
+				out.put(mOut);
+				mOut = out;
+			}
+		}
+	}
+}
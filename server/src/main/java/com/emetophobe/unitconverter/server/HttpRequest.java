@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.server;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The head of an HTTP/1.x request, parsed straight from the bytes that were read. Only what the server needs is kept:
+ * the method, the path and query, the body length and type, and whether the connection stays open.
+ * <p/>
+ * A request is reused for every request of a connection.
+ */
+final class HttpRequest {
+	/**
+	 * The largest head that is accepted, including the request line.
+	 */
+	static final int MAX_HEAD_SIZE = 8192;
+
+	private static final byte[] CONTENT_LENGTH = Ascii.getBytes("content-length");
+	private static final byte[] CONTENT_TYPE = Ascii.getBytes("content-type");
+	private static final byte[] CONNECTION = Ascii.getBytes("connection");
+	private static final byte[] EXPECT = Ascii.getBytes("expect");
+	private static final byte[] TRANSFER_ENCODING = Ascii.getBytes("transfer-encoding");
+	private static final byte[] OCTET_STREAM = Ascii.getBytes("application/octet-stream");
+	private static final byte[] CLOSE = Ascii.getBytes("close");
+	private static final byte[] KEEP_ALIVE = Ascii.getBytes("keep-alive");
+	private static final byte[] CONTINUE = Ascii.getBytes("100-continue");
+	private static final byte[] HTTP_1_0 = Ascii.getBytes("http/1.0");
+
+	private String mMethod;
+	private String mPath;
+	private String mQuery;
+	private long mContentLength;
+	private boolean mBinary;
+	private boolean mKeepAlive;
+	private boolean mExpectContinue;
+
+	/**
+	 * Parse the head of a request.
+	 *
+	 * @param data  The bytes that were read.
+	 * @param start The index of the first byte of the request.
+	 * @param end   The index after the last byte that was read.
+	 * @return The length of the head including the blank line after it, 0 if the head hasn't been read completely or
+	 * -1 if it is malformed.
+	 */
+	int parseHead(byte[] data, int start, int end) {
+		int headEnd = findHeadEnd(data, start, Math.min(end, start + MAX_HEAD_SIZE));
+		if (headEnd < 0) {
+			return end - start >= MAX_HEAD_SIZE ? -1 : 0;
+		}
+
+		// The request line: method, target and version
+		int lineEnd = findLineEnd(data, start, headEnd);
+		int methodEnd = indexOf(data, start, lineEnd, (byte) ' ');
+		int targetEnd = methodEnd < 0 ? -1 : indexOf(data, methodEnd + 1, lineEnd, (byte) ' ');
+		if (targetEnd < 0 || methodEnd == start) {
+			return -1;
+		}
+		mMethod = new String(data, start, methodEnd - start, StandardCharsets.US_ASCII);
+		int queryStart = indexOf(data, methodEnd + 1, targetEnd, (byte) '?');
+		int pathEnd = queryStart < 0 ? targetEnd : queryStart;
+		mPath = new String(data, methodEnd + 1, pathEnd - methodEnd - 1, StandardCharsets.US_ASCII);
+		mQuery = queryStart < 0 ? "" : new String(data, queryStart + 1, targetEnd - queryStart - 1, StandardCharsets.US_ASCII);
+		mKeepAlive = !Ascii.equalsIgnoreCase(data, targetEnd + 1, trimEnd(data, targetEnd + 1, lineEnd), HTTP_1_0);
+		mContentLength = 0;
+		mBinary = false;
+		mExpectContinue = false;
+
+		// The headers that matter, ignoring the rest
+		for (int line = lineEnd + 2; line < headEnd; line = lineEnd + 2) {
+			lineEnd = findLineEnd(data, line, headEnd);
+			int colon = indexOf(data, line, lineEnd, (byte) ':');
+			if (colon < 0) {
+				return -1;
+			}
+			int valueStart = colon + 1;
+			while (valueStart < lineEnd && data[valueStart] == ' ') {
+				valueStart++;
+			}
+			int valueEnd = trimEnd(data, valueStart, lineEnd);
+
+			if (Ascii.equalsIgnoreCase(data, line, colon, CONTENT_LENGTH)) {
+				mContentLength = parseLength(data, valueStart, valueEnd);
+				if (mContentLength < 0) {
+					return -1;
+				}
+			} else if (Ascii.equalsIgnoreCase(data, line, colon, CONTENT_TYPE)) {
+				mBinary = Ascii.startsWithIgnoreCase(data, valueStart, valueEnd, OCTET_STREAM);
+			} else if (Ascii.equalsIgnoreCase(data, line, colon, CONNECTION)) {
+				if (Ascii.equalsIgnoreCase(data, valueStart, valueEnd, CLOSE)) {
+					mKeepAlive = false;
+				} else if (Ascii.equalsIgnoreCase(data, valueStart, valueEnd, KEEP_ALIVE)) {
+					mKeepAlive = true;
+				}
+			} else if (Ascii.equalsIgnoreCase(data, line, colon, EXPECT)) {
+				mExpectContinue = Ascii.equalsIgnoreCase(data, valueStart, valueEnd, CONTINUE);
+			} else if (Ascii.equalsIgnoreCase(data, line, colon, TRANSFER_ENCODING)) {
+				// Chunked bodies aren't supported
+				return -1;
+			}
+		}
+		return headEnd + 4 - start;
+	}
+
+	/**
+	 * Returns the method, e.g. GET.
+	 */
+	String getMethod() {
+		return mMethod;
+	}
+
+	/**
+	 * Returns the path of the target, still percent-encoded.
+	 */
+	String getPath() {
+		return mPath;
+	}
+
+	/**
+	 * Returns the decoded value of a query parameter, or null if there isn't one.
+	 *
+	 * @throws IllegalArgumentException if the value isn't correctly percent-encoded.
+	 */
+	String getParameter(String name) {
+		for (int start = 0; start < mQuery.length(); ) {
+			int end = mQuery.indexOf('&', start);
+			if (end < 0) {
+				end = mQuery.length();
+			}
+			if (mQuery.startsWith(name, start) && start + name.length() < end
+					&& mQuery.charAt(start + name.length()) == '=') {
+				return decode(mQuery.substring(start + name.length() + 1, end));
+			}
+			start = end + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the length of the body.
+	 */
+	long getContentLength() {
+		return mContentLength;
+	}
+
+	/**
+	 * Returns true if the body is raw little endian doubles rather than text.
+	 */
+	boolean isBinary() {
+		return mBinary;
+	}
+
+	/**
+	 * Returns true if the connection stays open after the response.
+	 */
+	boolean isKeepAlive() {
+		return mKeepAlive;
+	}
+
+	/**
+	 * Returns true if the client waits for a 100 Continue response before it sends the body.
+	 */
+	boolean isExpectContinue() {
+		return mExpectContinue;
+	}
+
+	/**
+	 * Decode a percent-encoded part of a URL, where '+' is a space.
+	 *
+	 * @throws IllegalArgumentException if the text isn't correctly percent-encoded.
+	 */
+	static String decode(String text) {
+		try {
+			return URLDecoder.decode(text, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static long parseLength(byte[] data, int start, int end) {
+		if (start == end || end - start > 18) {
+			return -1;
+		}
+		long length = 0;
+		for (int i = start; i < end; i++) {
+			int digit = data[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			length = length * 10 + digit;
+		}
+		return length;
+	}
+
+	private static int findHeadEnd(byte[] data, int start, int end) {
+		for (int i = start; i + 3 < end; i++) {
+			if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int findLineEnd(byte[] data, int start, int headEnd) {
+		for (int i = start; i + 1 < headEnd; i++) {
+			if (data[i] == '\r' && data[i + 1] == '\n') {
+				return i;
+			}
+		}
+		return headEnd;
+	}
+
+	private static int indexOf(byte[] data, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (data[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int trimEnd(byte[] data, int start, int end) {
+		while (end > start && (data[end - 1] == ' ' || data[end - 1] == '\t')) {
+			end--;
+		}
+		return end;
+	}
+}
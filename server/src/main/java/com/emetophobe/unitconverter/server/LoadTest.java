@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2013-2015 Mike Cunningham
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.emetophobe.unitconverter.server;
+
+import com.emetophobe.unitconverter.engine.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Command line load test of a running {@link ConversionServer}. Every connection sends the same request as soon as
+ * it has read the previous response, over a keep-alive connection, and the requests per second and latency
+ * percentiles are reported once it's done. Requests during the warm-up aren't counted.
+ * <p/>
+ * Latencies are measured from sending a request to reading its response, so a server that stalls is only measured
+ * once per connection (the closed-loop coordinated omission problem). Use enough connections to keep the server busy.
+ */
+public final class LoadTest {
+	private static final String USAGE = "Usage: loadtest [-a address] [-p port] [-c connections] [-d seconds] "
+			+ "[-w seconds] [-b values] [-f text|binary|quick]\n"
+			+ "  -a  the address of the server (default the loopback address)\n"
+			+ "  -p  the port of the server (default " + ConversionServer.DEFAULT_PORT + ")\n"
+			+ "  -c  the number of connections, each on its own thread (default 16)\n"
+			+ "  -d  the number of seconds to measure (default 10)\n"
+			+ "  -w  the number of seconds to warm up first (default 3)\n"
+			+ "  -b  the number of values per request (default 100)\n"
+			+ "  -f  text or binary conversion batches, or quick conversions (default text)";
+
+	private static final String CONVERT_PATH = "/convert/length/feet/meters";
+	private static final String QUICK_PATH = "/quick?q=12+sq+mi+to+ha";
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String host = null;
+		int port = ConversionServer.DEFAULT_PORT;
+		int connections = 16;
+		int seconds = 10;
+		int warmUpSeconds = 3;
+		int values = 100;
+		String format = "text";
+
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				if (i + 1 == args.length) {
+					usage("Missing value for " + args[i]);
+				}
+				String value = args[i + 1];
+				switch (args[i]) {
+					case "-a":
+						host = value;
+						break;
+					case "-p":
+						port = Integer.parseInt(value);
+						break;
+					case "-c":
+						connections = Integer.parseInt(value);
+						break;
+					case "-d":
+						seconds = Integer.parseInt(value);
+						break;
+					case "-w":
+						warmUpSeconds = Integer.parseInt(value);
+						break;
+					case "-b":
+						values = Integer.parseInt(value);
+						break;
+					case "-f":
+						format = value.toLowerCase(Locale.US);
+						break;
+					default:
+						usage("Unknown option " + args[i]);
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage("Invalid number: " + e.getMessage());
+		}
+
+		final byte[] request;
+		switch (format) {
+			case "text":
+				request = createTextRequest(values);
+				break;
+			case "binary":
+				request = createBinaryRequest(values);
+				break;
+			case "quick":
+				request = Ascii.getBytes("GET " + QUICK_PATH + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+				values = 1;
+				break;
+			default:
+				usage("Unknown format: " + format);
+				return;
+		}
+
+		final InetSocketAddress address = host == null ? new InetSocketAddress("127.0.0.1", port)
+				: new InetSocketAddress(host, port);
+		final LatencyHistogram histogram = new LatencyHistogram("request");
+		final AtomicLong errors = new AtomicLong();
+		final long measureStart = System.nanoTime() + warmUpSeconds * 1000000000L;
+		final long end = measureStart + seconds * 1000000000L;
+		final CountDownLatch done = new CountDownLatch(connections);
+
+		for (int i = 0; i < connections; i++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runConnection(address, request, measureStart, end, histogram, errors);
+					} catch (IOException e) {
+						System.err.println("Connection failed: " + e.getMessage());
+						errors.incrementAndGet();
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "load-" + i).start();
+		}
+		done.await();
+
+		long count = histogram.getCount();
+		System.out.printf(Locale.US, "%d connections, %d values per %s request, %d s%n", connections, values, format,
+				seconds);
+		System.out.printf(Locale.US, "Requests/s: %.0f%n", count / (double) seconds);
+		System.out.printf(Locale.US, "Values/s:   %.0f%n", count * (double) values / seconds);
+		System.out.printf(Locale.US, "Errors:     %d%n", errors.get());
+		System.out.printf(Locale.US, "Latency (us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+				histogram.getMean() / 1000.0, histogram.getValueAtPercentile(50) / 1000.0,
+				histogram.getValueAtPercentile(90) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+				histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0);
+	}
+
+	/**
+	 * Send the request and read its response over one connection until the end time.
+	 */
+	private static void runConnection(InetSocketAddress address, byte[] request, long measureStart, long end,
+			LatencyHistogram histogram, AtomicLong errors) throws IOException {
+		ByteBuffer out = ByteBuffer.wrap(request);
+		ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+		try (SocketChannel channel = SocketChannel.open(address)) {
+			channel.socket().setTcpNoDelay(true);
+			long now = System.nanoTime();
+			while (now < end) {
+				out.rewind();
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+				in = readResponse(channel, in);
+				if (in == null) {
+					throw new IOException("The server closed the connection");
+				}
+				if (in.get(9) != '2') {
+					errors.incrementAndGet();
+				}
+
+				long start = now;
+				now = System.nanoTime();
+				if (start >= measureStart) {
+					histogram.record(now - start);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read one response, whose head and body are then at the start of the buffer.
+	 *
+	 * @return The buffer, which is replaced by a larger one for large responses, or null at the end of the stream.
+	 */
+	private static ByteBuffer readResponse(SocketChannel channel, ByteBuffer in) throws IOException {
+		in.clear();
+		int headEnd = -1;
+		int contentLength = 0;
+		while (true) {
+			if (headEnd < 0) {
+				headEnd = findHeadEnd(in);
+				if (headEnd >= 0) {
+					contentLength = parseContentLength(in, headEnd);
+				}
+			}
+			if (headEnd >= 0 && in.position() >= headEnd + 4 + contentLength) {
+				return in;
+			}
+			if (!in.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(in.capacity() * 2, headEnd + 4 + contentLength));
+				in.flip();
+				larger.put(in);
+				in = larger;
+			}
+			if (channel.read(in) < 0) {
+				return null;
+			}
+		}
+	}
+
+	private static int findHeadEnd(ByteBuffer in) {
+		for (int i = 0; i + 3 < in.position(); i++) {
+			if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int parseContentLength(ByteBuffer in, int headEnd) {
+		byte[] name = Ascii.getBytes("\r\ncontent-length:");
+		for (int i = 0; i + name.length < headEnd; i++) {
+			if (Ascii.startsWithIgnoreCase(in.array(), i, headEnd, name)) {
+				int length = 0;
+				for (int j = i + name.length; j < headEnd && in.get(j) != '\r'; j++) {
+					if (in.get(j) >= '0' && in.get(j) <= '9') {
+						length = length * 10 + in.get(j) - '0';
+					}
+				}
+				return length;
+			}
+		}
+		return 0;
+	}
+
+	private static byte[] createTextRequest(int values) {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < values; i++) {
+			body.append(i == 0 ? "" : ",").append(i * 1.25);
+		}
+		return Ascii.getBytes("POST " + CONVERT_PATH + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/plain\r\n"
+				+ "Content-Length: " + body.length() + "\r\n\r\n" + body);
+	}
+
+	private static byte[] createBinaryRequest(int values) {
+		byte[] head = Ascii.getBytes("POST " + CONVERT_PATH + " HTTP/1.1\r\nHost: localhost\r\n"
+				+ "Content-Type: application/octet-stream\r\nContent-Length: " + values * 8 + "\r\n\r\n");
+		ByteBuffer request = ByteBuffer.allocate(head.length + values * 8).order(ByteOrder.LITTLE_ENDIAN);
+		request.put(head);
+		for (int i = 0; i < values; i++) {
+			request.putDouble(i * 1.25);
+		}
+		return request.array();
+	}
+
+	private static void usage(String error) {
+		if (error != null) {
+			System.err.println(error);
+		}
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+}